@@ -0,0 +1,51 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.provider.BaseToken;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Random;
+
+/**
+ * 基准测试数据
+ */
+class Fixtures {
+    private static final Random RANDOM = new Random(42);
+
+    static String randomString(int length) {
+        String base = "abcdefghijklmnopqrstuvwxyz0123456789";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(base.charAt(RANDOM.nextInt(base.length())));
+        }
+        return sb.toString();
+    }
+
+    static String[] permissions(int size) {
+        String[] permissions = new String[size];
+        for (int i = 0; i < size; i++) {
+            permissions[i] = "module" + (i / 10) + ":action" + i;
+        }
+        return permissions;
+    }
+
+    static String[] roles(int size) {
+        String[] roles = new String[size];
+        for (int i = 0; i < size; i++) {
+            roles[i] = "role" + i;
+        }
+        return roles;
+    }
+
+    static BaseToken user(String userId, int permissionCount, int roleCount) {
+        return new User(userId, permissions(permissionCount), roles(roleCount));
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class User implements BaseToken {
+        private String userId;
+        private String[] permissions;
+        private String[] roles;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.JdbcTokenStore;
+import com.github.zkoalas.jwts.provider.Token;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JdbcTokenStore签发和查询, 使用MySQL模式的H2内存数据库
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JdbcTokenStoreBenchmark {
+
+    @Param({"1000"})
+    private int userCount;
+
+    @Param({"5"})
+    private int maxToken;
+
+    @Param({"false", "true"})
+    private boolean hashTokens;
+
+    private JdbcConnectionPool dataSource;
+    private JdbcTokenStore tokenStore;
+    private String[] permissions;
+    private String[] roles;
+    private Token[] tokens;
+    private int next;
+
+    @Setup
+    public void setup() {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:jwt_soul;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("oauth_token.sql")).execute(dataSource);
+        Config.getInstance().setMaxToken(maxToken);
+        tokenStore = new JdbcTokenStore(dataSource);
+        tokenStore.setHashTokens(hashTokens);
+        tokenStore.setLegacyLookup(false);
+        permissions = Fixtures.permissions(20);
+        roles = Fixtures.roles(3);
+        tokens = new Token[userCount];
+        for (int i = 0; i < userCount; i++) {
+            tokens[i] = tokenStore.createNewToken("user-" + i, permissions, roles, roles);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.dispose();
+    }
+
+    @Benchmark
+    public Token createNewToken() {
+        return tokenStore.createNewToken("user-" + nextUser(), permissions, roles, roles);
+    }
+
+    @Benchmark
+    public Token findToken() {
+        Token token = tokens[nextUser()];
+        return tokenStore.findToken(token.getUserId(), token.getAccessToken());
+    }
+
+    @Benchmark
+    public List<Token> findTokensByUserId() {
+        return tokenStore.findTokensByUserId("user-" + nextUser());
+    }
+
+    private int nextUser() {
+        next = (next + 1) % userCount;
+        return next;
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.provider.BaseToken;
+import com.github.zkoalas.jwts.provider.LocalTokenStore;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LocalTokenStore签发和查询, 查询包含解析jwt和反序列化subject
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalTokenStoreBenchmark {
+
+    @Param({"10", "500"})
+    private int permissionCount;
+
+    private LocalTokenStore tokenStore;
+    private BaseToken user;
+    private String accessToken;
+
+    @Setup
+    public void setup() {
+        tokenStore = new LocalTokenStore("jwt-soul-benchmark-secret-key-0123456789", "md5", TokenUtil.DEFAULT_EXPIRE);
+        user = Fixtures.user("user-1", permissionCount, 5);
+        accessToken = tokenStore.createNewToken(user).getAccessToken();
+    }
+
+    @Benchmark
+    public Token createNewToken() {
+        return tokenStore.createNewToken(user);
+    }
+
+    @Benchmark
+    public Token findToken() {
+        String subject = TokenUtil.parseToken(accessToken, tokenStore.getSigningKey());
+        return tokenStore.findToken(subject, accessToken);
+    }
+}
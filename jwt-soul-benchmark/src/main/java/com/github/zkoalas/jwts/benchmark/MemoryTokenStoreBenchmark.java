@@ -0,0 +1,82 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.MemoryTokenStore;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryTokenStore多线程签发、查询和注销, 对比分段数对扩展性的影响
+ * 线程数用-t调整, mixed组的线程分配用-tg调整, 例如: -t 8 或 -tg 1,6,1
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MemoryTokenStoreBenchmark {
+
+    @Param({"10000"})
+    private int userCount;
+
+    @Param({"5"})
+    private int maxToken;
+
+    @Param({"1", "64"})
+    private int stripes;
+
+    private MemoryTokenStore tokenStore;
+    private String[] permissions;
+    private String[] roles;
+    private Token[] tokens;
+
+    @Setup
+    public void setup() {
+        Config.getInstance().setMaxToken(maxToken);
+        tokenStore = new MemoryTokenStore(TokenUtil.getHexKey(), stripes);
+        permissions = Fixtures.permissions(20);
+        roles = Fixtures.roles(3);
+        tokens = new Token[userCount];
+        for (int i = 0; i < userCount; i++) {
+            tokens[i] = tokenStore.createNewToken("user-" + i, permissions, roles, roles);
+        }
+    }
+
+    @Benchmark
+    public Token findToken() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Token login() {
+        // 签发给另一组用户, 不会因maxToken挤掉查询用的token
+        return tokenStore.createNewToken("login-" + ThreadLocalRandom.current().nextInt(userCount), permissions, roles, roles);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Token lookup() {
+        Token token = tokens[ThreadLocalRandom.current().nextInt(userCount)];
+        return tokenStore.findToken(token.getUserId(), token.getAccessToken());
+    }
+
+    /**
+     * 注销后重新存入, 保持查询命中率不变
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int revoke() {
+        Token token = tokens[ThreadLocalRandom.current().nextInt(userCount)];
+        return tokenStore.removeToken(token.getUserId(), token.getAccessToken()) + tokenStore.storeToken(token);
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.RedisTokenStore;
+import com.github.zkoalas.jwts.provider.Token;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisTokenStore签发和查询
+ * 默认启动embedded-redis, 指定-Dredis.port时使用本地已运行的redis
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisTokenStoreBenchmark {
+    private static final int EMBEDDED_PORT = 16379;
+
+    @Param({"1000"})
+    private int userCount;
+
+    @Param({"5"})
+    private int maxToken;
+
+    @Param({"false", "true"})
+    private boolean expireKeys;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTokenStore tokenStore;
+    private String[] permissions;
+    private String[] roles;
+    private Token[] tokens;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        String port = System.getProperty("redis.port");
+        if (port == null) {
+            redisServer = new RedisServer(EMBEDDED_PORT);
+            redisServer.start();
+            port = String.valueOf(EMBEDDED_PORT);
+        }
+        connectionFactory = new JedisConnectionFactory(
+                new RedisStandaloneConfiguration(System.getProperty("redis.host", "localhost"), Integer.parseInt(port)));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.getConnectionFactory().getConnection().flushDb();
+
+        Config.getInstance().setMaxToken(maxToken);
+        tokenStore = new RedisTokenStore(redisTemplate);
+        tokenStore.setExpireKeys(expireKeys);
+        permissions = Fixtures.permissions(20);
+        roles = Fixtures.roles(3);
+        tokens = new Token[userCount];
+        for (int i = 0; i < userCount; i++) {
+            tokens[i] = tokenStore.createNewToken("user-" + i, permissions, roles, roles);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionFactory.destroy();
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Benchmark
+    public Token createNewToken() {
+        return tokenStore.createNewToken("user-" + nextUser(), permissions, roles, roles);
+    }
+
+    @Benchmark
+    public Token findToken() {
+        Token token = tokens[nextUser()];
+        return tokenStore.findToken(token.getUserId(), token.getAccessToken());
+    }
+
+    @Benchmark
+    public List<Token> findTokensByUserId() {
+        return tokenStore.findTokensByUserId("user-" + nextUser());
+    }
+
+    private int nextUser() {
+        next = (next + 1) % userCount;
+        return next;
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.annotation.Logical;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.util.SubjectUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SubjectUtil权限和角色检查, size为用户拥有的权限/角色数
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubjectUtilBenchmark {
+
+    @Param({"8", "1000"})
+    private int size;
+
+    private Token token;
+    private String[] hitFirst;
+    private String[] hitLast;
+    private String[] miss;
+    private String[] requiresAll;
+
+    @Setup
+    public void setup() {
+        token = new Token();
+        token.setPermissions(Fixtures.permissions(size));
+        token.setRoles(Fixtures.roles(size));
+        hitFirst = new String[]{token.getPermissions()[0]};
+        hitLast = new String[]{token.getPermissions()[size - 1]};
+        miss = new String[]{"missing:permission"};
+        requiresAll = new String[]{token.getPermissions()[0], token.getPermissions()[size / 2], token.getPermissions()[size - 1]};
+    }
+
+    @Benchmark
+    public boolean hasPermissionHitFirst() {
+        return SubjectUtil.hasPermission(token, hitFirst, Logical.OR);
+    }
+
+    @Benchmark
+    public boolean hasPermissionHitLast() {
+        return SubjectUtil.hasPermission(token, hitLast, Logical.OR);
+    }
+
+    @Benchmark
+    public boolean hasPermissionMiss() {
+        return SubjectUtil.hasPermission(token, miss, Logical.OR);
+    }
+
+    @Benchmark
+    public boolean hasPermissionAnd() {
+        return SubjectUtil.hasPermission(token, requiresAll, Logical.AND);
+    }
+
+    @Benchmark
+    public boolean hasRoleLast() {
+        return SubjectUtil.hasRole(token, token.getRoles()[size - 1]);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.util.HmacJwtVerifier;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TokenUtil签发和解析, subjectSize控制token大小
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenUtilBenchmark {
+
+    @Param({"16", "256", "4096"})
+    private int subjectSize;
+
+    private Key key;
+    private String hexKey;
+    private String subject;
+    private String accessToken;
+
+    @Setup
+    public void setup() {
+        hexKey = TokenUtil.getHexKey();
+        key = TokenUtil.parseHexKey(hexKey);
+        subject = Fixtures.randomString(subjectSize);
+        accessToken = TokenUtil.buildToken(subject, TokenUtil.DEFAULT_EXPIRE, key).getAccessToken();
+    }
+
+    @Benchmark
+    public Token buildToken() {
+        return TokenUtil.buildToken(subject, TokenUtil.DEFAULT_EXPIRE, key);
+    }
+
+    @Benchmark
+    public Claims parseClaims() {
+        return TokenUtil.parseClaims(accessToken, key);
+    }
+
+    @Benchmark
+    public Claims parseClaimsFast() {
+        return HmacJwtVerifier.parseClaims(accessToken, key);
+    }
+
+    @Benchmark
+    public String parseSubjectFast() {
+        return HmacJwtVerifier.parseClaims(accessToken, key).getSubject();
+    }
+
+    @Benchmark
+    public String parseTokenHexKey() {
+        return TokenUtil.parseToken(accessToken, hexKey);
+    }
+}
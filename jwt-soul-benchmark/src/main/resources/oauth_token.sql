@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS oauth_token (
+  token_id INT NOT NULL AUTO_INCREMENT,
+  user_id VARCHAR(128) NOT NULL,
+  token_hash CHAR(64),
+  access_token VARCHAR(1024) NOT NULL,
+  permissions VARCHAR(4096),
+  roles VARCHAR(1024),
+  role_ids VARCHAR(1024),
+  token_key VARCHAR(256),
+  refresh_token VARCHAR(128),
+  expire_time DATETIME,
+  create_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+  update_time DATETIME DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (token_id)
+);
+CREATE INDEX IF NOT EXISTS idx_oauth_token_user_id ON oauth_token (user_id);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_oauth_token_hash ON oauth_token (token_hash);
+CREATE INDEX IF NOT EXISTS idx_oauth_token_expire_time ON oauth_token (expire_time);
+CREATE TABLE IF NOT EXISTS oauth_token_key (
+  token_key VARCHAR(256) NOT NULL
+);
@@ -0,0 +1,43 @@
+package com.github.zkoalas.jwts.benchmark;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 每个基准方法在当前jvm中各运行一次短迭代, 检查setup和方法本身不抛出异常
+ */
+public class BenchmarkSmokeTest {
+
+    @Test
+    public void allBenchmarksRun() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackage().getName() + ".*")
+                .forks(0)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .measurementTime(TimeValue.milliseconds(50))
+                .param("userCount", "10")
+                .param("subjectSize", "16")
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        Set<String> classes = new HashSet<String>();
+        for (RunResult result : results) {
+            assertTrue(result.getParams().getBenchmark(), result.getPrimaryResult().getScore() > 0);
+            String benchmark = result.getParams().getBenchmark();
+            classes.add(benchmark.substring(0, benchmark.lastIndexOf('.')));
+        }
+        assertEquals(6, classes.size());
+    }
+}
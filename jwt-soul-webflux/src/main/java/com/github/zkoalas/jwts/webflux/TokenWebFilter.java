@@ -0,0 +1,284 @@
+package com.github.zkoalas.jwts.webflux;
+
+import com.github.zkoalas.jwts.AuthorizationChecker;
+import com.github.zkoalas.jwts.exception.ErrorTokenException;
+import com.github.zkoalas.jwts.exception.ExpiredTokenException;
+import com.github.zkoalas.jwts.exception.TokenException;
+import com.github.zkoalas.jwts.exception.UnauthorizedException;
+import com.github.zkoalas.jwts.metrics.TokenMetrics;
+import com.github.zkoalas.jwts.provider.AsyncTokenStore;
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.KeyRing;
+import com.github.zkoalas.jwts.provider.SlidingExpiration;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.provider.TokenCache;
+import com.github.zkoalas.jwts.util.SubjectUtil;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.reflect.Method;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebFlux过滤器, 与TokenInterceptor相同的token提取、校验和权限检查, 查询store不阻塞事件线程
+ * 校验通过的token放在exchange的属性SubjectUtil.REQUEST_TOKEN_NAME中, 校验失败以TokenException结束
+ */
+@Slf4j
+public class TokenWebFilter implements WebFilter {
+    private final AsyncTokenStore tokenStore;
+    private final HandlerMapping handlerMapping;
+    private final Map<Method, AuthorizationChecker> checkers = new ConcurrentHashMap<>();
+    private final PathPatternParser patternParser = new PathPatternParser();
+    private final List<PathPattern> includePatterns = new ArrayList<>();
+    private final List<PathPattern> excludePatterns = new ArrayList<>();
+    private volatile TokenMetrics metrics = TokenMetrics.NOOP;
+
+    public TokenWebFilter(AsyncTokenStore tokenStore) {
+        this(tokenStore, null);
+    }
+
+    /**
+     * @param handlerMapping 用于查找处理方法以检查权限注解, 一般为RequestMappingHandlerMapping, 为null时不检查权限
+     */
+    public TokenWebFilter(AsyncTokenStore tokenStore, HandlerMapping handlerMapping) {
+        this.tokenStore = tokenStore;
+        this.handlerMapping = handlerMapping;
+    }
+
+    public void setMaxToken(Integer maxToken) {
+        Config.getInstance().setMaxToken(maxToken);
+    }
+
+    /**
+     * 使用HmacJwtVerifier代替jjwt校验HMAC签名的token
+     */
+    public void setFastVerify(boolean fastVerify) {
+        Config.getInstance().setFastVerify(fastVerify);
+    }
+
+    /**
+     * 记录各阶段耗时、失败次数和缓存命中, 默认不记录, TOTAL为调用下一个过滤器之前的耗时
+     */
+    public void setMetrics(TokenMetrics metrics) {
+        this.metrics = metrics == null ? TokenMetrics.NOOP : metrics;
+    }
+
+    /**
+     * 需要校验token的路径, 不设置时校验所有路径
+     */
+    public TokenWebFilter addPathPatterns(String... patterns) {
+        for (String pattern : patterns) {
+            includePatterns.add(patternParser.parse(pattern));
+        }
+        return this;
+    }
+
+    /**
+     * 不校验token的路径, 如登录接口
+     */
+    public TokenWebFilter excludePathPatterns(String... patterns) {
+        for (String pattern : patterns) {
+            excludePatterns.add(patternParser.parse(pattern));
+        }
+        return this;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!matches(exchange.getRequest().getPath().pathWithinApplication())) {
+            return chain.filter(exchange);
+        }
+        Timer timer = new Timer(metrics);
+        String access_token = getAccessToken(exchange.getRequest());
+        timer.lap(TokenMetrics.Phase.EXTRACT);
+        if (access_token == null || access_token.trim().isEmpty()) {
+            return timer.fail(new ErrorTokenException("token不能为空"));
+        }
+        TokenCache tokenCache = tokenStore.getTokenCache();
+        Token cached = tokenCache == null ? null : tokenCache.get(access_token);
+        if (tokenCache != null && timer.timed) {
+            timer.metrics.recordCacheAccess("token", cached != null);
+            timer.lap(TokenMetrics.Phase.CACHE);
+        }
+        Mono<Token> token = cached != null ? Mono.just(cached) : verifyToken(access_token, tokenCache, timer);
+        return token.flatMap(t -> checkPermission(exchange, t, timer))
+                .doOnError(TokenException.class, e -> timer.metrics.recordFailure(e.getClass()))
+                .doOnSuccessOrError((t, e) -> timer.total())
+                .flatMap(t -> {
+                    SlidingExpiration slidingExpiration = tokenStore.getSlidingExpiration();
+                    if (slidingExpiration != null) {
+                        slidingExpiration.touch(t);
+                    }
+                    exchange.getAttributes().put(SubjectUtil.REQUEST_TOKEN_NAME, t);
+                    return chain.filter(exchange);
+                });
+    }
+
+    private boolean matches(PathContainer path) {
+        for (PathPattern pattern : excludePatterns) {
+            if (pattern.matches(path)) {
+                return false;
+            }
+        }
+        if (includePatterns.isEmpty()) {
+            return true;
+        }
+        for (PathPattern pattern : includePatterns) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getAccessToken(ServerHttpRequest request) {
+        String access_token = request.getQueryParams().getFirst("access_token");
+        if (access_token == null || access_token.trim().isEmpty()) {
+            access_token = request.getHeaders().getFirst("Authorization");
+            if (access_token != null && access_token.length() >= 7) {
+                access_token = access_token.substring(7);
+            }
+        }
+        return access_token;
+    }
+
+    /**
+     * 校验签名并从store查询token, 校验通过后放入缓存
+     */
+    private Mono<Token> verifyToken(String access_token, TokenCache tokenCache, Timer timer) {
+        return Mono.fromFuture(tokenStore.getSigningKey())
+                .flatMap(key -> {
+                    Mono<Claims> claims = Mono.fromCallable(() -> parseClaims(access_token, key, timer));
+                    KeyRing keyRing = tokenStore.getKeyRing();
+                    // 首次使用或kid未知时key环会同步加载, 放到elastic线程中执行, 不阻塞事件线程
+                    if (keyRing != null && keyRing.mayLoad(TokenUtil.parseKid(access_token))) {
+                        return claims.subscribeOn(Schedulers.elastic());
+                    }
+                    return claims;
+                })
+                .flatMap(claims -> {
+                    // 查询期间token被删除时不再放入缓存
+                    long generation = tokenCache == null ? 0 : tokenCache.generation(claims.getSubject(), access_token);
+                    return Mono.fromFuture(tokenStore.findToken(claims, access_token))
+                            .doOnSuccess(found -> timer.lap(TokenMetrics.Phase.FIND_TOKEN))
+                            .switchIfEmpty(Mono.defer(() -> {
+                                log.debug("token不在系统中");
+                                return Mono.error(new ErrorTokenException());
+                            }))
+                            .doOnNext(token -> {
+                                if (tokenCache != null && claims.getExpiration() != null) {
+                                    tokenCache.put(token, claims.getExpiration().getTime(), generation);
+                                }
+                            });
+                });
+    }
+
+    private Claims parseClaims(String access_token, Key storeKey, Timer timer) {
+        try {
+            log.debug("-------------------------------------------");
+            log.debug("开始解析token：" + access_token);
+            KeyRing keyRing = tokenStore.getKeyRing();
+            // 按kid选择key, 没有kid的旧token使用store中的key
+            Key tokenKey = keyRing == null ? storeKey : keyRing.resolve(TokenUtil.parseKid(access_token), () -> storeKey);
+            timer.lap(TokenMetrics.Phase.KEY);
+            return TokenUtil.parseClaims(access_token, tokenKey);
+        } catch (ExpiredJwtException e) {
+            log.debug("token已过期");
+            throw new ExpiredTokenException();
+        } catch (Exception e) {
+            log.debug(e.getMessage());
+            throw new ErrorTokenException();
+        } finally {
+            timer.lap(TokenMetrics.Phase.VERIFY);
+        }
+    }
+
+    /**
+     * 按处理方法上的注解检查权限, 找不到处理方法时不检查
+     */
+    private Mono<Token> checkPermission(ServerWebExchange exchange, Token token, Timer timer) {
+        if (handlerMapping == null) {
+            return Mono.just(token);
+        }
+        return handlerMapping.getHandler(exchange)
+                .flatMap(handler -> {
+                    if (handler instanceof HandlerMethod) {
+                        Method method = ((HandlerMethod) handler).getMethod();
+                        if (method != null && !getChecker(method).check(token)) {
+                            return Mono.<Token>error(new UnauthorizedException());
+                        }
+                        timer.lap(TokenMetrics.Phase.AUTHORIZE);
+                    }
+                    return Mono.just(token);
+                })
+                .defaultIfEmpty(token);
+    }
+
+    /**
+     * 获取方法的权限检查器, 每个方法只解析一次注解
+     */
+    private AuthorizationChecker getChecker(Method method) {
+        AuthorizationChecker checker = checkers.get(method);
+        if (checker == null) {
+            checker = checkers.computeIfAbsent(method, AuthorizationChecker::compile);
+        }
+        return checker;
+    }
+
+    /**
+     * 一次请求的阶段计时, 各阶段在不同线程上依次执行, 不会并发访问
+     */
+    private static final class Timer {
+        private final TokenMetrics metrics;
+        private final boolean timed;
+        private final long start;
+        private volatile long time;
+
+        private Timer(TokenMetrics metrics) {
+            this.metrics = metrics;
+            this.timed = metrics.isEnabled();
+            this.start = timed ? System.nanoTime() : 0;
+            this.time = start;
+        }
+
+        /**
+         * 记录从上一阶段结束到现在的耗时
+         */
+        private void lap(TokenMetrics.Phase phase) {
+            if (timed) {
+                long now = System.nanoTime();
+                metrics.recordPhase(phase, now - time);
+                time = now;
+            }
+        }
+
+        private void total() {
+            if (timed) {
+                metrics.recordPhase(TokenMetrics.Phase.TOTAL, System.nanoTime() - start);
+            }
+        }
+
+        private <T> Mono<T> fail(TokenException e) {
+            metrics.recordFailure(e.getClass());
+            total();
+            return Mono.error(e);
+        }
+    }
+}
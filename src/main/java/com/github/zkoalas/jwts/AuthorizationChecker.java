@@ -0,0 +1,59 @@
+package com.github.zkoalas.jwts;
+
+import com.github.zkoalas.jwts.annotation.Logical;
+import com.github.zkoalas.jwts.annotation.RequiresPermissions;
+import com.github.zkoalas.jwts.annotation.RequiresRoles;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.util.PermissionDictionary;
+import com.github.zkoalas.jwts.util.PermissionSet;
+import com.github.zkoalas.jwts.util.SubjectUtil;
+
+import java.lang.reflect.Method;
+
+/**
+ * 预编译的权限检查器, 方法上的注解优先, 没有时使用类上的注解
+ */
+public class AuthorizationChecker {
+    public static final AuthorizationChecker NONE = new AuthorizationChecker(null, null, null, null);
+
+    private final PermissionSet permissions;
+    private final Logical permissionLogical;
+    private final PermissionSet roles;
+    private final Logical roleLogical;
+
+    private AuthorizationChecker(PermissionSet permissions, Logical permissionLogical, PermissionSet roles, Logical roleLogical) {
+        this.permissions = permissions;
+        this.permissionLogical = permissionLogical;
+        this.roles = roles;
+        this.roleLogical = roleLogical;
+    }
+
+    /**
+     * 解析方法的@RequiresPermissions和@RequiresRoles, 调用方应按方法缓存结果
+     */
+    public static AuthorizationChecker compile(Method method) {
+        RequiresPermissions requiresPermissions = method.getAnnotation(RequiresPermissions.class);
+        if (requiresPermissions == null) {
+            requiresPermissions = method.getDeclaringClass().getAnnotation(RequiresPermissions.class);
+        }
+        RequiresRoles requiresRoles = method.getAnnotation(RequiresRoles.class);
+        if (requiresRoles == null) {
+            requiresRoles = method.getDeclaringClass().getAnnotation(RequiresRoles.class);
+        }
+        if (requiresPermissions == null && requiresRoles == null) {
+            return NONE;
+        }
+        return new AuthorizationChecker(
+                requiresPermissions == null ? null : PermissionDictionary.PERMISSIONS.toSet(requiresPermissions.value()),
+                requiresPermissions == null ? null : requiresPermissions.logical(),
+                requiresRoles == null ? null : PermissionDictionary.ROLES.toSet(requiresRoles.value()),
+                requiresRoles == null ? null : requiresRoles.logical());
+    }
+
+    public boolean check(Token token) {
+        if (permissions != null && !SubjectUtil.hasPermission(token, permissions, permissionLogical)) {
+            return false;
+        }
+        return roles == null || SubjectUtil.hasRole(token, roles, roleLogical);
+    }
+}
@@ -1,14 +1,14 @@
 package com.github.zkoalas.jwts;
 
-import com.github.zkoalas.jwts.annotation.Logical;
-import com.github.zkoalas.jwts.annotation.RequiresPermissions;
-import com.github.zkoalas.jwts.annotation.RequiresRoles;
 import com.github.zkoalas.jwts.exception.ErrorTokenException;
 import com.github.zkoalas.jwts.exception.ExpiredTokenException;
+import com.github.zkoalas.jwts.exception.TokenException;
 import com.github.zkoalas.jwts.exception.UnauthorizedException;
+import com.github.zkoalas.jwts.metrics.TokenMetrics;
 import com.github.zkoalas.jwts.provider.*;
 import com.github.zkoalas.jwts.util.SubjectUtil;
 import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.ObjectUtils;
@@ -20,6 +20,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
+import java.security.Key;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 拦截器
@@ -28,6 +31,8 @@ import java.math.BigInteger;
 public class TokenInterceptor extends HandlerInterceptorAdapter {
 
     private BaseTokenStore baseTokenStore;
+    private final Map<Method, AuthorizationChecker> checkers = new ConcurrentHashMap<>();
+    private volatile TokenMetrics metrics = TokenMetrics.NOOP;
 
     public TokenInterceptor(BaseTokenStore tokenStore, Integer maxToken) {
         setTokenStore(tokenStore);
@@ -46,74 +51,138 @@ public class TokenInterceptor extends HandlerInterceptorAdapter {
         Config.getInstance().setMaxToken(maxToken);
     }
 
+    /**
+     * 使用HmacJwtVerifier代替jjwt校验HMAC签名的token
+     */
+    public void setFastVerify(boolean fastVerify) {
+        Config.getInstance().setFastVerify(fastVerify);
+    }
+
+    /**
+     * 记录各阶段耗时、失败次数和缓存命中, 默认不记录
+     */
+    public void setMetrics(TokenMetrics metrics) {
+        this.metrics = metrics == null ? TokenMetrics.NOOP : metrics;
+    }
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        String access_token = request.getParameter("access_token");
-        if (access_token == null || access_token.trim().isEmpty()) {
-            access_token = request.getHeader("Authorization");
-            if (access_token != null && access_token.length() >= 7) {
-                access_token = access_token.substring(7);
+        TokenMetrics metrics = this.metrics;
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            String access_token = request.getParameter("access_token");
+            if (access_token == null || access_token.trim().isEmpty()) {
+                access_token = request.getHeader("Authorization");
+                if (access_token != null && access_token.length() >= 7) {
+                    access_token = access_token.substring(7);
+                }
+            }
+            long time = timed ? lap(metrics, TokenMetrics.Phase.EXTRACT, start) : 0;
+            if (access_token == null || access_token.trim().isEmpty()) {
+                throw new ErrorTokenException("token不能为空");
+            }
+            TokenCache tokenCache = baseTokenStore.getTokenCache();
+            Token token = tokenCache == null ? null : tokenCache.get(access_token);
+            if (tokenCache != null && timed) {
+                metrics.recordCacheAccess("token", token != null);
+                time = lap(metrics, TokenMetrics.Phase.CACHE, time);
+            }
+            if (token == null) {
+                token = verifyToken(access_token, tokenCache, metrics, timed);
+                time = timed ? System.nanoTime() : 0;
+            }
+            // 检查权限
+            if (handler instanceof HandlerMethod) {
+                Method method = ((HandlerMethod) handler).getMethod();
+                if (method != null && !getChecker(method).check(token)) {
+                    throw new UnauthorizedException();
+                }
+                if (timed) {
+                    lap(metrics, TokenMetrics.Phase.AUTHORIZE, time);
+                }
+            }
+            SlidingExpiration slidingExpiration = baseTokenStore.getSlidingExpiration();
+            if (slidingExpiration != null) {
+                slidingExpiration.touch(token);
+            }
+            request.setAttribute(SubjectUtil.REQUEST_TOKEN_NAME, token);
+            log.debug("-------------------------------------------");
+            return super.preHandle(request, response, handler);
+        } catch (TokenException e) {
+            metrics.recordFailure(e.getClass());
+            throw e;
+        } finally {
+            if (timed) {
+                metrics.recordPhase(TokenMetrics.Phase.TOTAL, System.nanoTime() - start);
             }
         }
-        if (access_token == null || access_token.trim().isEmpty()) {
-            throw new ErrorTokenException("token不能为空");
-        }
-        String subject;
+    }
+
+    /**
+     * 校验签名并从store查询token, 校验通过后放入缓存
+     */
+    private Token verifyToken(String access_token, TokenCache tokenCache, TokenMetrics metrics, boolean timed) {
+        long time = timed ? System.nanoTime() : 0;
+        Claims claims;
         try {
-            String  tokenKey = baseTokenStore.getTokenKey();
             log.debug("-------------------------------------------");
-            log.debug("开始解析token：" + access_token);
-            log.debug("使用tokenKey：" + tokenKey);
-            subject = TokenUtil.parseToken(access_token, tokenKey);
+            log.debug("开始解析token：{}", access_token);
+            KeyRing keyRing = baseTokenStore.getKeyRing();
+            Key tokenKey;
+            if (keyRing != null) {
+                // 按kid选择key, 没有kid的旧token使用store中的key
+                tokenKey = keyRing.resolve(TokenUtil.parseKid(access_token), baseTokenStore::getSigningKey);
+            } else {
+                // 签名key由store缓存, 不再每次请求访问store
+                tokenKey = baseTokenStore.getSigningKey();
+            }
+            time = timed ? lap(metrics, TokenMetrics.Phase.KEY, time) : 0;
+            claims = TokenUtil.parseClaims(access_token, tokenKey);
         } catch (ExpiredJwtException e) {
             log.debug("token已过期");
             throw new ExpiredTokenException();
         } catch (Exception e) {
             log.debug(e.getMessage());
             throw new ErrorTokenException();
+        } finally {
+            if (timed) {
+                time = lap(metrics, TokenMetrics.Phase.VERIFY, time);
+            }
+        }
+        // 查询期间token被删除时不再放入缓存
+        long generation = tokenCache == null ? 0 : tokenCache.generation(claims.getSubject(), access_token);
+        Token token = baseTokenStore.findToken(claims, access_token);
+        if (timed) {
+            lap(metrics, TokenMetrics.Phase.FIND_TOKEN, time);
         }
-        Token token = baseTokenStore.findToken(subject, access_token);
         if (token == null) {
             log.debug("token不在系统中");
             throw new ErrorTokenException();
         }
-        // 检查权限
-        if (handler instanceof HandlerMethod) {
-            Method method = ((HandlerMethod) handler).getMethod();
-            if (method != null) {
-                if (!checkPermission(method, token) || !checkRole(method, token)) {
-                    throw new UnauthorizedException();
-                }
-            }
+        if (tokenCache != null && claims.getExpiration() != null) {
+            tokenCache.put(token, claims.getExpiration().getTime(), generation);
         }
-        request.setAttribute(SubjectUtil.REQUEST_TOKEN_NAME, token);
-        log.debug("-------------------------------------------");
-        return super.preHandle(request, response, handler);
+        return token;
     }
 
-    private boolean checkPermission(Method method, Token token) {
-        RequiresPermissions annotation = method.getAnnotation(RequiresPermissions.class);
-        if (annotation == null) {
-            annotation = method.getDeclaringClass().getAnnotation(RequiresPermissions.class);
-            if (annotation == null) {
-                return true;
-            }
-        }
-        String[] requiresPermissions = annotation.value();
-        Logical logical = annotation.logical();
-        return SubjectUtil.hasPermission(token, requiresPermissions, logical);
+    /**
+     * 记录从start到现在的阶段耗时, 返回当前时间作为下一阶段的开始
+     */
+    private static long lap(TokenMetrics metrics, TokenMetrics.Phase phase, long start) {
+        long now = System.nanoTime();
+        metrics.recordPhase(phase, now - start);
+        return now;
     }
 
-    private boolean checkRole(Method method, Token token) {
-        RequiresRoles annotation = method.getAnnotation(RequiresRoles.class);
-        if (annotation == null) {
-            annotation = method.getDeclaringClass().getAnnotation(RequiresRoles.class);
-            if (annotation == null) {
-                return true;
-            }
+    /**
+     * 获取方法的权限检查器, 每个方法只解析一次注解
+     */
+    private AuthorizationChecker getChecker(Method method) {
+        AuthorizationChecker checker = checkers.get(method);
+        if (checker == null) {
+            checker = checkers.computeIfAbsent(method, AuthorizationChecker::compile);
         }
-        String[] requiresRoles = annotation.value();
-        Logical logical = annotation.logical();
-        return SubjectUtil.hasRole(token, requiresRoles, logical);
+        return checker;
     }
 }
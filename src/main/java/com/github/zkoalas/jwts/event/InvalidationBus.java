@@ -0,0 +1,210 @@
+package com.github.zkoalas.jwts.event;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 跨节点的缓存失效通道
+ * 事件先在本地按userId合并, 每隔flushInterval毫秒批量发送一次, 其他节点的缓存最多延迟flushInterval加上传输时间
+ * 第一次发布事件时才启动发送线程, 发送失败的事件放回缓冲区, 下次一起发送
+ */
+@Slf4j
+public abstract class InvalidationBus {
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;  // 默认发送间隔,单位毫秒
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;  // 每条消息最多包含的条目数
+
+    private static final String PRE_USER = "u ";
+    private static final String PRE_TOKEN = "t ";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<InvalidationListener>();
+    private Set<String> pendingUserIds = new LinkedHashSet<String>();
+    private Set<String> pendingTokens = new LinkedHashSet<String>();
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private final long flushInterval;
+    private ScheduledExecutorService scheduler;
+    private boolean closed = false;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+
+    protected InvalidationBus() {
+        this(DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param flushInterval 发送间隔, 单位毫秒
+     */
+    protected InvalidationBus(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * 启动发送线程, 在子类构造完成后的第一次发布时调用
+     */
+    private void start() {
+        if (scheduler != null || closed) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("发送失效事件失败, 下次重试：" + e.getMessage());
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void addListener(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 通知其他节点用户的token或权限已变化
+     */
+    public synchronized void publishUser(String userId) {
+        start();
+        if (userId != null && !pendingUserIds.add(userId)) {
+            coalescedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 通知其他节点token已移除
+     */
+    public synchronized void publishToken(String accessToken) {
+        start();
+        if (accessToken != null && !pendingTokens.add(accessToken)) {
+            coalescedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 立即发送缓冲的事件, 发送失败时未发送的事件放回缓冲区并抛出异常
+     */
+    public void flush() {
+        Set<String> userIds;
+        Set<String> tokens;
+        synchronized (this) {
+            if (pendingUserIds.isEmpty() && pendingTokens.isEmpty()) {
+                return;
+            }
+            userIds = pendingUserIds;
+            tokens = pendingTokens;
+            pendingUserIds = new LinkedHashSet<String>();
+            pendingTokens = new LinkedHashSet<String>();
+        }
+        List<String> entries = new ArrayList<String>(userIds.size() + tokens.size());
+        for (String userId : userIds) {
+            entries.add(PRE_USER + userId);
+        }
+        for (String token : tokens) {
+            entries.add(PRE_TOKEN + token);
+        }
+        for (int i = 0; i < entries.size(); i += maxBatchSize) {
+            List<String> batch = entries.subList(i, Math.min(i + maxBatchSize, entries.size()));
+            try {
+                send(nodeId + "\n" + String.join("\n", batch));
+            } catch (RuntimeException e) {
+                requeue(entries.subList(i, entries.size()));
+                throw e;
+            }
+            publishedCount.incrementAndGet();
+        }
+    }
+
+    private synchronized void requeue(List<String> entries) {
+        for (String entry : entries) {
+            if (entry.startsWith(PRE_USER)) {
+                pendingUserIds.add(entry.substring(PRE_USER.length()));
+            } else {
+                pendingTokens.add(entry.substring(PRE_TOKEN.length()));
+            }
+        }
+    }
+
+    /**
+     * 发送消息到其他节点
+     */
+    protected abstract void send(String message);
+
+    /**
+     * 收到消息, 由实现类在收到其他节点消息时调用
+     */
+    protected void receive(String message) {
+        String[] lines = message.split("\n");
+        if (lines.length == 0 || nodeId.equals(lines[0])) {
+            return;
+        }
+        Set<String> userIds = new LinkedHashSet<String>();
+        Set<String> tokens = new LinkedHashSet<String>();
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].startsWith(PRE_USER)) {
+                userIds.add(lines[i].substring(PRE_USER.length()));
+            } else if (lines[i].startsWith(PRE_TOKEN)) {
+                tokens.add(lines[i].substring(PRE_TOKEN.length()));
+            }
+        }
+        receivedCount.incrementAndGet();
+        for (InvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidate(userIds, tokens);
+            } catch (Exception e) {
+                log.warn("处理失效事件失败：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 停止发送, 未发送的事件立即发送
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        }
+        flush();
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.zkoalas.jwts.event;
+
+import java.util.Set;
+
+/**
+ * 收到其他节点的失效事件时回调
+ */
+public interface InvalidationListener {
+
+    /**
+     * @param userIds      权限、角色或token发生变化的用户
+     * @param accessTokens 被移除的token
+     */
+    void onInvalidate(Set<String> userIds, Set<String> accessTokens);
+}
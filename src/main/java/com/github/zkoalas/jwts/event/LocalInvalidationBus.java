@@ -0,0 +1,40 @@
+package com.github.zkoalas.jwts.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 同一JVM内的失效通道, 用于测试或单机多个store实例
+ */
+public class LocalInvalidationBus extends InvalidationBus {
+    private final List<LocalInvalidationBus> channel;
+
+    /**
+     * 创建新的通道
+     */
+    public LocalInvalidationBus() {
+        this.channel = new CopyOnWriteArrayList<LocalInvalidationBus>();
+        this.channel.add(this);
+    }
+
+    /**
+     * 加入peer所在的通道
+     */
+    public LocalInvalidationBus(LocalInvalidationBus peer) {
+        this.channel = peer.channel;
+        this.channel.add(this);
+    }
+
+    @Override
+    protected void send(String message) {
+        for (LocalInvalidationBus bus : channel) {
+            bus.receive(message);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        channel.remove(this);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.zkoalas.jwts.event;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于redis发布订阅的失效通道
+ */
+public class RedisInvalidationBus extends InvalidationBus {
+    public static final String DEFAULT_CHANNEL = "oauth_token_invalidate";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final RedisMessageListenerContainer container;
+
+    public RedisInvalidationBus(StringRedisTemplate redisTemplate) {
+        this(redisTemplate, DEFAULT_CHANNEL, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param flushInterval 发送间隔, 单位毫秒
+     */
+    public RedisInvalidationBus(StringRedisTemplate redisTemplate, String channel, long flushInterval) {
+        super(flushInterval);
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(redisTemplate.getConnectionFactory());
+        this.container.addMessageListener((message, pattern) ->
+                receive(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(channel));
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @Override
+    protected void send(String message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            container.stop();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.zkoalas.jwts.metrics;
+
+import com.github.zkoalas.jwts.provider.KeyRing;
+import com.github.zkoalas.jwts.provider.SlidingExpiration;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.provider.TokenCache;
+import com.github.zkoalas.jwts.provider.TokenStore;
+import io.jsonwebtoken.Claims;
+import org.springframework.util.Assert;
+
+import java.security.Key;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 记录每个store操作耗时的TokenStore包装
+ */
+public class MeteredTokenStore implements TokenStore {
+    private final TokenStore tokenStore;
+    private final TokenMetrics metrics;
+    private final String storeName;
+
+    public MeteredTokenStore(TokenStore tokenStore, TokenMetrics metrics) {
+        Assert.notNull(tokenStore, "TokenStore required");
+        Assert.notNull(metrics, "TokenMetrics required");
+        this.tokenStore = tokenStore;
+        this.metrics = metrics;
+        this.storeName = tokenStore.getClass().getSimpleName();
+    }
+
+    public TokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    @Override
+    public String getTokenKey() {
+        return time("getTokenKey", tokenStore::getTokenKey);
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return time("getSigningKey", tokenStore::getSigningKey);
+    }
+
+    @Override
+    public Token findToken(String subject, String access_token) {
+        return time("findToken", () -> tokenStore.findToken(subject, access_token));
+    }
+
+    @Override
+    public Token findToken(Claims claims, String access_token) {
+        return time("findToken", () -> tokenStore.findToken(claims, access_token));
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return tokenStore.getKeyRing();
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenStore.getTokenCache();
+    }
+
+    @Override
+    public SlidingExpiration getSlidingExpiration() {
+        return tokenStore.getSlidingExpiration();
+    }
+
+    @Override
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
+        return time("createNewToken", () -> tokenStore.createNewToken(userId, permissions, roles, roleIds));
+    }
+
+    @Override
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        return time("createNewToken", () -> tokenStore.createNewToken(userId, permissions, roles, roleIds, expire));
+    }
+
+    @Override
+    public int storeToken(Token token) {
+        return time("storeToken", () -> tokenStore.storeToken(token));
+    }
+
+    @Override
+    public List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        return time("createNewTokens", () -> tokenStore.createNewTokens(userIds, permissions, roles, roleIds, expire));
+    }
+
+    @Override
+    public int storeTokens(List<Token> tokens) {
+        return time("storeTokens", () -> tokenStore.storeTokens(tokens));
+    }
+
+    @Override
+    public List<Token> findTokensByUserId(String userId) {
+        return time("findTokensByUserId", () -> tokenStore.findTokensByUserId(userId));
+    }
+
+    @Override
+    public int removeToken(String userId, String access_token) {
+        return time("removeToken", () -> tokenStore.removeToken(userId, access_token));
+    }
+
+    @Override
+    public int removeTokensByUserId(String userId) {
+        return time("removeTokensByUserId", () -> tokenStore.removeTokensByUserId(userId));
+    }
+
+    @Override
+    public int removeTokens(List<Token> tokens) {
+        return time("removeTokens", () -> tokenStore.removeTokens(tokens));
+    }
+
+    @Override
+    public int removeTokensByUserIds(List<String> userIds) {
+        return time("removeTokensByUserIds", () -> tokenStore.removeTokensByUserIds(userIds));
+    }
+
+    @Override
+    public int updateRolesByUserId(String userId, String[] roles) {
+        return time("updateRolesByUserId", () -> tokenStore.updateRolesByUserId(userId, roles));
+    }
+
+    @Override
+    public int updateRoleIdsByUserId(String userId, String[] roleIds) {
+        return time("updateRoleIdsByUserId", () -> tokenStore.updateRoleIdsByUserId(userId, roleIds));
+    }
+
+    @Override
+    public int updatePermissionsByUserId(String userId, String[] permissions) {
+        return time("updatePermissionsByUserId", () -> tokenStore.updatePermissionsByUserId(userId, permissions));
+    }
+
+    private <T> T time(String operation, Supplier<T> call) {
+        if (!metrics.isEnabled()) {
+            return call.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            metrics.recordStoreOperation(storeName, operation, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.zkoalas.jwts.metrics;
+
+import com.github.zkoalas.jwts.exception.TokenException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的指标实现, 需要引入micrometer-core
+ * 指标: jwt.soul.phase(phase), jwt.soul.store(store, operation), jwt.soul.failures(type), jwt.soul.cache(cache, result)
+ */
+public class MicrometerTokenMetrics implements TokenMetrics {
+    public static final String PREFIX = "jwt.soul";
+
+    private final MeterRegistry registry;
+    private final Map<Phase, Timer> phaseTimers = new EnumMap<>(Phase.class);
+    private final Map<String, Timer> storeTimers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Counter> failureCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> cacheCounters = new ConcurrentHashMap<>();
+
+    public MicrometerTokenMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        // 阶段固定, 提前注册避免请求时查找
+        for (Phase phase : Phase.values()) {
+            phaseTimers.put(phase, Timer.builder(PREFIX + ".phase")
+                    .tag("phase", phase.name().toLowerCase())
+                    .register(registry));
+        }
+    }
+
+    @Override
+    public void recordPhase(Phase phase, long nanos) {
+        phaseTimers.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordStoreOperation(String store, String operation, long nanos) {
+        String key = store + '.' + operation;
+        Timer timer = storeTimers.get(key);
+        if (timer == null) {
+            timer = storeTimers.computeIfAbsent(key, k -> Timer.builder(PREFIX + ".store")
+                    .tag("store", store)
+                    .tag("operation", operation)
+                    .register(registry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordFailure(Class<? extends TokenException> type) {
+        Counter counter = failureCounters.get(type);
+        if (counter == null) {
+            counter = failureCounters.computeIfAbsent(type, k -> Counter.builder(PREFIX + ".failures")
+                    .tag("type", type.getSimpleName())
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void recordCacheAccess(String cache, boolean hit) {
+        String key = hit ? cache + ".hit" : cache + ".miss";
+        Counter counter = cacheCounters.get(key);
+        if (counter == null) {
+            counter = cacheCounters.computeIfAbsent(key, k -> Counter.builder(PREFIX + ".cache")
+                    .tag("cache", cache)
+                    .tag("result", hit ? "hit" : "miss")
+                    .register(registry));
+        }
+        counter.increment();
+    }
+}
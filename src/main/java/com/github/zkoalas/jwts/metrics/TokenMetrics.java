@@ -0,0 +1,60 @@
+package com.github.zkoalas.jwts.metrics;
+
+import com.github.zkoalas.jwts.exception.TokenException;
+
+/**
+ * 鉴权指标的扩展接口, 默认实现NOOP不记录任何指标
+ * isEnabled()返回false时调用方不会读取时钟
+ */
+public interface TokenMetrics {
+    TokenMetrics NOOP = new TokenMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * 拦截器处理token的阶段
+     */
+    enum Phase {
+        EXTRACT,    // 从请求中提取token
+        CACHE,      // 查询已校验token的缓存
+        KEY,        // 获取签名key
+        VERIFY,     // 校验签名并解析claims
+        FIND_TOKEN, // 从store查询token
+        AUTHORIZE,  // 检查权限和角色
+        TOTAL       // 整个preHandle
+    }
+
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @param nanos 阶段耗时, 单位纳秒
+     */
+    default void recordPhase(Phase phase, long nanos) {
+    }
+
+    /**
+     * @param store     store类名
+     * @param operation 操作名, 即方法名
+     * @param nanos     耗时, 单位纳秒
+     */
+    default void recordStoreOperation(String store, String operation, long nanos) {
+    }
+
+    /**
+     * 鉴权失败, type为ExpiredTokenException、ErrorTokenException或UnauthorizedException等
+     */
+    default void recordFailure(Class<? extends TokenException> type) {
+    }
+
+    /**
+     * @param cache 缓存名, 如token
+     * @param hit   是否命中
+     */
+    default void recordCacheAccess(String cache, boolean hit) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.Claims;
+
+import java.security.Key;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 非阻塞操作token的接口, 用于WebFlux等事件驱动环境
+ * 查询不到token时future以null结束, 不会抛出异常
+ */
+public interface AsyncTokenStore {
+
+    /**
+     * 获取解码后的签名Key, 实现类应缓存该Key, 已加载时返回已完成的future
+     */
+    CompletableFuture<Key> getSigningKey();
+
+    CompletableFuture<Token> findToken(String subject, String access_token);
+
+    /**
+     * 使用已解析的claims查询token, 无状态的store可直接从claims构造token
+     */
+    default CompletableFuture<Token> findToken(Claims claims, String access_token) {
+        return findToken(claims.getSubject(), access_token);
+    }
+
+    default CompletableFuture<Token> createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
+        return createNewToken(userId, permissions, roles, roleIds, TokenUtil.DEFAULT_EXPIRE);
+    }
+
+    CompletableFuture<Token> createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire);
+
+    CompletableFuture<List<Token>> findTokensByUserId(String userId);
+
+    CompletableFuture<Integer> removeToken(String userId, String access_token);
+
+    CompletableFuture<Integer> removeTokensByUserId(String userId);
+
+    CompletableFuture<Integer> updateRolesByUserId(String userId, String[] roles);
+
+    CompletableFuture<Integer> updateRoleIdsByUserId(String userId, String[] roleIds);
+
+    CompletableFuture<Integer> updatePermissionsByUserId(String userId, String[] permissions);
+
+    /**
+     * 签名key环, 返回null表示只使用getSigningKey()
+     */
+    default KeyRing getKeyRing() {
+        return null;
+    }
+
+    /**
+     * 已校验token的本地缓存, 返回null表示不使用缓存
+     */
+    default TokenCache getTokenCache() {
+        return null;
+    }
+
+    /**
+     * 滑动过期, 返回null表示token按签发时的过期时间失效
+     */
+    default SlidingExpiration getSlidingExpiration() {
+        return null;
+    }
+}
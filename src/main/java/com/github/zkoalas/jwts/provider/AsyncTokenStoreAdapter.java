@@ -0,0 +1,158 @@
+package com.github.zkoalas.jwts.provider;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.util.Assert;
+
+import java.security.Key;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 把阻塞的TokenStore(如JdbcTokenStore)适配为AsyncTokenStore, 在有界线程池中执行
+ * 线程和队列都满时future以RejectedExecutionException结束, 不阻塞调用线程
+ */
+public class AsyncTokenStoreAdapter implements AsyncTokenStore {
+    public static final int DEFAULT_THREADS = 16;  // 默认线程数, 不应超过连接池大小
+    public static final int DEFAULT_QUEUE_SIZE = 1024;  // 默认等待队列长度
+
+    private final TokenStore tokenStore;
+    private final ThreadPoolExecutor executor;
+    private volatile boolean keyLoaded;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public AsyncTokenStoreAdapter(TokenStore tokenStore) {
+        this(tokenStore, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param threads   线程数
+     * @param queueSize 等待队列长度
+     */
+    public AsyncTokenStoreAdapter(TokenStore tokenStore, int threads, int queueSize) {
+        Assert.notNull(tokenStore, "TokenStore required");
+        this.tokenStore = tokenStore;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "jwt-soul-store-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public TokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    @Override
+    public CompletableFuture<Key> getSigningKey() {
+        // store会缓存key, 只有首次加载需要放到线程池
+        if (keyLoaded) {
+            return CompletableFuture.completedFuture(tokenStore.getSigningKey());
+        }
+        return submit(() -> {
+            Key key = tokenStore.getSigningKey();
+            keyLoaded = true;
+            return key;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Token> findToken(String subject, String access_token) {
+        return submit(() -> tokenStore.findToken(subject, access_token));
+    }
+
+    @Override
+    public CompletableFuture<Token> findToken(Claims claims, String access_token) {
+        return submit(() -> tokenStore.findToken(claims, access_token));
+    }
+
+    @Override
+    public CompletableFuture<Token> createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        return submit(() -> tokenStore.createNewToken(userId, permissions, roles, roleIds, expire));
+    }
+
+    @Override
+    public CompletableFuture<List<Token>> findTokensByUserId(String userId) {
+        return submit(() -> tokenStore.findTokensByUserId(userId));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeToken(String userId, String access_token) {
+        return submit(() -> tokenStore.removeToken(userId, access_token));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeTokensByUserId(String userId) {
+        return submit(() -> tokenStore.removeTokensByUserId(userId));
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateRolesByUserId(String userId, String[] roles) {
+        return submit(() -> tokenStore.updateRolesByUserId(userId, roles));
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateRoleIdsByUserId(String userId, String[] roleIds) {
+        return submit(() -> tokenStore.updateRoleIdsByUserId(userId, roleIds));
+    }
+
+    @Override
+    public CompletableFuture<Integer> updatePermissionsByUserId(String userId, String[] permissions) {
+        return submit(() -> tokenStore.updatePermissionsByUserId(userId, permissions));
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return tokenStore.getKeyRing();
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenStore.getTokenCache();
+    }
+
+    @Override
+    public SlidingExpiration getSlidingExpiration() {
+        return tokenStore.getSlidingExpiration();
+    }
+
+    /**
+     * 关闭线程池, 已提交的任务会继续执行
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+}
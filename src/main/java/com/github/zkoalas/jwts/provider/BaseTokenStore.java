@@ -1,6 +1,11 @@
 package com.github.zkoalas.jwts.provider;
 
 
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.Claims;
+
+import java.security.Key;
+
 /**
  * 所有store的最高父接口
  */
@@ -8,5 +13,40 @@ public interface BaseTokenStore {
 
     String getTokenKey();
 
+    /**
+     * 获取解码后的签名Key, 实现类应缓存该Key避免每次访问store
+     */
+    default Key getSigningKey() {
+        return TokenUtil.parseHexKey(getTokenKey());
+    }
+
     Token findToken(String subject, String access_token);
+
+    /**
+     * 使用已解析的claims查询token, 无状态的store可直接从claims构造token
+     */
+    default Token findToken(Claims claims, String access_token) {
+        return findToken(claims.getSubject(), access_token);
+    }
+
+    /**
+     * 签名key环, 返回null表示只使用getSigningKey()
+     */
+    default KeyRing getKeyRing() {
+        return null;
+    }
+
+    /**
+     * 已校验token的本地缓存, 返回null表示不使用缓存
+     */
+    default TokenCache getTokenCache() {
+        return null;
+    }
+
+    /**
+     * 滑动过期, 返回null表示token按签发时的过期时间失效
+     */
+    default SlidingExpiration getSlidingExpiration() {
+        return null;
+    }
 }
@@ -0,0 +1,127 @@
+package com.github.zkoalas.jwts.provider;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Collection;
+
+/**
+ * 由jwt claims直接构造的token, 权限和角色在首次读取时才从claims转换
+ */
+public class ClaimsToken extends Token {
+    private static final long serialVersionUID = -4127405582930771372L;
+
+    public static final String CLAIM_PERMISSIONS = "perms";  // 用户权限
+    public static final String CLAIM_ROLES = "roles";  // 用户角色
+    public static final String CLAIM_ROLE_IDS = "rids";  // 角色id
+
+    private final transient Claims claims;
+    private transient volatile boolean permissionsLoaded;
+    private transient volatile boolean rolesLoaded;
+    private transient volatile boolean roleIdsLoaded;
+
+    public ClaimsToken(Claims claims, String accessToken) {
+        this.claims = claims;
+        setAccessToken(accessToken);
+        setUserId(claims.getSubject());
+        if (claims.getExpiration() != null) {
+            setExpireTime(claims.getExpiration().getTime());
+        }
+    }
+
+    /**
+     * 是否为typed claims模式签发的token
+     */
+    public static boolean isTypedClaims(Claims claims) {
+        return claims.containsKey(CLAIM_PERMISSIONS) || claims.containsKey(CLAIM_ROLES);
+    }
+
+    /**
+     * 原始claims, 不作为bean属性以免被序列化
+     */
+    public Claims claims() {
+        return claims;
+    }
+
+    @Override
+    public String[] getPermissions() {
+        if (!permissionsLoaded) {
+            super.setPermissions(toArray(claims.get(CLAIM_PERMISSIONS)));
+            permissionsLoaded = true;
+        }
+        return super.getPermissions();
+    }
+
+    @Override
+    public void setPermissions(String[] permissions) {
+        super.setPermissions(permissions);
+        permissionsLoaded = true;
+    }
+
+    @Override
+    public String[] getRoles() {
+        if (!rolesLoaded) {
+            super.setRoles(toArray(claims.get(CLAIM_ROLES)));
+            rolesLoaded = true;
+        }
+        return super.getRoles();
+    }
+
+    @Override
+    public void setRoles(String[] roles) {
+        super.setRoles(roles);
+        rolesLoaded = true;
+    }
+
+    @Override
+    public String[] getRoleIds() {
+        if (!roleIdsLoaded) {
+            super.setRoleIds(toArray(claims.get(CLAIM_ROLE_IDS)));
+            roleIdsLoaded = true;
+        }
+        return super.getRoleIds();
+    }
+
+    @Override
+    public void setRoleIds(String[] roleIds) {
+        super.setRoleIds(roleIds);
+        roleIdsLoaded = true;
+    }
+
+    /**
+     * 序列化为普通Token, 不依赖claims
+     */
+    private Object writeReplace() {
+        Token token = new Token();
+        token.setAccessToken(getAccessToken());
+        token.setTokenKey(getTokenKey());
+        token.setTokenId(getTokenId());
+        token.setUserId(getUserId());
+        token.setPermissions(getPermissions());
+        token.setRoles(getRoles());
+        token.setRoleIds(getRoleIds());
+        token.setRefreshToken(getRefreshToken());
+        token.setExpireTime(getExpireTime());
+        token.setCreateTime(getCreateTime());
+        token.setUpdateTime(getUpdateTime());
+        return token;
+    }
+
+    private static String[] toArray(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String[]) {
+            return (String[]) value;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            String[] array = new String[collection.size()];
+            int i = 0;
+            for (Object o : collection) {
+                array[i++] = o == null ? null : String.valueOf(o);
+            }
+            return array;
+        }
+        return new String[]{String.valueOf(value)};
+    }
+}
@@ -6,6 +6,7 @@ package com.github.zkoalas.jwts.provider;
 public class Config {
     private static volatile Config instance;
     private Integer maxToken;  // 用户最大token数
+    private boolean fastVerify = false;  // 是否使用HmacJwtVerifier校验token
 
     private Config() {
     }
@@ -31,4 +32,12 @@ public class Config {
     public void setMaxToken(Integer maxToken) {
         this.maxToken = maxToken;
     }
+
+    public boolean isFastVerify() {
+        return fastVerify;
+    }
+
+    public void setFastVerify(boolean fastVerify) {
+        this.fastVerify = fastVerify;
+    }
 }
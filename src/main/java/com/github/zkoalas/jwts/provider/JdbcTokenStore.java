@@ -5,14 +5,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
+import com.github.zkoalas.jwts.event.InvalidationBus;
+import com.github.zkoalas.jwts.role.RolePermissions;
+import com.github.zkoalas.jwts.util.PermissionDictionary;
 import com.github.zkoalas.jwts.util.TokenUtil;
 
 import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.security.Key;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
@@ -21,17 +29,36 @@ import java.util.List;
 @Slf4j
 public class JdbcTokenStore implements TokenStore {
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
     private RowMapper<Token> rowMapper = new TokenRowMapper();
-
-    private static final String UPDATE_FIELDS = "access_token, user_id, permissions, roles, role_ids, refresh_token, expire_time";
+    private final TokenKeyProvider keyProvider = new TokenKeyProvider(this::loadTokenKey);
+    private TokenCache tokenCache;
+    private KeyRing keyRing;
+    private InvalidationBus invalidationBus;
+    private SlidingExpiration slidingExpiration;
+    private TokenWriteBehind writeBehind;
+    private RolePermissions rolePermissions;
+    private boolean filterExpired = false;  // 查询和淘汰时是否忽略已过期的token
+    private boolean hashTokens = false;  // 是否只存储和查询token的摘要
+    private volatile boolean legacyLookup = true;  // 摘要模式下是否兼容查询未迁移的token
+
+    private static final String UPDATE_FIELDS = "access_token, user_id, permissions, roles, role_ids, token_key, refresh_token, expire_time";
 
     private static final String BASE_SELECT = "select token_id, " + UPDATE_FIELDS + ", create_time, update_time from oauth_token";
 
     private static final String SQL_SELECT_BY_TOKEN = BASE_SELECT + " where user_id = ? and access_token = ?";
 
+    private static final String SQL_SELECT_BY_HASH = BASE_SELECT + " where token_hash = ? and user_id = ?";
+
+    private static final String SQL_SELECT_LEGACY = SQL_SELECT_BY_TOKEN + " and token_hash is null";
+
     private static final String SQL_SELECT_BY_USER_ID = BASE_SELECT + " where user_id = ? order by create_time";
 
-    private static final String SQL_INSERT = "insert into oauth_token (" + UPDATE_FIELDS + ") values (?,?,?,?,?,?,?)";
+    private static final String SQL_SELECT_LIVE_BY_USER_ID = BASE_SELECT + " where user_id = ? and expire_time > ? order by create_time";
+
+    private static final String SQL_INSERT = "insert into oauth_token (" + UPDATE_FIELDS + ") values (?,?,?,?,?,?,?,?)";
+
+    private static final String SQL_INSERT_HASHED = "insert into oauth_token (token_hash, " + UPDATE_FIELDS + ") values (?,?,?,?,?,?,?,?,?)";
 
     private static final String SQL_UPDATE = "update oauth_token set " + UPDATE_FIELDS.replaceAll(", ", "=?, ") + "=? where token_id = ?";
 
@@ -41,10 +68,34 @@ public class JdbcTokenStore implements TokenStore {
 
     private static final String SQL_UPDATE_ROLE_IDS = "update oauth_token set role_ids = ? where user_id = ?";
 
+    private static final String SQL_EXTEND_EXPIRE = "update oauth_token set expire_time = ? where user_id = ? and access_token = ? and expire_time > ? and expire_time < ?";
+
+    private static final String SQL_EXTEND_EXPIRE_BY_HASH = "update oauth_token set expire_time = ? where token_hash = ? and user_id = ? and expire_time > ? and expire_time < ?";
+
     private static final String SQL_DELETE = "delete from oauth_token where user_id = ? and access_token = ?";
 
+    private static final String SQL_DELETE_BY_HASH = "delete from oauth_token where token_hash = ? and user_id = ?";
+
+    private static final String SQL_SELECT_UNHASHED = "select token_id, access_token from oauth_token where token_id > ? and token_hash is null order by token_id limit ?";
+
+    private static final String SQL_UPDATE_HASH = "update oauth_token set token_hash = ? where token_id = ? and token_hash is null";
+
+    private static final String SQL_SELECT_RAW = "select token_id from oauth_token where token_id > ? and token_hash is not null and access_token <> token_hash order by token_id limit ?";
+
+    private static final String SQL_CLEAR_RAW = "update oauth_token set access_token = token_hash where token_id >= ? and token_id <= ? and token_hash is not null";
+
+    private static final int MIGRATE_BATCH_SIZE = 500;
+
     private static final String SQL_DELETE_BY_USER_ID = "delete from oauth_token where user_id = ?";
 
+    // 保留最新的maxToken个token, 一条语句删除其余的
+    private static final String SQL_DELETE_EXCESS = "delete from oauth_token where user_id = ? and token_id not in "
+            + "(select token_id from (select token_id from oauth_token where user_id = ? order by create_time desc, token_id desc limit ?) t)";
+
+    // 保留最新的maxToken个未过期token, 已过期的一并删除
+    private static final String SQL_DELETE_EXCESS_LIVE = "delete from oauth_token where user_id = ? and (expire_time <= ? or token_id not in "
+            + "(select token_id from (select token_id from oauth_token where user_id = ? and expire_time > ? order by create_time desc, token_id desc limit ?) t))";
+
     private static final String SQL_SELECT_KEY = "select token_key from oauth_token_key";
 
     private static final String SQL_INSERT_KEY = "insert into oauth_token_key (token_key) values (?)";
@@ -52,10 +103,114 @@ public class JdbcTokenStore implements TokenStore {
     public JdbcTokenStore(DataSource dataSource) {
         Assert.notNull(dataSource, "DataSource required");
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
     }
 
     @Override
     public String getTokenKey() {
+        return keyProvider.getHexKey();
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return keyProvider.getKey();
+    }
+
+    public TokenKeyProvider getKeyProvider() {
+        return keyProvider;
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * 开启已校验token的本地缓存, 删除token或更新权限时自动失效
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return keyRing;
+    }
+
+    /**
+     * 使用key环签发和校验token, 没有kid的旧token仍使用store中的key校验
+     */
+    public void setKeyRing(KeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @Override
+    public SlidingExpiration getSlidingExpiration() {
+        return slidingExpiration;
+    }
+
+    /**
+     * 开启滑动过期, 签发token时store中的过期时间为空闲超时, 有访问时由slidingExpiration延长
+     * slidingExpiration的writer应为本store的extendTokens
+     */
+    public void setSlidingExpiration(SlidingExpiration slidingExpiration) {
+        this.slidingExpiration = slidingExpiration;
+    }
+
+    public TokenWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * 开启新token的延迟写入, 签发时只放入缓冲区, 由writeBehind批量写入
+     * writeBehind的writer应为本store的insertTokens, 按用户的查询和更新会先写入该用户缓冲中的token
+     * 未设置remover时使用本store的removeTokens
+     */
+    public void setWriteBehind(TokenWriteBehind writeBehind) {
+        if (writeBehind != null && writeBehind.getRemover() == null) {
+            writeBehind.setRemover(this::removeTokens);
+        }
+        this.writeBehind = writeBehind;
+    }
+
+    public RolePermissions getRolePermissions() {
+        return rolePermissions;
+    }
+
+    /**
+     * 按角色解析权限, token行中只保存角色id和用户单独的权限, 查询时合并角色的权限
+     * 修改角色权限使用rolePermissions.setPermissions, 不需要逐个用户updatePermissionsByUserId
+     */
+    public void setRolePermissions(RolePermissions rolePermissions) {
+        this.rolePermissions = rolePermissions;
+        rolePermissions.addListener(() -> {
+            if (tokenCache != null) {
+                tokenCache.invalidateAll();
+            }
+        });
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * 删除token或更新权限时通知其他节点, 收到其他节点的通知时清除本地缓存
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        invalidationBus.addListener((userIds, accessTokens) -> {
+            if (tokenCache != null) {
+                tokenCache.invalidateUsers(userIds);
+                accessTokens.forEach(tokenCache::invalidate);
+            }
+        });
+    }
+
+    /**
+     * 从数据库读取key, 不存在时生成
+     */
+    private String loadTokenKey() {
         String tokenKey = null;
         try {
             tokenKey = jdbcTemplate.queryForObject(SQL_SELECT_KEY, String.class);
@@ -69,26 +224,50 @@ public class JdbcTokenStore implements TokenStore {
     }
 
 
+    /**
+     * 设置了key环时使用当前启用的key签发, header带kid
+     */
+    private Token buildToken(String userId, long expire) {
+        Token token;
+        if (keyRing != null) {
+            KeyRing.Entry key = keyRing.getActive();
+            log.debug("构建token使用kid：" + key.getKid());
+            token = TokenUtil.buildToken(userId, expire, key.getSignKey(), key.getKid());
+        } else {
+            String tokenKey = getTokenKey();
+            log.debug("-------------------------------------------");
+            log.debug("构建token使用tokenKey：" + tokenKey);
+            log.debug("-------------------------------------------");
+            token = TokenUtil.buildToken(userId, expire, getSigningKey());
+        }
+        if (slidingExpiration != null) {
+            // jwt的exp为会话最长时长, store中的过期时间为空闲超时
+            token.setExpireTime(slidingExpiration.initialExpireTime(token.getExpireTime()));
+        }
+        return token;
+    }
+
     public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
         return createNewToken(userId, permissions, roles, roleIds ,TokenUtil.DEFAULT_EXPIRE);
     }
 
     public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
-        String tokenKey = getTokenKey();
-        log.debug("-------------------------------------------");
-        log.debug("构建token使用tokenKey：" + tokenKey);
-        log.debug("-------------------------------------------");
-        Token token = TokenUtil.buildToken(userId, expire, TokenUtil.parseHexKey(tokenKey));
+        Token token = buildToken(userId, expire);
         token.setPermissions(permissions);
         token.setRoles(roles);
         token.setRoleIds(roleIds);
+        if (writeBehind != null) {
+            if (writeBehind.offer(token)) {
+                return token;
+            }
+            if (writeBehind.getOverflow() != TokenWriteBehind.Overflow.WRITE_THROUGH) {
+                return null;
+            }
+        }
         if (storeToken(token) > 0) {
             if (Config.getInstance().getMaxToken() != null && Config.getInstance().getMaxToken() != -1) {
-                List<Token> userTokens = findTokensByUserId(userId);
-                if (userTokens.size() > Config.getInstance().getMaxToken()) {
-                    for (int i = 0; i < userTokens.size() - Config.getInstance().getMaxToken(); i++) {
-                        removeToken(userId, userTokens.get(i).getAccessToken());
-                    }
+                if (jdbcTemplate.update(getDeleteExcessSql(), getDeleteExcessArgs(userId)) > 0) {
+                    invalidateCache(userId);
                 }
             }
             return token;
@@ -96,33 +275,235 @@ public class JdbcTokenStore implements TokenStore {
         return null;
     }
 
+    public List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        List<Token> tokens = new ArrayList<Token>();
+        for (String userId : userIds) {
+            Token token = buildToken(userId, expire);
+            token.setPermissions(permissions);
+            token.setRoles(roles);
+            token.setRoleIds(roleIds);
+            tokens.add(token);
+        }
+        if (Config.getInstance().getMaxToken() == null || Config.getInstance().getMaxToken() == -1) {
+            storeTokens(tokens);
+            return tokens;
+        }
+        LinkedHashSet<String> users = new LinkedHashSet<String>(userIds);
+        // 写入和淘汰在同一个事务中, 淘汰失败时写入也回滚
+        transactionTemplate.execute(status -> {
+            storeTokens(tokens);
+            deleteExcess(users);
+            return null;
+        });
+        for (String userId : users) {
+            invalidateCache(userId);
+        }
+        return tokens;
+    }
+
     public int storeToken(Token token) {
         List<Object> objects = getFieldsForUpdate(token);
-        return jdbcTemplate.update(SQL_INSERT, listToArray(objects));
+        return jdbcTemplate.update(hashTokens ? SQL_INSERT_HASHED : SQL_INSERT, listToArray(objects));
+    }
+
+    public int storeTokens(List<Token> tokens) {
+        List<Object[]> batchArgs = new ArrayList<Object[]>();
+        for (Token token : tokens) {
+            batchArgs.add(listToArray(getFieldsForUpdate(token)));
+        }
+        return sum(jdbcTemplate.batchUpdate(hashTokens ? SQL_INSERT_HASHED : SQL_INSERT, batchArgs));
+    }
+
+    /**
+     * 多行insert写入一批新token, 之后按maxToken删除多余的token, 用作TokenWriteBehind的writer
+     * 写入和淘汰在同一个事务中, 抛出异常时都已回滚, 整批重新写入不会重复
+     *
+     * @return 写入的token数
+     */
+    public int insertTokens(List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        String sql = hashTokens ? SQL_INSERT_HASHED : SQL_INSERT;
+        String values = sql.substring(sql.indexOf(" values ") + 8);
+        StringBuilder sb = new StringBuilder(sql);
+        List<Object> args = new ArrayList<Object>();
+        LinkedHashSet<String> userIds = new LinkedHashSet<String>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                sb.append(',').append(values);
+            }
+            args.addAll(getFieldsForUpdate(tokens.get(i)));
+            userIds.add(tokens.get(i).getUserId());
+        }
+        if (Config.getInstance().getMaxToken() == null || Config.getInstance().getMaxToken() == -1) {
+            return jdbcTemplate.update(sb.toString(), listToArray(args));
+        }
+        Integer rs = transactionTemplate.execute(status -> {
+            int inserted = jdbcTemplate.update(sb.toString(), listToArray(args));
+            deleteExcess(userIds);
+            return inserted;
+        });
+        for (String userId : userIds) {
+            invalidateCache(userId);
+        }
+        return rs;
+    }
+
+    private void deleteExcess(Iterable<String> userIds) {
+        List<Object[]> batchArgs = new ArrayList<Object[]>();
+        for (String userId : userIds) {
+            batchArgs.add(getDeleteExcessArgs(userId));
+        }
+        jdbcTemplate.batchUpdate(getDeleteExcessSql(), batchArgs);
     }
 
     public Token findToken(String userId, String access_token) {
+        Token token = null;
+        if (writeBehind != null && (token = writeBehind.get(access_token)) != null) {
+            if (!token.getUserId().equals(userId)) {
+                return null;
+            }
+        } else if (hashTokens) {
+            // 计算一次摘要, 在唯一索引上等值查询
+            token = queryToken(SQL_SELECT_BY_HASH, TokenUtil.hashToken(access_token), userId);
+            if (token == null && legacyLookup) {
+                token = queryToken(SQL_SELECT_LEGACY, userId, access_token);
+            }
+            if (token != null) {
+                token.setAccessToken(access_token);
+            }
+        } else {
+            token = queryToken(SQL_SELECT_BY_TOKEN, userId, access_token);
+        }
+        // 滑动过期时jwt未过期, store中的过期时间才是空闲超时
+        if (slidingExpiration != null && token != null && token.getExpireTime() != null
+                && token.getExpireTime() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return resolvePermissions(token);
+    }
+
+    /**
+     * 开启按角色解析权限时, 把角色的权限合并为token的有效权限, permissions仍只有用户单独的权限
+     */
+    private Token resolvePermissions(Token token) {
+        if (rolePermissions != null && token != null) {
+            token.setEffectivePermissions(rolePermissions.resolve(token.getRoleIds(), token.getPermissions()));
+        }
+        return token;
+    }
+
+    private Token queryToken(String sql, Object... args) {
         try {
-            return jdbcTemplate.queryForObject(SQL_SELECT_BY_TOKEN, rowMapper, userId, access_token);
+            return jdbcTemplate.queryForObject(sql, rowMapper, args);
         } catch (EmptyResultDataAccessException e) {
         }
         return null;
     }
 
+    /**
+     * 批量延长token的过期时间, 已过期或已删除的token不会恢复
+     *
+     * @param tokens 包含userId、accessToken和新的expireTime
+     * @return 延长的token数
+     */
+    public int extendTokens(List<Token> tokens) {
+        Date now = new Date();
+        List<Object[]> batchArgs = new ArrayList<Object[]>();
+        for (Token token : tokens) {
+            Date expireTime = new Date(token.getExpireTime());
+            if (hashTokens) {
+                batchArgs.add(new Object[]{expireTime, toTokenHash(token.getAccessToken()), token.getUserId(), now, expireTime});
+            } else {
+                batchArgs.add(new Object[]{expireTime, token.getUserId(), token.getAccessToken(), now, expireTime});
+            }
+        }
+        return sum(jdbcTemplate.batchUpdate(hashTokens ? SQL_EXTEND_EXPIRE_BY_HASH : SQL_EXTEND_EXPIRE, batchArgs));
+    }
+
     public List<Token> findTokensByUserId(String userId) {
+        flushPending(userId);
         try {
-            return jdbcTemplate.query(SQL_SELECT_BY_USER_ID, rowMapper, userId);
+            List<Token> tokens = filterExpired ? jdbcTemplate.query(SQL_SELECT_LIVE_BY_USER_ID, rowMapper, userId, new Date())
+                    : jdbcTemplate.query(SQL_SELECT_BY_USER_ID, rowMapper, userId);
+            for (Token token : tokens) {
+                resolvePermissions(token);
+            }
+            return tokens;
         } catch (EmptyResultDataAccessException e) {
         }
         return null;
     }
 
+    /**
+     * @param access_token 摘要模式下也可以传入findTokensByUserId返回的摘要
+     */
     public int removeToken(String userId, String access_token) {
-        return jdbcTemplate.update(SQL_DELETE, userId, access_token);
+        int rs;
+        if (writeBehind != null && writeBehind.remove(access_token)) {
+            rs = 1;
+        } else if (hashTokens) {
+            rs = jdbcTemplate.update(SQL_DELETE_BY_HASH, toTokenHash(access_token), userId);
+            if (rs == 0 && legacyLookup) {
+                rs = jdbcTemplate.update(SQL_DELETE, userId, access_token);
+            }
+        } else {
+            rs = jdbcTemplate.update(SQL_DELETE, userId, access_token);
+        }
+        invalidateToken(userId, access_token);
+        return rs;
     }
 
     public int removeTokensByUserId(String userId) {
-        return jdbcTemplate.update(SQL_DELETE_BY_USER_ID, userId);
+        int rs = writeBehind == null ? 0 : writeBehind.removeUser(userId);
+        rs += jdbcTemplate.update(SQL_DELETE_BY_USER_ID, userId);
+        invalidateCache(userId);
+        return rs;
+    }
+
+    public int removeTokens(List<Token> tokens) {
+        if (writeBehind != null) {
+            for (Token token : tokens) {
+                writeBehind.remove(token.getAccessToken());
+            }
+        }
+        List<Object[]> batchArgs = new ArrayList<Object[]>();
+        for (Token token : tokens) {
+            if (hashTokens) {
+                batchArgs.add(new Object[]{toTokenHash(token.getAccessToken()), token.getUserId()});
+            } else {
+                batchArgs.add(new Object[]{token.getUserId(), token.getAccessToken()});
+            }
+        }
+        int rs = sum(jdbcTemplate.batchUpdate(hashTokens ? SQL_DELETE_BY_HASH : SQL_DELETE, batchArgs));
+        if (hashTokens && legacyLookup) {
+            batchArgs.clear();
+            for (Token token : tokens) {
+                batchArgs.add(new Object[]{token.getUserId(), token.getAccessToken()});
+            }
+            rs += sum(jdbcTemplate.batchUpdate(SQL_DELETE, batchArgs));
+        }
+        for (Token token : tokens) {
+            invalidateToken(token.getUserId(), token.getAccessToken());
+        }
+        return rs;
+    }
+
+    public int removeTokensByUserIds(List<String> userIds) {
+        List<Object[]> batchArgs = new ArrayList<Object[]>();
+        int rs = 0;
+        for (String userId : userIds) {
+            if (writeBehind != null) {
+                rs += writeBehind.removeUser(userId);
+            }
+            batchArgs.add(new Object[]{userId});
+        }
+        rs += sum(jdbcTemplate.batchUpdate(SQL_DELETE_BY_USER_ID, batchArgs));
+        for (String userId : userIds) {
+            invalidateCache(userId);
+        }
+        return rs;
     }
 
     public int updateRolesByUserId(String userId, String[] roles) {
@@ -133,7 +514,10 @@ public class JdbcTokenStore implements TokenStore {
             e.printStackTrace();
         }
         objects[1] = userId;
-        return jdbcTemplate.update(SQL_UPDATE_ROLES, objects);
+        flushPending(userId);
+        int rs = jdbcTemplate.update(SQL_UPDATE_ROLES, objects);
+        invalidateCache(userId);
+        return rs;
     }
 
     public int updateRoleIdsByUserId(String userId, String[] roleIds) {
@@ -144,7 +528,10 @@ public class JdbcTokenStore implements TokenStore {
             e.printStackTrace();
         }
         objects[1] = userId;
-        return jdbcTemplate.update(SQL_UPDATE_ROLE_IDS, objects);
+        flushPending(userId);
+        int rs = jdbcTemplate.update(SQL_UPDATE_ROLE_IDS, objects);
+        invalidateCache(userId);
+        return rs;
     }
 
     public int updatePermissionsByUserId(String userId, String[] permissions) {
@@ -155,13 +542,162 @@ public class JdbcTokenStore implements TokenStore {
             e.printStackTrace();
         }
         objects[1] = userId;
-        return jdbcTemplate.update(SQL_UPDATE_PERMS, objects);
+        flushPending(userId);
+        int rs = jdbcTemplate.update(SQL_UPDATE_PERMS, objects);
+        invalidateCache(userId);
+        return rs;
+    }
+
+    public boolean isFilterExpired() {
+        return filterExpired;
+    }
+
+    /**
+     * 开启后findTokensByUserId只返回未过期的token, maxToken只统计未过期的token
+     */
+    public void setFilterExpired(boolean filterExpired) {
+        this.filterExpired = filterExpired;
+    }
+
+    public boolean isHashTokens() {
+        return hashTokens;
+    }
+
+    /**
+     * 开启后只存储token的sha-256摘要, 按token_hash唯一索引查询, access_token列也存摘要
+     * findTokensByUserId返回的token中accessToken为摘要, 可直接用于removeToken
+     */
+    public void setHashTokens(boolean hashTokens) {
+        this.hashTokens = hashTokens;
+    }
+
+    public boolean isLegacyLookup() {
+        return legacyLookup;
+    }
+
+    /**
+     * 摘要模式下按摘要查询不到时, 是否再按完整token查询未迁移的行, migrateTokenHashes完成后自动关闭
+     */
+    public void setLegacyLookup(boolean legacyLookup) {
+        this.legacyLookup = legacyLookup;
+    }
+
+    /**
+     * 为开启摘要模式前存储的token补充token_hash, access_token仍保留完整token
+     * 按token_id分页小批量更新, 可在服务运行时执行, 重复执行是安全的
+     * 迁移后关闭摘要模式仍能按完整token查询, 确认不再回退后再调用clearRawTokens
+     *
+     * @return 迁移的行数
+     */
+    public int migrateTokenHashes() {
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            List<Object[]> rows = jdbcTemplate.query(SQL_SELECT_UNHASHED,
+                    (rs, rowNum) -> new Object[]{rs.getLong("token_id"), rs.getString("access_token")},
+                    lastId, MIGRATE_BATCH_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<Object[]> batchArgs = new ArrayList<Object[]>();
+            for (Object[] row : rows) {
+                batchArgs.add(new Object[]{toTokenHash((String) row[1]), row[0]});
+            }
+            total += sum(jdbcTemplate.batchUpdate(SQL_UPDATE_HASH, batchArgs));
+            lastId = (Long) rows.get(rows.size() - 1)[0];
+            if (rows.size() < MIGRATE_BATCH_SIZE) {
+                break;
+            }
+        }
+        legacyLookup = false;
+        log.debug("迁移token摘要数：" + total);
+        return total;
+    }
+
+    /**
+     * 把已迁移行中的完整token替换为摘要, 数据库中不再保存可直接使用的token
+     * 不可逆: 执行后关闭摘要模式, 这些token将无法再按完整token查询, 只能重新登录
+     * 按token_id分页小批量更新, 可在服务运行时执行, 重复执行是安全的
+     *
+     * @return 替换的行数
+     */
+    public int clearRawTokens() {
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(SQL_SELECT_RAW, Long.class, lastId, MIGRATE_BATCH_SIZE);
+            if (ids.isEmpty()) {
+                break;
+            }
+            total += jdbcTemplate.update(SQL_CLEAR_RAW, ids.get(0), ids.get(ids.size() - 1));
+            lastId = ids.get(ids.size() - 1);
+            if (ids.size() < MIGRATE_BATCH_SIZE) {
+                break;
+            }
+        }
+        log.debug("清除完整token数：" + total);
+        return total;
+    }
+
+    private static String toTokenHash(String access_token) {
+        return TokenUtil.isTokenHash(access_token) ? access_token : TokenUtil.hashToken(access_token);
+    }
+
+    /**
+     * 先写入该用户缓冲中的token, 使按用户的操作能看到全部token
+     */
+    private void flushPending(String userId) {
+        if (writeBehind != null && writeBehind.hasPending(userId)) {
+            writeBehind.flush();
+        }
+    }
+
+    private String getDeleteExcessSql() {
+        return filterExpired ? SQL_DELETE_EXCESS_LIVE : SQL_DELETE_EXCESS;
+    }
+
+    private Object[] getDeleteExcessArgs(String userId) {
+        Integer maxToken = Config.getInstance().getMaxToken();
+        if (filterExpired) {
+            Date now = new Date();
+            return new Object[]{userId, now, userId, now, maxToken};
+        }
+        return new Object[]{userId, userId, maxToken};
+    }
+
+    private void invalidateCache(String userId) {
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishUser(userId);
+        }
+    }
+
+    private void invalidateToken(String userId, String accessToken) {
+        // 摘要模式下只有摘要时不知道缓存中的token, 按用户失效
+        if (TokenUtil.isTokenHash(accessToken)) {
+            invalidateCache(userId);
+            return;
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidate(accessToken);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishToken(accessToken);
+        }
     }
 
 
     private List<Object> getFieldsForUpdate(Token token) {
         List<Object> objects = new ArrayList();
-        objects.add(token.getAccessToken());
+        if (hashTokens) {
+            String tokenHash = TokenUtil.hashToken(token.getAccessToken());
+            objects.add(tokenHash);
+            objects.add(tokenHash);
+        } else {
+            objects.add(token.getAccessToken());
+        }
         objects.add(token.getUserId());
         String permJson = null;
         try {
@@ -186,10 +722,21 @@ public class JdbcTokenStore implements TokenStore {
         objects.add(roleIdsJson);
         objects.add(token.getTokenKey());
         objects.add(token.getRefreshToken());
-        objects.add(token.getExpireTime());
+        objects.add(token.getExpireTime() == null ? null : new Date(token.getExpireTime()));
         return objects;
     }
 
+    /**
+     * 累加批量执行的影响行数, 驱动返回SUCCESS_NO_INFO时按1计
+     */
+    private int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+        }
+        return total;
+    }
+
     private Object[] listToArray(List<Object> list) {
         if (list == null) {
             return null;
@@ -214,9 +761,9 @@ public class JdbcTokenStore implements TokenStore {
             String roleIds = rs.getString("role_ids");
             String token_key = rs.getString("token_key");
             String refresh_token = rs.getString("refresh_token");
-            Date expire_time = rs.getDate("expire_time");
-            Date create_time = rs.getDate("create_time");
-            Date update_time = rs.getDate("update_time");
+            Date expire_time = rs.getTimestamp("expire_time");
+            Date create_time = rs.getTimestamp("create_time");
+            Date update_time = rs.getTimestamp("update_time");
             Token token = new Token();
             token.setTokenId(token_id);
             token.setAccessToken(access_token);
@@ -228,19 +775,19 @@ public class JdbcTokenStore implements TokenStore {
             token.setUpdateTime(update_time.getTime());
             if (permissions != null) {
                 try {
-                    token.setPermissions(listToArray(JSON.parseArray(permissions,String.class)));
+                    token.setPermissions(PermissionDictionary.PERMISSIONS.internAll(listToArray(JSON.parseArray(permissions,String.class))));
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
             if (roles != null) {
                 try {
-                    token.setRoles(listToArray(JSON.parseArray(permissions,String.class)));
+                    token.setRoles(PermissionDictionary.ROLES.internAll(listToArray(JSON.parseArray(roles,String.class))));
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
-            if (roles != null) {
+            if (roleIds != null) {
                 try {
                     token.setRoleIds(listToArray(JSON.parseArray(roleIds,String.class)));
                 } catch (Exception e) {
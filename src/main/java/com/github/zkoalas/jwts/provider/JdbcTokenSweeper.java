@@ -0,0 +1,144 @@
+package com.github.zkoalas.jwts.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定时清理oauth_token中已过期的token
+ * 按token_id分页小批量删除, 避免长时间持有锁, 建议在expire_time上建索引
+ */
+@Slf4j
+public class JdbcTokenSweeper {
+    public static final long DEFAULT_INTERVAL = 60 * 10;  // 默认清理间隔,单位秒
+    public static final int DEFAULT_BATCH_SIZE = 500;  // 默认每批删除数
+
+    private static final String SQL_SELECT_EXPIRED = "select token_id from oauth_token where token_id > ? and expire_time < ? order by token_id limit ?";
+
+    private static final String SQL_DELETE_EXPIRED = "delete from oauth_token where token_id >= ? and token_id <= ? and expire_time < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private long interval = DEFAULT_INTERVAL;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long batchPause = 0;  // 批次间暂停时长,单位毫秒
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong reclaimedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong runCount = new AtomicLong();
+    private volatile long lastRunTime;
+
+    public JdbcTokenSweeper(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * 开始定时清理
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-token-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (Exception e) {
+                log.warn("清理过期token失败：" + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 清理一次过期token
+     *
+     * @return 删除的行数
+     */
+    public int sweep() {
+        Date now = new Date();
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(SQL_SELECT_EXPIRED, Long.class, lastId, now, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            long maxId = ids.get(ids.size() - 1);
+            total += jdbcTemplate.update(SQL_DELETE_EXPIRED, ids.get(0), maxId, now);
+            batchCount.incrementAndGet();
+            lastId = maxId;
+            if (ids.size() < batchSize) {
+                break;
+            }
+            if (batchPause > 0) {
+                try {
+                    Thread.sleep(batchPause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        reclaimedCount.addAndGet(total);
+        runCount.incrementAndGet();
+        lastRunTime = now.getTime();
+        if (total > 0) {
+            log.debug("清理过期token数：" + total);
+        }
+        return total;
+    }
+
+    /**
+     * @param interval 清理间隔, 单位秒, start之前设置
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param batchPause 批次间暂停时长, 单位毫秒
+     */
+    public void setBatchPause(long batchPause) {
+        this.batchPause = batchPause;
+    }
+
+    public long getReclaimedCount() {
+        return reclaimedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    public long getLastRunTime() {
+        return lastRunTime;
+    }
+}
@@ -0,0 +1,295 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.security.SignatureException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 签名key环, 支持多个同时有效的key, token的header中带kid
+ * 最近启用且有签名key的条目用于签发, 被新key取代的条目在重叠时长内仍可校验
+ * RS256/ES256的条目只需公钥即可校验, 只校验token的节点不需要私钥
+ */
+@Slf4j
+public class KeyRing {
+    public static final long DEFAULT_OVERLAP = TokenUtil.DEFAULT_EXPIRE;  // 默认重叠时长,单位秒
+    public static final long MIN_MISS_REFRESH_INTERVAL = 10;  // 未知kid触发刷新的最小间隔,单位秒
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jwt-soul-key-ring-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Supplier<Collection<Entry>> loader;
+    private long overlap = DEFAULT_OVERLAP;
+    private volatile Snapshot snapshot;
+    private volatile long lastMissRefreshTime;
+    private volatile ScheduledFuture<?> refreshTask;
+
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param loader 从配置或store读取所有key
+     */
+    public KeyRing(Supplier<Collection<Entry>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * 固定的key环
+     */
+    public static KeyRing of(Entry... entries) {
+        List<Entry> list = Collections.unmodifiableList(Arrays.asList(entries));
+        return new KeyRing(() -> list);
+    }
+
+    /**
+     * 当前用于签发的key
+     *
+     * @throws IllegalStateException 没有可签发的key
+     */
+    public Entry getActive() {
+        Entry active = getSnapshot().active(System.currentTimeMillis());
+        if (active == null) {
+            throw new IllegalStateException("KeyRing中没有可用于签发的key");
+        }
+        return active;
+    }
+
+    /**
+     * 按kid获取校验key, 没有kid的token使用defaultKey
+     * 未知的kid会触发一次刷新, 用于其他节点新增key的情况
+     *
+     * @throws SignatureException kid未知或已过重叠时长
+     */
+    public Key resolve(String kid, Supplier<Key> defaultKey) {
+        if (kid == null) {
+            return defaultKey == null ? null : defaultKey.get();
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = getSnapshot().byKid.get(kid);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            if (now - lastMissRefreshTime >= MIN_MISS_REFRESH_INTERVAL * 1000) {
+                lastMissRefreshTime = now;
+                refresh();
+                entry = snapshot.byKid.get(kid);
+            }
+        }
+        if (entry == null || now > entry.validUntil) {
+            throw new SignatureException("未知或已停用的kid：" + kid);
+        }
+        return entry.verifyKey;
+    }
+
+    /**
+     * resolve(kid)是否可能同步加载key: 首次使用, 或kid未知且距上次刷新已超过最小间隔
+     * 为true时加载会访问配置或store, 非阻塞的调用方应换到其他线程再resolve
+     */
+    public boolean mayLoad(String kid) {
+        if (kid == null) {
+            return false;
+        }
+        Snapshot current = snapshot;
+        return current == null || (!current.byKid.containsKey(kid)
+                && System.currentTimeMillis() - lastMissRefreshTime >= MIN_MISS_REFRESH_INTERVAL * 1000);
+    }
+
+    /**
+     * 重新加载key
+     */
+    public synchronized void refresh() {
+        Collection<Entry> entries = loader.get();
+        loadCount.incrementAndGet();
+        snapshot = new Snapshot(entries == null ? Collections.emptyList() : entries, overlap * 1000);
+    }
+
+    /**
+     * 开启后台定时刷新
+     *
+     * @param interval 刷新间隔, 单位秒
+     */
+    public synchronized void startRefresh(long interval) {
+        stopRefresh();
+        if (interval > 0) {
+            refreshTask = SCHEDULER.scheduleWithFixedDelay(() -> {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    log.warn("刷新KeyRing失败：" + e.getMessage());
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stopRefresh() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+    }
+
+    /**
+     * @param overlap 被取代的key继续校验的时长, 单位秒, 应不小于token有效期
+     */
+    public synchronized void setOverlap(long overlap) {
+        this.overlap = overlap;
+        if (snapshot != null) {
+            snapshot = new Snapshot(snapshot.entries, overlap * 1000);
+        }
+    }
+
+    public long getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * 当前可校验的kid
+     */
+    public Set<String> getKids() {
+        return getSnapshot().byKid.keySet();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    refresh();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 加载后的不可变视图
+     */
+    private static class Snapshot {
+        private final List<Entry> entries;  // 按启用时间排序
+        private final Map<String, Entry> byKid;
+
+        private Snapshot(Collection<Entry> entries, long overlapMillis) {
+            List<Entry> sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.comparingLong(Entry::getActivatedAt));
+            Map<String, Entry> byKid = new HashMap<>();
+            for (int i = 0; i < sorted.size(); i++) {
+                Entry entry = sorted.get(i);
+                long validUntil = Long.MAX_VALUE;
+                if (i + 1 < sorted.size()) {
+                    validUntil = sorted.get(i + 1).activatedAt + overlapMillis;
+                }
+                Entry resolved = entry.withValidUntil(validUntil);
+                sorted.set(i, resolved);
+                byKid.put(entry.kid, resolved);
+            }
+            this.entries = Collections.unmodifiableList(sorted);
+            this.byKid = Collections.unmodifiableMap(byKid);
+        }
+
+        private Entry active(long now) {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                Entry entry = entries.get(i);
+                if (entry.activatedAt <= now && entry.signKey != null) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * key环中的一个key
+     */
+    public static class Entry {
+        private final String kid;
+        private final Key signKey;  // HMAC密钥或私钥, 只校验时为null
+        private final Key verifyKey;  // HMAC密钥或公钥
+        private final long activatedAt;  // 启用时间, 单位毫秒
+        private final long validUntil;
+
+        private Entry(String kid, Key signKey, Key verifyKey, long activatedAt, long validUntil) {
+            if (kid == null || kid.isEmpty()) {
+                throw new IllegalArgumentException("kid不能为空");
+            }
+            this.kid = kid;
+            this.signKey = signKey;
+            this.verifyKey = verifyKey;
+            this.activatedAt = activatedAt;
+            this.validUntil = validUntil;
+        }
+
+        /**
+         * HMAC(HS256/HS384/HS512)密钥
+         *
+         * @param hexKey      16进制的密钥
+         * @param activatedAt 启用时间, 单位毫秒
+         */
+        public static Entry hmac(String kid, String hexKey, long activatedAt) {
+            Key key = TokenUtil.parseHexKey(hexKey);
+            return new Entry(kid, key, key, activatedAt, Long.MAX_VALUE);
+        }
+
+        /**
+         * RS256/ES256等非对称密钥, 签发节点使用
+         */
+        public static Entry keyPair(String kid, KeyPair keyPair, long activatedAt) {
+            return new Entry(kid, keyPair.getPrivate(), keyPair.getPublic(), activatedAt, Long.MAX_VALUE);
+        }
+
+        /**
+         * 只有公钥, 只校验token的节点使用
+         */
+        public static Entry publicKey(String kid, PublicKey publicKey, long activatedAt) {
+            return new Entry(kid, null, publicKey, activatedAt, Long.MAX_VALUE);
+        }
+
+        private Entry withValidUntil(long validUntil) {
+            return new Entry(kid, signKey, verifyKey, activatedAt, validUntil);
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public Key getSignKey() {
+            return signKey;
+        }
+
+        public Key getVerifyKey() {
+            return verifyKey;
+        }
+
+        public long getActivatedAt() {
+            return activatedAt;
+        }
+
+        /**
+         * 停止校验的时间, 单位毫秒, 仍为最新key时为Long.MAX_VALUE
+         */
+        public long getValidUntil() {
+            return validUntil;
+        }
+    }
+}
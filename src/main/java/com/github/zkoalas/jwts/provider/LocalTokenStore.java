@@ -2,9 +2,14 @@ package com.github.zkoalas.jwts.provider;
 
 
 import com.alibaba.fastjson.JSON;
+import com.github.zkoalas.jwts.revocation.RevocationList;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.security.Keys;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
 import com.github.zkoalas.jwts.util.TokenUtil;
+
+import java.security.Key;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -15,7 +20,11 @@ public class LocalTokenStore implements BaseTokenStore {
     private String secretKey;
     private String md5Key;
     private Long expiration;
-
+    private boolean typedClaims = false;  // userId、权限、角色是否作为独立的claims签发
+    private KeyRing keyRing;
+    private RevocationList revocationList;
+    private final TokenKeyProvider keyProvider = new TokenKeyProvider(
+            () -> TokenUtil.getHexKey(Keys.hmacShaKeyFor(secretKey.getBytes())));
 
     public LocalTokenStore(String secretKey, String md5Key, Long expiration) {
         this.secretKey = secretKey;
@@ -25,9 +34,85 @@ public class LocalTokenStore implements BaseTokenStore {
 
     @Override
     public String getTokenKey() {
-        return TokenUtil.getHexKey(Keys.hmacShaKeyFor(secretKey.getBytes()));
+        return keyProvider.getHexKey();
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return keyProvider.getKey();
+    }
+
+
+    @Override
+    public KeyRing getKeyRing() {
+        return keyRing;
+    }
+
+    /**
+     * 使用key环签发和校验token, 没有kid的旧token仍使用secretKey校验
+     */
+    public void setKeyRing(KeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    public RevocationList getRevocationList() {
+        return revocationList;
+    }
+
+    /**
+     * 开启吊销, 校验时检查token的jti是否已吊销
+     */
+    public void setRevocationList(RevocationList revocationList) {
+        this.revocationList = revocationList;
     }
 
+    /**
+     * 吊销token, 需先设置revocationList
+     *
+     * @return 吊销成功返回1, token无效或已过期返回0
+     */
+    public int revokeToken(String access_token) {
+        Assert.notNull(revocationList, "RevocationList required");
+        Claims claims;
+        try {
+            claims = keyRing != null ? TokenUtil.parseClaims(access_token, keyRing, this::getSigningKey)
+                    : TokenUtil.parseClaims(access_token, getSigningKey());
+        } catch (Exception e) {
+            log.debug("吊销token失败：" + e.getMessage());
+            return 0;
+        }
+        if (claims.getId() == null) {
+            log.debug("token没有jti, 无法吊销");
+            return 0;
+        }
+        long expireTime = claims.getExpiration() == null ? Long.MAX_VALUE : claims.getExpiration().getTime();
+        revocationList.revoke(claims.getId(), expireTime);
+        return 1;
+    }
+
+    public boolean isTypedClaims() {
+        return typedClaims;
+    }
+
+    /**
+     * 开启后subject只保存userId, 权限和角色作为独立的claims, 校验时不再二次解析json
+     * 两种模式签发的token都可以校验
+     */
+    public void setTypedClaims(boolean typedClaims) {
+        this.typedClaims = typedClaims;
+    }
+
+    @Override
+    public Token findToken(Claims claims, String access_token) {
+        if (revocationList != null && revocationList.isRevoked(claims.getId())) {
+            log.debug("token已吊销");
+            return null;
+        }
+        if (ClaimsToken.isTypedClaims(claims)) {
+            return new ClaimsToken(claims, access_token);
+        }
+        return findToken(claims.getSubject(), access_token);
+    }
 
     @Override
     public Token findToken(String subject, String access_token) {
@@ -37,14 +122,33 @@ public class LocalTokenStore implements BaseTokenStore {
     }
 
     public <S extends BaseToken> Token createNewToken(S obj) {
-        String subject = JSON.toJSONString(obj);
-        String tokenKey = getTokenKey();
-        log.debug("-------------------------------------------");
-        log.debug("构建token使用tokenKey：" + tokenKey);
-        log.debug("-------------------------------------------");
         Map<String, Object> claims = new HashMap();
         claims.put(md5Key, getRandomString(6));
-        Token token = TokenUtil.toBuildToken(claims,subject, expiration, TokenUtil.parseHexKey(tokenKey));
+        String subject;
+        if (typedClaims) {
+            subject = obj.getUserId();
+            claims.put(ClaimsToken.CLAIM_PERMISSIONS, obj.getPermissions() == null ? new String[0] : obj.getPermissions());
+            claims.put(ClaimsToken.CLAIM_ROLES, obj.getRoles() == null ? new String[0] : obj.getRoles());
+        } else {
+            subject = JSON.toJSONString(obj);
+        }
+        Token token;
+        if (keyRing != null) {
+            KeyRing.Entry key = keyRing.getActive();
+            log.debug("构建token使用kid：" + key.getKid());
+            token = TokenUtil.toBuildToken(claims, subject, expiration, key.getSignKey(), key.getKid());
+        } else {
+            String tokenKey = getTokenKey();
+            log.debug("-------------------------------------------");
+            log.debug("构建token使用tokenKey：" + tokenKey);
+            log.debug("-------------------------------------------");
+            token = TokenUtil.toBuildToken(claims,subject, expiration, getSigningKey());
+        }
+        if (typedClaims) {
+            token.setUserId(subject);
+            token.setPermissions(obj.getPermissions());
+            token.setRoles(obj.getRoles());
+        }
         return token;
     }
 
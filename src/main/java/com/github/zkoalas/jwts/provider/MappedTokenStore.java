@@ -0,0 +1,934 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.Hex;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射文件存储token的实现, 用于没有redis和数据库的边缘部署, 重启后直接映射文件即可使用
+ * 文件由头部(含签名key)、按token的sha-256开放寻址的定长槽位、存放用户权限角色的溢出区组成
+ * 每个槽位和它的溢出记录带CRC32校验, 打开文件时丢弃校验失败的槽位; 过期和删除的槽位由compact回收
+ * 写入和压缩由writeLock串行化, 修改映射文件时再持有lock的写锁, 压缩复制期间不阻塞查询
+ * 只存储token的摘要, findTokensByUserId返回的token中accessToken为摘要, 可直接用于removeToken
+ */
+@Slf4j
+public class MappedTokenStore implements TokenStore {
+    public static final int DEFAULT_SLOTS = 1 << 16;  // 默认槽位数
+    public static final int DEFAULT_PAYLOAD_SIZE = 32 << 20;  // 默认溢出区大小,单位字节
+    public static final long DEFAULT_COMPACT_INTERVAL = 60 * 10;  // 默认压缩间隔,单位秒
+
+    private final File file;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, List<Integer>> userSlots;  // 用户的槽位, 按签发顺序
+    private final TokenKeyProvider keyProvider = new TokenKeyProvider(() -> this.table.tokenKey);
+    private volatile Table table;
+    private TokenCache tokenCache;
+    private KeyRing keyRing;
+    private boolean syncWrites = false;  // 每次写入后是否刷盘
+    private long compactInterval = DEFAULT_COMPACT_INTERVAL;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong compactCount = new AtomicLong();
+    private final AtomicLong corruptCount = new AtomicLong();
+
+    public MappedTokenStore(File file) {
+        this(file, DEFAULT_SLOTS, DEFAULT_PAYLOAD_SIZE);
+    }
+
+    /**
+     * 文件已存在时使用文件中的大小, 空间不足时compact会自动扩大
+     *
+     * @param slots       槽位数, 向上取2的幂
+     * @param payloadSize 溢出区大小, 单位字节
+     */
+    public MappedTokenStore(File file, int slots, int payloadSize) {
+        Assert.notNull(file, "File required");
+        this.file = file;
+        try {
+            if (file.exists() && file.length() > 0) {
+                this.table = Table.open(file);
+            } else {
+                int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+                this.table = Table.create(file, size, payloadSize, TokenUtil.getHexKey());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        corruptCount.addAndGet(table.corrupt);
+        userSlots = buildIndex(table);
+    }
+
+    /**
+     * 文件格式: 头部HEADER_SIZE字节, 之后为slots个SLOT_SIZE字节的槽位, 最后为溢出区
+     * 槽位: state(1) 保留(3) crc(4) sha-256(32) expireTime(8) createTime(8) 溢出记录偏移(4) 长度(4)
+     * 写入顺序为溢出记录、槽位字段、state, crc覆盖槽位第8字节之后的字段和溢出记录
+     */
+    private static class Table {
+        private static final int MAGIC = 0x4a575453;  // JWTS
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 512;
+        private static final int SLOT_SIZE = 64;
+        private static final int HASH_SIZE = 32;
+        private static final byte EMPTY = 0;
+        private static final byte USED = 1;
+        private static final byte DELETED = 2;
+        private static final int CRC = 4;
+        private static final int HASH = 8;
+        private static final int EXPIRE = 40;
+        private static final int CREATE = 48;
+        private static final int OFFSET = 56;
+        private static final int LENGTH = 60;
+        private static final double MAX_LOAD = 0.75;
+
+        private final MappedByteBuffer buffer;
+        private final int slots;
+        private final int payloadSize;
+        private final int payloadStart;
+        private final String tokenKey;
+        private int tail;  // 溢出区已使用的字节数
+        private int used;
+        private int deleted;
+        private int corrupt;
+
+        private Table(MappedByteBuffer buffer, int slots, int payloadSize, String tokenKey) {
+            this.buffer = buffer;
+            this.slots = slots;
+            this.payloadSize = payloadSize;
+            this.payloadStart = HEADER_SIZE + slots * SLOT_SIZE;
+            this.tokenKey = tokenKey;
+        }
+
+        private static MappedByteBuffer map(File file, long size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private static Table create(File file, int slots, int payloadSize, String tokenKey) throws IOException {
+            MappedByteBuffer buffer = map(file, HEADER_SIZE + (long) slots * SLOT_SIZE + payloadSize);
+            byte[] key = tokenKey.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slots);
+            buffer.putInt(12, payloadSize);
+            buffer.putShort(16, (short) key.length);
+            for (int i = 0; i < key.length; i++) {
+                buffer.put(18 + i, key[i]);
+            }
+            buffer.force();
+            return new Table(buffer, slots, payloadSize, tokenKey);
+        }
+
+        /**
+         * 重新映射相同大小和内容的文件, 沿用已统计的槽位和溢出区
+         */
+        private Table remap(File file) throws IOException {
+            Table table = new Table(map(file, HEADER_SIZE + (long) slots * SLOT_SIZE + payloadSize), slots, payloadSize, tokenKey);
+            table.tail = tail;
+            table.used = used;
+            table.deleted = deleted;
+            return table;
+        }
+
+        private static Table open(File file) throws IOException {
+            MappedByteBuffer header = map(file, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a token file: " + file);
+            }
+            int slots = header.getInt(8);
+            int payloadSize = header.getInt(12);
+            byte[] key = new byte[header.getShort(16)];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = header.get(18 + i);
+            }
+            Table table = new Table(map(file, HEADER_SIZE + (long) slots * SLOT_SIZE + payloadSize),
+                    slots, payloadSize, new String(key, StandardCharsets.UTF_8));
+            table.recover();
+            return table;
+        }
+
+        /**
+         * 校验所有槽位, 校验失败的标记为已删除, 溢出区从有效记录的末尾继续写入
+         */
+        private void recover() {
+            for (int slot = 0; slot < slots; slot++) {
+                byte state = buffer.get(base(slot));
+                if (state == USED) {
+                    if (checksum(slot) != buffer.getInt(base(slot) + CRC)) {
+                        buffer.put(base(slot), DELETED);
+                        corrupt++;
+                        deleted++;
+                        continue;
+                    }
+                    used++;
+                    tail = Math.max(tail, buffer.getInt(base(slot) + OFFSET) + buffer.getInt(base(slot) + LENGTH));
+                } else if (state == DELETED) {
+                    deleted++;
+                }
+            }
+        }
+
+        private int base(int slot) {
+            return HEADER_SIZE + slot * SLOT_SIZE;
+        }
+
+        private boolean isUsed(int slot) {
+            return buffer.get(base(slot)) == USED;
+        }
+
+        /**
+         * 在映射的文件上直接比较摘要, 不复制槽位
+         *
+         * @return 槽位号, 不存在返回-1
+         */
+        private int find(ByteBuffer hash) {
+            int mask = slots - 1;
+            int slot = hash.getInt(0) & mask;
+            for (int i = 0; i < slots; i++) {
+                int base = base(slot);
+                byte state = buffer.get(base);
+                if (state == EMPTY) {
+                    return -1;
+                }
+                if (state == USED && buffer.getLong(base + HASH) == hash.getLong(0)
+                        && buffer.getLong(base + HASH + 8) == hash.getLong(8)
+                        && buffer.getLong(base + HASH + 16) == hash.getLong(16)
+                        && buffer.getLong(base + HASH + 24) == hash.getLong(24)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private boolean hasRoom(int payloadLength) {
+            return used + deleted + 1 <= slots * MAX_LOAD && hasPayloadRoom(payloadLength);
+        }
+
+        private boolean hasPayloadRoom(long payloadLength) {
+            return tail + payloadLength <= payloadSize;
+        }
+
+        /**
+         * 写入token到第一个空闲或已删除的槽位, 调用方先检查hasRoom并删除相同摘要的槽位
+         */
+        private int insert(ByteBuffer hash, long expireTime, long createTime, byte[] payload) {
+            int mask = slots - 1;
+            int target = hash.getInt(0) & mask;
+            while (buffer.get(base(target)) == USED) {
+                target = (target + 1) & mask;
+            }
+            int base = base(target);
+            if (buffer.get(base) == DELETED) {
+                deleted--;
+            }
+            int offset = tail;
+            writePayload(offset, payload);
+            tail += payload.length;
+            for (int i = 0; i < HASH_SIZE; i++) {
+                buffer.put(base + HASH + i, hash.get(i));
+            }
+            buffer.putLong(base + EXPIRE, expireTime);
+            buffer.putLong(base + CREATE, createTime);
+            buffer.putInt(base + OFFSET, offset);
+            buffer.putInt(base + LENGTH, payload.length);
+            buffer.putInt(base + CRC, checksum(target));
+            buffer.put(base, USED);
+            used++;
+            return target;
+        }
+
+        /**
+         * 替换槽位的溢出记录, 用于更新权限角色
+         */
+        private void update(int slot, byte[] payload) {
+            int base = base(slot);
+            int offset = tail;
+            writePayload(offset, payload);
+            tail += payload.length;
+            buffer.putInt(base + OFFSET, offset);
+            buffer.putInt(base + LENGTH, payload.length);
+            buffer.putInt(base + CRC, checksum(slot));
+        }
+
+        private void remove(int slot) {
+            buffer.put(base(slot), DELETED);
+            used--;
+            deleted++;
+        }
+
+        private void writePayload(int offset, byte[] payload) {
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(payloadStart + offset);
+            dup.put(payload);
+        }
+
+        private byte[] payload(int slot) {
+            byte[] payload = new byte[buffer.getInt(base(slot) + LENGTH)];
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(payloadStart + buffer.getInt(base(slot) + OFFSET));
+            dup.get(payload);
+            return payload;
+        }
+
+        private byte[] hash(int slot) {
+            byte[] hash = new byte[HASH_SIZE];
+            for (int i = 0; i < HASH_SIZE; i++) {
+                hash[i] = buffer.get(base(slot) + HASH + i);
+            }
+            return hash;
+        }
+
+        private long expireTime(int slot) {
+            return buffer.getLong(base(slot) + EXPIRE);
+        }
+
+        private long createTime(int slot) {
+            return buffer.getLong(base(slot) + CREATE);
+        }
+
+        private int checksum(int slot) {
+            int base = base(slot);
+            int offset = buffer.getInt(base + OFFSET);
+            int length = buffer.getInt(base + LENGTH);
+            if (offset < 0 || length < 0 || (long) offset + length > payloadSize) {
+                return ~buffer.getInt(base + CRC);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer dup = buffer.duplicate();
+            dup.limit(base + SLOT_SIZE).position(base + HASH);
+            crc.update(dup);
+            dup.limit(payloadStart + offset + length).position(payloadStart + offset);
+            crc.update(dup);
+            return (int) crc.getValue();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getTokenKey() {
+        return keyProvider.getHexKey();
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return keyProvider.getKey();
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * 开启已校验token的本地缓存, 删除token或更新权限时自动失效
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return keyRing;
+    }
+
+    /**
+     * 使用key环签发和校验token, 没有kid的旧token仍使用文件中的key校验
+     */
+    public void setKeyRing(KeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    /**
+     * 开启后每次写入都刷盘, 系统崩溃时不丢失已签发的token, 写入变慢
+     * 关闭时进程崩溃不丢数据, 系统崩溃可能丢失最近的写入, 写了一半的槽位在打开时被丢弃
+     */
+    public void setSyncWrites(boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+    /**
+     * @param compactInterval 压缩间隔, 单位秒, start之前设置
+     */
+    public void setCompactInterval(long compactInterval) {
+        this.compactInterval = compactInterval;
+    }
+
+    /**
+     * 开始定时压缩
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-mapped-compact");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                log.warn("压缩token文件失败：" + e.getMessage());
+            }
+        }, compactInterval, compactInterval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 刷盘
+     */
+    public void flush() {
+        lock.readLock().lock();
+        try {
+            table.buffer.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把未过期的token写入新文件后替换原文件, 回收过期和删除的槽位及溢出区, 空间不足时扩大一倍
+     * 复制期间只阻塞写入, 替换文件和索引时才阻塞查询
+     *
+     * @return 回收的槽位数
+     */
+    public int compact() {
+        return compact(0);
+    }
+
+    /**
+     * @param reserve 压缩后溢出区至少保留的字节数
+     */
+    private int compact(long reserve) {
+        writeLock.lock();
+        try {
+            Table old = table;
+            long now = System.currentTimeMillis();
+            List<Integer> live = new ArrayList<Integer>();
+            long liveBytes = 0;
+            for (int slot = 0; slot < old.slots; slot++) {
+                if (old.isUsed(slot) && old.expireTime(slot) > now) {
+                    live.add(slot);
+                    liveBytes += old.buffer.getInt(old.base(slot) + Table.LENGTH);
+                }
+            }
+            int slots = old.slots;
+            while (live.size() + 1 > slots * Table.MAX_LOAD / 2) {
+                slots <<= 1;
+            }
+            int payloadSize = old.payloadSize;
+            while (liveBytes + reserve > payloadSize / 2) {
+                payloadSize <<= 1;
+            }
+            File tmp = new File(file.getPath() + ".compact");
+            Files.deleteIfExists(tmp.toPath());
+            Table compacted = Table.create(tmp, slots, payloadSize, old.tokenKey);
+            for (int slot : live) {
+                compacted.insert(ByteBuffer.wrap(old.hash(slot)), old.expireTime(slot), old.createTime(slot), old.payload(slot));
+            }
+            compacted.buffer.force();
+            Map<String, List<Integer>> index = buildIndex(compacted);
+            lock.writeLock().lock();
+            try {
+                // 映射中的文件在windows上不能替换, 先解除两个文件的映射
+                unmap(compacted.buffer);
+                unmap(old.buffer);
+                try {
+                    move(tmp, file);
+                    table = compacted.remap(file);
+                } catch (IOException e) {
+                    table = Table.open(file);
+                    userSlots = buildIndex(table);
+                    throw e;
+                }
+                userSlots = index;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            compactCount.incrementAndGet();
+            int reclaimed = old.used + old.deleted - live.size();
+            log.debug("压缩token文件, 回收槽位数：" + reclaimed);
+            return reclaimed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 立即解除文件映射, 不等gc回收, java 9以上使用Unsafe.invokeCleaner, java 8使用DirectBuffer.cleaner
+     * 解除后不能再访问buffer, 调用方持有lock的写锁
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (Exception e) {
+            log.debug("解除文件映射失败, 等待gc回收：" + e.getMessage());
+        }
+    }
+
+    private static Map<String, List<Integer>> buildIndex(Table table) {
+        Map<String, List<Integer>> index = new HashMap<String, List<Integer>>();
+        for (int slot = 0; slot < table.slots; slot++) {
+            if (table.isUsed(slot)) {
+                Token token = decode(table, slot);
+                index.computeIfAbsent(token.getUserId(), k -> new ArrayList<Integer>()).add(slot);
+            }
+        }
+        for (List<Integer> list : index.values()) {
+            list.sort(Comparator.comparingLong(table::createTime));
+        }
+        return index;
+    }
+
+    private Token buildToken(String userId, long expire) {
+        if (keyRing != null) {
+            KeyRing.Entry key = keyRing.getActive();
+            return TokenUtil.buildToken(userId, expire, key.getSignKey(), key.getKid());
+        }
+        return TokenUtil.buildToken(userId, expire, getSigningKey());
+    }
+
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
+        return createNewToken(userId, permissions, roles, roleIds, TokenUtil.DEFAULT_EXPIRE);
+    }
+
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        Token token = buildToken(userId, expire);
+        token.setPermissions(permissions);
+        token.setRoles(roles);
+        token.setRoleIds(roleIds);
+        Integer maxToken = Config.getInstance().getMaxToken();
+        store(token, maxToken == null ? -1 : maxToken);
+        return token;
+    }
+
+    public List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        List<Token> tokens = new ArrayList<Token>();
+        for (String userId : userIds) {
+            tokens.add(createNewToken(userId, permissions, roles, roleIds, expire));
+        }
+        return tokens;
+    }
+
+    public int storeToken(Token token) {
+        store(token, -1);
+        return 1;
+    }
+
+    public int storeTokens(List<Token> tokens) {
+        for (Token token : tokens) {
+            store(token, -1);
+        }
+        return tokens.size();
+    }
+
+    private void store(Token token, int maxToken) {
+        if (token.getCreateTime() == null) {
+            token.setCreateTime(System.currentTimeMillis());
+        }
+        byte[] payload = encode(token);
+        ByteBuffer hash = ByteBuffer.wrap(digest(token.getAccessToken()));
+        boolean evicted = false;
+        writeLock.lock();
+        try {
+            if (!table.hasRoom(payload.length)) {
+                compact(payload.length);
+            }
+            lock.writeLock().lock();
+            try {
+                List<Integer> list = userSlots.computeIfAbsent(token.getUserId(), k -> new ArrayList<Integer>());
+                if (maxToken > 0) {
+                    long now = System.currentTimeMillis();
+                    list.removeIf(slot -> {
+                        if (table.expireTime(slot) <= now) {
+                            table.remove(slot);
+                            return true;
+                        }
+                        return false;
+                    });
+                    while (list.size() >= maxToken) {
+                        table.remove(list.remove(0));
+                        evictedCount.incrementAndGet();
+                        evicted = true;
+                    }
+                }
+                int existing = table.find(hash);
+                if (existing >= 0) {
+                    removeFromIndex(existing);
+                    table.remove(existing);
+                    list = userSlots.computeIfAbsent(token.getUserId(), k -> new ArrayList<Integer>());
+                }
+                long expireTime = token.getExpireTime() == null ? Long.MAX_VALUE : token.getExpireTime();
+                list.add(table.insert(hash, expireTime, token.getCreateTime(), payload));
+                if (syncWrites) {
+                    table.buffer.force();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (evicted && tokenCache != null) {
+            tokenCache.invalidateUser(token.getUserId());
+        }
+    }
+
+    public Token findToken(String userId, String access_token) {
+        ByteBuffer hash = ByteBuffer.wrap(TokenUtil.digestToken(access_token));
+        lock.readLock().lock();
+        try {
+            Table table = this.table;
+            int slot = table.find(hash);
+            if (slot < 0 || table.expireTime(slot) <= System.currentTimeMillis()) {
+                return null;
+            }
+            Token token = decode(table, slot);
+            if (!token.getUserId().equals(userId)) {
+                return null;
+            }
+            token.setAccessToken(access_token);
+            return token;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Token> findTokensByUserId(String userId) {
+        List<Token> tokens = new ArrayList<Token>();
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            List<Integer> list = userSlots.get(userId);
+            if (list != null) {
+                for (int slot : list) {
+                    if (table.expireTime(slot) > now) {
+                        Token token = decode(table, slot);
+                        token.setAccessToken(Hex.encodeToString(table.hash(slot)));
+                        tokens.add(token);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return tokens;
+    }
+
+    /**
+     * @param access_token 也可以传入findTokensByUserId返回的摘要
+     */
+    public int removeToken(String userId, String access_token) {
+        int rs = 0;
+        ByteBuffer hash = ByteBuffer.wrap(digest(access_token));
+        writeLock.lock();
+        lock.writeLock().lock();
+        try {
+            int slot = table.find(hash);
+            if (slot >= 0 && decode(table, slot).getUserId().equals(userId)) {
+                removeFromIndex(slot);
+                table.remove(slot);
+                if (syncWrites) {
+                    table.buffer.force();
+                }
+                rs = 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+            writeLock.unlock();
+        }
+        if (tokenCache != null) {
+            if (TokenUtil.isTokenHash(access_token)) {
+                tokenCache.invalidateUser(userId);
+            } else {
+                tokenCache.invalidate(access_token);
+            }
+        }
+        return rs;
+    }
+
+    public int removeTokensByUserId(String userId) {
+        int rs = 0;
+        writeLock.lock();
+        lock.writeLock().lock();
+        try {
+            List<Integer> list = userSlots.remove(userId);
+            if (list != null) {
+                for (int slot : list) {
+                    table.remove(slot);
+                }
+                rs = list.size();
+                if (syncWrites) {
+                    table.buffer.force();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+            writeLock.unlock();
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        return rs;
+    }
+
+    public int removeTokens(List<Token> tokens) {
+        int rs = 0;
+        for (Token token : tokens) {
+            rs += removeToken(token.getUserId(), token.getAccessToken());
+        }
+        return rs;
+    }
+
+    public int removeTokensByUserIds(List<String> userIds) {
+        int rs = 0;
+        for (String userId : userIds) {
+            rs += removeTokensByUserId(userId);
+        }
+        return rs;
+    }
+
+    public int updateRolesByUserId(String userId, String[] roles) {
+        return update(userId, token -> token.setRoles(roles));
+    }
+
+    public int updateRoleIdsByUserId(String userId, String[] roleIds) {
+        return update(userId, token -> token.setRoleIds(roleIds));
+    }
+
+    public int updatePermissionsByUserId(String userId, String[] permissions) {
+        return update(userId, token -> token.setPermissions(permissions));
+    }
+
+    /**
+     * 先编码所有新记录, 溢出区不足时在写入前压缩一次, 压缩会移动槽位, 压缩后按新槽位重新编码
+     */
+    private int update(String userId, Consumer<Token> updater) {
+        int rs = 0;
+        writeLock.lock();
+        try {
+            List<Integer> list = userSlots.get(userId);
+            List<byte[]> payloads = list == null ? null : encode(list, updater);
+            if (payloads != null && !table.hasPayloadRoom(size(payloads))) {
+                compact(size(payloads));
+                list = userSlots.get(userId);
+                payloads = list == null ? null : encode(list, updater);
+            }
+            if (payloads != null) {
+                lock.writeLock().lock();
+                try {
+                    for (int i = 0; i < list.size(); i++) {
+                        table.update(list.get(i), payloads.get(i));
+                    }
+                    if (syncWrites) {
+                        table.buffer.force();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                rs = list.size();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        return rs;
+    }
+
+    private List<byte[]> encode(List<Integer> slots, Consumer<Token> updater) {
+        List<byte[]> payloads = new ArrayList<byte[]>(slots.size());
+        for (int slot : slots) {
+            Token token = decode(table, slot);
+            updater.accept(token);
+            payloads.add(encode(token));
+        }
+        return payloads;
+    }
+
+    private static long size(List<byte[]> payloads) {
+        long size = 0;
+        for (byte[] payload : payloads) {
+            size += payload.length;
+        }
+        return size;
+    }
+
+    /**
+     * 存储的token数, 包括已过期未压缩的
+     */
+    public int size() {
+        return table.used;
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getCompactCount() {
+        return compactCount.get();
+    }
+
+    /**
+     * 打开文件时校验失败被丢弃的槽位数
+     */
+    public long getCorruptCount() {
+        return corruptCount.get();
+    }
+
+    private void removeFromIndex(int slot) {
+        String userId = decode(table, slot).getUserId();
+        List<Integer> list = userSlots.get(userId);
+        if (list != null) {
+            list.remove(Integer.valueOf(slot));
+            if (list.isEmpty()) {
+                userSlots.remove(userId);
+            }
+        }
+    }
+
+    private static byte[] digest(String access_token) {
+        return TokenUtil.isTokenHash(access_token) ? Hex.decode(access_token) : TokenUtil.digestToken(access_token);
+    }
+
+    /**
+     * 溢出记录: userId, tokenKey, 权限, 角色, 角色id, 数组前为长度(-1为null), 字符串前为UTF-8字节数
+     */
+    private static byte[] encode(Token token) {
+        List<byte[]> strings = new ArrayList<byte[]>();
+        int size = 0;
+        size += add(strings, token.getUserId());
+        size += add(strings, token.getTokenKey());
+        String[][] arrays = {token.getPermissions(), token.getRoles(), token.getRoleIds()};
+        for (String[] array : arrays) {
+            size += 4;
+            if (array != null) {
+                for (String value : array) {
+                    size += add(strings, value);
+                }
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        int index = 0;
+        buffer.putInt(strings.get(index).length).put(strings.get(index++));
+        buffer.putInt(strings.get(index).length).put(strings.get(index++));
+        for (String[] array : arrays) {
+            buffer.putInt(array == null ? -1 : array.length);
+            if (array != null) {
+                for (int i = 0; i < array.length; i++) {
+                    buffer.putInt(strings.get(index).length).put(strings.get(index++));
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    private static int add(List<byte[]> strings, String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        strings.add(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static Token decode(Table table, int slot) {
+        ByteBuffer buffer = ByteBuffer.wrap(table.payload(slot));
+        Token token = new Token();
+        token.setUserId(readString(buffer));
+        token.setTokenKey(readString(buffer));
+        token.setPermissions(readArray(buffer));
+        token.setRoles(readArray(buffer));
+        token.setRoleIds(readArray(buffer));
+        long expireTime = table.expireTime(slot);
+        token.setExpireTime(expireTime == Long.MAX_VALUE ? null : expireTime);
+        token.setCreateTime(table.createTime(slot));
+        return token;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] readArray(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String[] array = new String[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = readString(buffer);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,460 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 内存存储token的实现, 用于单节点部署和集成测试, 进程退出后token失效
+ * 查询不加锁; 按用户的写操作按userId分段加锁, 每段有自己的用户环和时间轮
+ * 每个用户的token放在容量为maxToken的环中, 签发时O(1)淘汰最旧的token, 过期的token由时间轮回收
+ */
+@Slf4j
+public class MemoryTokenStore implements TokenStore {
+    public static final int DEFAULT_STRIPES = 64;  // 默认分段数
+    public static final long DEFAULT_TICK = 1000;  // 默认时间轮精度,单位毫秒
+
+    private final String tokenKey;
+    private final TokenKeyProvider keyProvider;
+    private final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+    private final Stripe[] stripes;
+    private final int mask;
+    private TokenCache tokenCache;
+    private KeyRing keyRing;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    public MemoryTokenStore() {
+        this(TokenUtil.getHexKey());
+    }
+
+    public MemoryTokenStore(String tokenKey) {
+        this(tokenKey, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes 分段数, 向上取2的幂
+     */
+    public MemoryTokenStore(String tokenKey, int stripes) {
+        Assert.hasText(tokenKey, "tokenKey required");
+        this.tokenKey = tokenKey;
+        this.keyProvider = new TokenKeyProvider(() -> this.tokenKey);
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[size];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe(now);
+        }
+        this.mask = size - 1;
+    }
+
+    private static class Entry extends TimerWheel.Node {
+        private final Token token;
+
+        private Entry(Token token) {
+            this.token = token;
+        }
+    }
+
+    /**
+     * 用户的token环, 按签发顺序排列
+     */
+    private static class UserRing {
+        private Entry[] entries = new Entry[2];
+        private int head;
+        private int count;
+
+        private void add(Entry entry) {
+            if (count == entries.length) {
+                grow();
+            }
+            entries[(head + count) % entries.length] = entry;
+            count++;
+        }
+
+        /**
+         * 移除最旧的token
+         */
+        private Entry poll() {
+            Entry oldest = entries[head];
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            count--;
+            return oldest;
+        }
+
+        private boolean remove(Entry entry) {
+            for (int i = 0; i < count; i++) {
+                if (entries[(head + i) % entries.length] == entry) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Entry removeAt(int index) {
+            Entry removed = entries[(head + index) % entries.length];
+            for (int i = index; i < count - 1; i++) {
+                entries[(head + i) % entries.length] = entries[(head + i + 1) % entries.length];
+            }
+            entries[(head + count - 1) % entries.length] = null;
+            count--;
+            return removed;
+        }
+
+        private Entry get(int index) {
+            return entries[(head + index) % entries.length];
+        }
+
+        private void grow() {
+            Entry[] grown = new Entry[entries.length << 1];
+            for (int i = 0; i < count; i++) {
+                grown[i] = entries[(head + i) % entries.length];
+            }
+            entries = grown;
+            head = 0;
+        }
+    }
+
+    private static class Stripe {
+        private final Map<String, UserRing> users = new HashMap<String, UserRing>();
+        private final TimerWheel wheel;
+
+        private Stripe(long now) {
+            this.wheel = new TimerWheel(DEFAULT_TICK, now);
+        }
+    }
+
+    @Override
+    public String getTokenKey() {
+        return keyProvider.getHexKey();
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return keyProvider.getKey();
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * 开启已校验token的本地缓存, 删除token或更新权限时自动失效
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return keyRing;
+    }
+
+    /**
+     * 使用key环签发和校验token, 没有kid的旧token仍使用store中的key校验
+     */
+    public void setKeyRing(KeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    /**
+     * 开始定时回收过期token, 未start时过期的token查询不到, 但直到被淘汰或删除才释放内存
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-memory-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                expire();
+            } catch (Exception e) {
+                log.warn("回收过期token失败：" + e.getMessage());
+            }
+        }, DEFAULT_TICK, DEFAULT_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 推进每一段的时间轮, 回收到期的token
+     *
+     * @return 回收的token数
+     */
+    public int expire() {
+        long now = System.currentTimeMillis();
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (TimerWheel.Node node : stripe.wheel.advance(now)) {
+                    Entry entry = (Entry) node;
+                    detach(stripe, entry);
+                    tokens.remove(entry.token.getAccessToken(), entry);
+                    total++;
+                }
+            }
+        }
+        expiredCount.addAndGet(total);
+        return total;
+    }
+
+    private Token buildToken(String userId, long expire) {
+        if (keyRing != null) {
+            KeyRing.Entry key = keyRing.getActive();
+            return TokenUtil.buildToken(userId, expire, key.getSignKey(), key.getKid());
+        }
+        return TokenUtil.buildToken(userId, expire, getSigningKey());
+    }
+
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
+        return createNewToken(userId, permissions, roles, roleIds, TokenUtil.DEFAULT_EXPIRE);
+    }
+
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        Token token = buildToken(userId, expire);
+        token.setPermissions(permissions);
+        token.setRoles(roles);
+        token.setRoleIds(roleIds);
+        add(token, getMaxToken());
+        return token;
+    }
+
+    public List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        List<Token> list = new ArrayList<Token>();
+        for (String userId : userIds) {
+            list.add(createNewToken(userId, permissions, roles, roleIds, expire));
+        }
+        return list;
+    }
+
+    public int storeToken(Token token) {
+        add(token, -1);
+        return 1;
+    }
+
+    public int storeTokens(List<Token> list) {
+        for (Token token : list) {
+            add(token, -1);
+        }
+        return list.size();
+    }
+
+    private void add(Token token, int limit) {
+        if (token.getCreateTime() == null) {
+            token.setCreateTime(System.currentTimeMillis());
+        }
+        Entry entry = new Entry(token);
+        List<Entry> evicted = null;
+        Stripe stripe = stripe(token.getUserId());
+        synchronized (stripe) {
+            UserRing ring = stripe.users.get(token.getUserId());
+            if (ring == null) {
+                ring = new UserRing();
+                stripe.users.put(token.getUserId(), ring);
+            }
+            // 环满时淘汰最旧的token, maxToken调小后一次淘汰多个
+            while (limit > 0 && ring.count >= limit) {
+                Entry oldest = ring.poll();
+                stripe.wheel.cancel(oldest);
+                tokens.remove(oldest.token.getAccessToken(), oldest);
+                if (evicted == null) {
+                    evicted = new ArrayList<Entry>();
+                }
+                evicted.add(oldest);
+            }
+            ring.add(entry);
+            Entry replaced = tokens.put(token.getAccessToken(), entry);
+            if (replaced != null) {
+                detach(stripe, replaced);
+            }
+            if (token.getExpireTime() != null) {
+                stripe.wheel.schedule(entry, token.getExpireTime());
+            }
+        }
+        if (evicted != null) {
+            evictedCount.addAndGet(evicted.size());
+            if (tokenCache != null) {
+                for (Entry oldest : evicted) {
+                    tokenCache.invalidate(oldest.token.getAccessToken());
+                }
+            }
+        }
+    }
+
+    public Token findToken(String userId, String access_token) {
+        Entry entry = tokens.get(access_token);
+        if (entry == null || !entry.token.getUserId().equals(userId)) {
+            return null;
+        }
+        Long expireTime = entry.token.getExpireTime();
+        if (expireTime != null && expireTime <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.token;
+    }
+
+    public List<Token> findTokensByUserId(String userId) {
+        List<Token> list = new ArrayList<Token>();
+        long now = System.currentTimeMillis();
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            UserRing ring = stripe.users.get(userId);
+            if (ring != null) {
+                for (int i = 0; i < ring.count; i++) {
+                    Token token = ring.get(i).token;
+                    if (token.getExpireTime() == null || token.getExpireTime() > now) {
+                        list.add(token);
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    public int removeToken(String userId, String access_token) {
+        Entry entry = tokens.get(access_token);
+        if (entry == null || !entry.token.getUserId().equals(userId)) {
+            return 0;
+        }
+        Stripe stripe = stripe(userId);
+        boolean removed;
+        synchronized (stripe) {
+            removed = tokens.remove(access_token, entry);
+            if (removed) {
+                detach(stripe, entry);
+            }
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidate(access_token);
+        }
+        return removed ? 1 : 0;
+    }
+
+    public int removeTokensByUserId(String userId) {
+        int rs = 0;
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            UserRing ring = stripe.users.remove(userId);
+            if (ring != null) {
+                for (int i = 0; i < ring.count; i++) {
+                    Entry entry = ring.get(i);
+                    stripe.wheel.cancel(entry);
+                    tokens.remove(entry.token.getAccessToken(), entry);
+                }
+                rs = ring.count;
+            }
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        return rs;
+    }
+
+    public int removeTokens(List<Token> list) {
+        int rs = 0;
+        for (Token token : list) {
+            rs += removeToken(token.getUserId(), token.getAccessToken());
+        }
+        return rs;
+    }
+
+    public int removeTokensByUserIds(List<String> userIds) {
+        int rs = 0;
+        for (String userId : userIds) {
+            rs += removeTokensByUserId(userId);
+        }
+        return rs;
+    }
+
+    public int updateRolesByUserId(String userId, String[] roles) {
+        return update(userId, token -> token.setRoles(roles));
+    }
+
+    public int updateRoleIdsByUserId(String userId, String[] roleIds) {
+        return update(userId, token -> token.setRoleIds(roleIds));
+    }
+
+    public int updatePermissionsByUserId(String userId, String[] permissions) {
+        return update(userId, token -> token.setPermissions(permissions));
+    }
+
+    private int update(String userId, Consumer<Token> updater) {
+        int rs = 0;
+        Stripe stripe = stripe(userId);
+        synchronized (stripe) {
+            UserRing ring = stripe.users.get(userId);
+            if (ring != null) {
+                for (int i = 0; i < ring.count; i++) {
+                    updater.accept(ring.get(i).token);
+                }
+                rs = ring.count;
+            }
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        return rs;
+    }
+
+    /**
+     * 存储的token数, 包括已过期未回收的
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * 从用户环和时间轮中移除, 调用方持有段锁
+     */
+    private void detach(Stripe stripe, Entry entry) {
+        stripe.wheel.cancel(entry);
+        UserRing ring = stripe.users.get(entry.token.getUserId());
+        if (ring != null && ring.remove(entry) && ring.count == 0) {
+            stripe.users.remove(entry.token.getUserId());
+        }
+    }
+
+    private Stripe stripe(String userId) {
+        int h = userId.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private static int getMaxToken() {
+        Integer maxToken = Config.getInstance().getMaxToken();
+        return maxToken == null ? -1 : maxToken;
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.zkoalas.jwts.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.util.ObjectUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于ReactiveRedisTemplate(lettuce)的非阻塞redis存储, 与RedisTokenStore使用相同的数据结构和脚本, 两者可混用
+ * 签名key、本地缓存、key环、失效通道和expireKeys沿用传入的RedisTokenStore
+ * 开启legacyLookup或legacyWrites时, 旧版本的key使用传入的RedisTokenStore在elastic线程中读写
+ */
+@Slf4j
+public class ReactiveRedisTokenStore implements AsyncTokenStore {
+    private final RedisTokenStore tokenStore;
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+
+    public ReactiveRedisTokenStore(RedisTokenStore tokenStore, ReactiveRedisConnectionFactory connectionFactory) {
+        this(tokenStore, new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.string()));
+    }
+
+    public ReactiveRedisTokenStore(RedisTokenStore tokenStore, ReactiveRedisTemplate<String, String> redisTemplate) {
+        this.tokenStore = tokenStore;
+        this.redisTemplate = redisTemplate;
+    }
+
+    public RedisTokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    @Override
+    public CompletableFuture<Key> getSigningKey() {
+        if (tokenStore.getKeyProvider().isLoaded()) {
+            return CompletableFuture.completedFuture(tokenStore.getSigningKey());
+        }
+        // 首次加载key使用阻塞的RedisTemplate, 放到elastic线程中执行
+        return Mono.fromCallable(tokenStore::getSigningKey).subscribeOn(Schedulers.elastic()).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Token> findToken(String userId, String access_token) {
+        if (userId == null || userId.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return executeList(RedisTokenStore.SCRIPT_FIND_TOKEN, RedisTokenStore.userKeys(userId),
+                Arrays.asList(access_token, RedisTokenStore.now()))
+                .flatMap(rs -> Mono.justOrEmpty(RedisTokenStore.toToken(userId, access_token, rs)))
+                .switchIfEmpty(Mono.defer(() -> tokenStore.isLegacyLookup()
+                        ? blocking(() -> tokenStore.findLegacyToken(userId, access_token)) : Mono.<Token>empty()))
+                .map(tokenStore::resolvePermissions)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Token> createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        return getSigningKey().thenCompose(key -> {
+            Token token = tokenStore.buildToken(userId, expire);
+            token.setPermissions(permissions);
+            token.setRoles(roles);
+            token.setRoleIds(roleIds);
+            Integer maxToken = Config.getInstance().getMaxToken();
+            int max = maxToken == null ? -1 : maxToken;
+            List<String> args = tokenStore.storeArgs(token, max);
+            return executeList(RedisTokenStore.SCRIPT_STORE_TOKENS, RedisTokenStore.userKeys(userId), args)
+                    .defaultIfEmpty(Collections.emptyList())
+                    .flatMap(removed -> !tokenStore.isLegacyWrites() ? Mono.just(removed) : blocking(() -> {
+                        tokenStore.storeLegacyTokens(Collections.singletonList(token), max);
+                        return removed;
+                    }))
+                    .map(removed -> {
+                        if (!removed.isEmpty()) {
+                            log.debug("淘汰token数：" + removed.size());
+                        }
+                        // 权限和角色按用户存储, 已缓存的token需要重新加载
+                        tokenStore.invalidateCache(userId);
+                        return token;
+                    })
+                    .toFuture();
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Token>> findTokensByUserId(String userId) {
+        if (userId == null || userId.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return executeList(RedisTokenStore.SCRIPT_FIND_TOKENS, RedisTokenStore.userKeys(userId),
+                Collections.singletonList(RedisTokenStore.now()))
+                .map(rs -> RedisTokenStore.toTokens(userId, rs))
+                .defaultIfEmpty(new ArrayList<Token>())
+                .flatMap(tokens -> tokenStore.isLegacyLookup() ? blocking(() -> tokenStore.mergeLegacyTokens(userId, tokens)) : Mono.just(tokens))
+                .map(tokenStore::resolvePermissions)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeToken(String userId, String access_token) {
+        List<String> args = Arrays.asList(tokenStore.isExpireKeys() ? RedisTokenStore.now() : "0", access_token);
+        return redisTemplate.execute(RedisTokenStore.SCRIPT_REMOVE_TOKENS, RedisTokenStore.userKeys(userId), args)
+                .next()
+                .defaultIfEmpty(0L)
+                .flatMap(rs -> !isLegacyKeys() ? Mono.just(rs)
+                        : redisTemplate.opsForList().remove(RedisTokenStore.KEY_PRE_TOKEN + userId, 0, access_token).map(legacy -> rs > 0 || legacy > 0 ? 1L : 0L))
+                .map(rs -> {
+                    tokenStore.invalidateToken(access_token);
+                    return rs.intValue();
+                })
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeTokensByUserId(String userId) {
+        List<String> keys = tokenStore.isExpireKeys() ? RedisTokenStore.userKeys(userId) : RedisTokenStore.tokenKeys(userId);
+        String legacyKey = RedisTokenStore.KEY_PRE_TOKEN + userId;
+        Mono<List<String>> legacyTokens = isLegacyKeys()
+                ? redisTemplate.opsForList().range(legacyKey, 0, -1).collectList()
+                : Mono.just(Collections.<String>emptyList());
+        return legacyTokens
+                .flatMap(tokens -> {
+                    List<String> args = new ArrayList<String>();
+                    args.add(RedisTokenStore.now());
+                    args.addAll(tokens);
+                    Mono<Long> rs = redisTemplate.execute(RedisTokenStore.SCRIPT_REMOVE_USER, keys, args).next().defaultIfEmpty(0L);
+                    return isLegacyKeys() ? rs.flatMap(count -> redisTemplate.delete(legacyKey).thenReturn(count)) : rs;
+                })
+                .map(rs -> {
+                    tokenStore.invalidateCache(userId);
+                    return rs.intValue();
+                })
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateRolesByUserId(String userId, String[] roles) {
+        return updateSet(RedisTokenStore.KEY_PRE_ROLE, userId, roles);
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateRoleIdsByUserId(String userId, String[] roleIds) {
+        return updateSet(RedisTokenStore.KEY_PRE_ROLE_IDS, userId, roleIds);
+    }
+
+    @Override
+    public CompletableFuture<Integer> updatePermissionsByUserId(String userId, String[] permissions) {
+        return updateSet(RedisTokenStore.KEY_PRE_PERM, userId, permissions);
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return tokenStore.getKeyRing();
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenStore.getTokenCache();
+    }
+
+    @Override
+    public SlidingExpiration getSlidingExpiration() {
+        return tokenStore.getSlidingExpiration();
+    }
+
+    /**
+     * 脚本返回的列表作为一个元素发出, 返回nil时是只含null的列表, 转为空结果
+     */
+    private Mono<List<Object>> executeList(RedisScript<List<Object>> script, List<String> keys, List<String> args) {
+        return redisTemplate.execute(script, keys, args)
+                .next()
+                .filter(rs -> !(rs.size() == 1 && rs.get(0) == null));
+    }
+
+    private boolean isLegacyKeys() {
+        return tokenStore.isLegacyLookup() || tokenStore.isLegacyWrites();
+    }
+
+    /**
+     * 在elastic线程中执行阻塞的RedisTemplate调用, 返回null时为空结果
+     */
+    private static <T> Mono<T> blocking(Callable<T> callable) {
+        return Mono.fromCallable(callable).subscribeOn(Schedulers.elastic());
+    }
+
+    private CompletableFuture<Integer> updateSet(String prefix, String userId, String[] values) {
+        if (isLegacyKeys()) {
+            // 同时修改旧版本的key, 由RedisTokenStore处理
+            return blocking(() -> {
+                if (prefix.equals(RedisTokenStore.KEY_PRE_PERM)) {
+                    return tokenStore.updatePermissionsByUserId(userId, values);
+                } else if (prefix.equals(RedisTokenStore.KEY_PRE_ROLE)) {
+                    return tokenStore.updateRolesByUserId(userId, values);
+                }
+                return tokenStore.updateRoleIdsByUserId(userId, values);
+            }).toFuture();
+        }
+        String key = RedisTokenStore.userKey(prefix, userId);
+        Mono<?> rs;
+        if (tokenStore.isExpireKeys()) {
+            List<String> keys = new ArrayList<String>();
+            keys.add(key);
+            keys.addAll(RedisTokenStore.userKeys(userId));
+            List<String> args = new ArrayList<String>();
+            args.add(RedisTokenStore.now());
+            if (values != null) {
+                args.addAll(Arrays.asList(values));
+            }
+            rs = redisTemplate.execute(RedisTokenStore.SCRIPT_UPDATE_SET, keys, args).then();
+        } else {
+            Mono<Long> delete = redisTemplate.delete(key);
+            rs = ObjectUtils.isEmpty(values) ? delete : delete.then(redisTemplate.opsForSet().add(key, values));
+        }
+        return rs.then(Mono.fromCallable(() -> {
+            tokenStore.invalidateCache(userId);
+            return 1;
+        })).toFuture();
+    }
+}
@@ -1,13 +1,33 @@
 package com.github.zkoalas.jwts.provider;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import com.github.zkoalas.jwts.event.InvalidationBus;
+import com.github.zkoalas.jwts.role.RolePermissions;
+import com.github.zkoalas.jwts.util.PermissionDictionary;
 import com.github.zkoalas.jwts.util.TokenUtil;
 import org.springframework.util.ObjectUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * redis存储token的实现
@@ -15,12 +35,201 @@ import java.util.Set;
 @Slf4j
 public class RedisTokenStore implements TokenStore {
     private static final String KEY_TOKEN_KEY = "oauth_token_key";
-    private static final String KEY_PRE_TOKEN = "oauth_token:";
-    private static final String KEY_PRE_PERM = "oauth_prem:";
-    private static final String KEY_PRE_ROLE = "oauth_role:";
-    private static final String KEY_PRE_ROLE_IDS = "oauth_role_ids:";
+    static final String KEY_PRE_TOKEN = "oauth_token:";  // 旧版本的token列表, legacyLookup时兼容查询
+    static final String KEY_PRE_TOKENS = "oauth_tokens:";  // token有序集合, score为过期时间
+    static final String KEY_PRE_PERM = "oauth_prem:";
+    static final String KEY_PRE_ROLE = "oauth_role:";
+    static final String KEY_PRE_ROLE_IDS = "oauth_role_ids:";
+    static final String KEY_PRE_ISSUED = "oauth_tokens_issued:";  // token有序集合, score为签发时间, 用于按签发顺序淘汰
+    private static final int PIPELINE_SIZE = 256;  // 批量操作每个pipeline的脚本调用数
+
+    /**
+     * 按用户最后一个有效token设置所有key的过期时间, 没有有效token时删除
+     */
+    private static final String LUA_SYNC_EXPIRE =
+            "local function syncExpire(keys) " +
+            "  local last = redis.call('ZRANGE', keys[1], -1, -1, 'WITHSCORES') " +
+            "  if #last == 0 then redis.call('DEL', unpack(keys)) return end " +
+            "  local at = tonumber(last[2]) " +
+            "  for _, k in ipairs(keys) do " +
+            "    if at < 1e15 then redis.call('PEXPIREAT', k, string.format('%.0f', at)) else redis.call('PERSIST', k) end " +
+            "  end " +
+            "end ";
+
+    /**
+     * 删除已过期的token, 每次最多1000个
+     */
+    private static final String LUA_PURGE =
+            "local function purge(keys, now) " +
+            "  repeat " +
+            "    local expired = redis.call('ZRANGEBYSCORE', keys[1], '-inf', now, 'LIMIT', 0, 1000) " +
+            "    if #expired == 0 then return end " +
+            "    redis.call('ZREM', keys[1], unpack(expired)) " +
+            "    redis.call('ZREM', keys[5], unpack(expired)) " +
+            "  until #expired < 1000 " +
+            "end ";
+
+    /**
+     * 返回列表的脚本, DefaultRedisScript只接受List.class
+     */
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<Object>> listScript(String script) {
+        return new DefaultRedisScript<>(script, (Class<List<Object>>) (Class<?>) List.class);
+    }
+
+    /**
+     * 一次往返查询token及权限、角色、签发时间, 过期的token视为不存在
+     * KEYS: tokens, perm, role, roleIds, issued  ARGV: access_token, 当前时间
+     */
+    static final RedisScript<List<Object>> SCRIPT_FIND_TOKEN = listScript(
+            "local score = redis.call('ZSCORE', KEYS[1], ARGV[1]) " +
+            "if not score or tonumber(score) <= tonumber(ARGV[2]) then return {} end " +
+            "return {score, redis.call('SMEMBERS', KEYS[2]), redis.call('SMEMBERS', KEYS[3]), redis.call('SMEMBERS', KEYS[4]), " +
+            "redis.call('ZSCORE', KEYS[5], ARGV[1])}");
+
+    /**
+     * 一次往返查询用户所有未过期token及权限、角色、签发时间
+     * KEYS: tokens, perm, role, roleIds, issued  ARGV: 当前时间
+     */
+    static final RedisScript<List<Object>> SCRIPT_FIND_TOKENS = listScript(
+            "return {redis.call('ZRANGEBYSCORE', KEYS[1], '(' .. ARGV[1], '+inf', 'WITHSCORES'), redis.call('SMEMBERS', KEYS[2]), " +
+            "redis.call('SMEMBERS', KEYS[3]), redis.call('SMEMBERS', KEYS[4]), redis.call('ZRANGE', KEYS[5], 0, -1, 'WITHSCORES')}");
+
+    /**
+     * 原子写入token、替换权限角色集合并按maxToken淘汰, 返回被淘汰的token
+     * 先淘汰已过期的, 再按签发时间淘汰最早的, 旧版本写入的没有签发时间的token视为最早签发
+     * KEYS: tokens, perm, role, roleIds, issued
+     * ARGV: access_token, score, 签发时间, maxToken, 当前时间, 是否清除过期token(1/0), 权限数, 角色数, 角色id数, 权限..., 角色..., 角色id...
+     */
+    static final RedisScript<List<Object>> SCRIPT_STORE_TOKENS = listScript(
+            LUA_SYNC_EXPIRE + LUA_PURGE +
+            "local keys = {KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5]} " +
+            "local token, max, now, expire = ARGV[1], tonumber(ARGV[4]), ARGV[5], ARGV[6] == '1' " +
+            "redis.call('ZADD', keys[1], ARGV[2], token) " +
+            "redis.call('ZADD', keys[5], ARGV[3], token) " +
+            "local i = 10 " +
+            "for k = 2, 4 do " +
+            "  local n = tonumber(ARGV[k + 5]) " +
+            "  if n > 0 then " +
+            "    redis.call('DEL', keys[k]) " +
+            "    redis.call('SADD', keys[k], unpack(ARGV, i, i + n - 1)) " +
+            "    i = i + n " +
+            "  end " +
+            "end " +
+            "if expire then purge(keys, now) end " +
+            "local removed = {} " +
+            "local excess = max >= 0 and redis.call('ZCARD', keys[1]) - max or 0 " +
+            "if excess > 0 then " +
+            "  local picked = {} " +
+            "  for _, t in ipairs(redis.call('ZRANGEBYSCORE', keys[1], '-inf', now, 'LIMIT', 0, excess)) do " +
+            "    if t ~= token then removed[#removed + 1] = t picked[t] = true end " +
+            "  end " +
+            "  if #removed < excess and redis.call('ZCARD', keys[5]) < redis.call('ZCARD', keys[1]) then " +
+            "    for _, t in ipairs(redis.call('ZRANGE', keys[1], 0, -1)) do " +
+            "      if not redis.call('ZSCORE', keys[5], t) then redis.call('ZADD', keys[5], 0, t) end " +
+            "    end " +
+            "  end " +
+            "  local start, stale = 0, {} " +
+            "  while #removed < excess do " +
+            "    local batch = redis.call('ZRANGE', keys[5], start, start + 99) " +
+            "    if #batch == 0 then break end " +
+            "    for _, t in ipairs(batch) do " +
+            "      if #removed < excess and t ~= token and not picked[t] then " +
+            "        if redis.call('ZSCORE', keys[1], t) then removed[#removed + 1] = t else stale[#stale + 1] = t end " +
+            "      end " +
+            "    end " +
+            "    start = start + 100 " +
+            "  end " +
+            "  if #stale > 0 then redis.call('ZREM', keys[5], unpack(stale)) end " +
+            "  if #removed > 0 then " +
+            "    redis.call('ZREM', keys[1], unpack(removed)) " +
+            "    redis.call('ZREM', keys[5], unpack(removed)) " +
+            "  end " +
+            "end " +
+            "if expire then syncExpire(keys) end " +
+            "return removed");
+
+    /**
+     * 移除token, 开启过期时重新计算用户key的过期时间
+     * KEYS: tokens, perm, role, roleIds, issued  ARGV: 当前时间(0不过期), access_token
+     */
+    static final RedisScript<Long> SCRIPT_REMOVE_TOKENS = new DefaultRedisScript<>(
+            LUA_SYNC_EXPIRE + LUA_PURGE +
+            "local keys = {KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5]} " +
+            "local rs = redis.call('ZREM', keys[1], ARGV[2]) " +
+            "redis.call('ZREM', keys[5], ARGV[2]) " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "  purge(keys, ARGV[1]) " +
+            "  syncExpire(keys) " +
+            "end " +
+            "return rs",
+            Long.class);
+
+    /**
+     * 删除用户的key, 返回删除的有效token数, 旧版本列表中不在新结构的token也计入
+     * KEYS: tokens, 其余要删除的key  ARGV: 当前时间, 旧版本列表中的token...
+     */
+    static final RedisScript<Long> SCRIPT_REMOVE_USER = new DefaultRedisScript<>(
+            "local rs = redis.call('ZCOUNT', KEYS[1], '(' .. ARGV[1], '+inf') " +
+            "for i = 2, #ARGV do " +
+            "  if not redis.call('ZSCORE', KEYS[1], ARGV[i]) then rs = rs + 1 end " +
+            "end " +
+            "redis.call('DEL', unpack(KEYS)) " +
+            "return rs",
+            Long.class);
+
+    /**
+     * 替换用户的权限或角色集合, 并沿用用户最后一个有效token的过期时间
+     * KEYS: 要替换的集合, tokens, perm, role, roleIds, issued  ARGV: 当前时间, 集合元素...
+     */
+    static final RedisScript<Long> SCRIPT_UPDATE_SET = new DefaultRedisScript<>(
+            LUA_SYNC_EXPIRE + LUA_PURGE +
+            "redis.call('DEL', KEYS[1]) " +
+            "if #ARGV > 1 then redis.call('SADD', KEYS[1], unpack(ARGV, 2)) end " +
+            "local keys = {KEYS[2], KEYS[3], KEYS[4], KEYS[5], KEYS[6]} " +
+            "purge(keys, ARGV[1]) " +
+            "syncExpire(keys) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 清除过期token并按最后一个有效token设置用户key的过期时间
+     * KEYS: tokens, perm, role, roleIds, issued  ARGV: 当前时间
+     */
+    static final RedisScript<Long> SCRIPT_SYNC_EXPIRE = new DefaultRedisScript<>(
+            LUA_SYNC_EXPIRE + LUA_PURGE +
+            "purge(KEYS, ARGV[1]) " +
+            "syncExpire(KEYS) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 延长未过期token的过期时间, 开启过期时重新计算用户key的过期时间
+     * KEYS: tokens, perm, role, roleIds, issued  ARGV: 当前时间, 是否同步key过期(1/0), access_token, score
+     */
+    static final RedisScript<Long> SCRIPT_EXTEND_TOKENS = new DefaultRedisScript<>(
+            LUA_SYNC_EXPIRE +
+            "local keys = {KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5]} " +
+            "local old = redis.call('ZSCORE', keys[1], ARGV[3]) " +
+            "if old and tonumber(old) > tonumber(ARGV[1]) and tonumber(old) < tonumber(ARGV[4]) then " +
+            "  redis.call('ZADD', keys[1], ARGV[4], ARGV[3]) " +
+            "  if ARGV[2] == '1' then syncExpire(keys) end " +
+            "  return 1 " +
+            "end " +
+            "return 0",
+            Long.class);
 
     private StringRedisTemplate redisTemplate;
+    private final TokenKeyProvider keyProvider = new TokenKeyProvider(this::loadTokenKey);
+    private TokenCache tokenCache;
+    private KeyRing keyRing;
+    private InvalidationBus invalidationBus;
+    private SlidingExpiration slidingExpiration;
+    private RolePermissions rolePermissions;
+    private boolean expireKeys = false;  // 用户的key是否随最后一个有效token过期
+    private volatile boolean pipelineScripts = true;  // 连接是否支持在pipeline中执行脚本, jedis不支持
+    private volatile boolean legacyLookup = true;  // 查询不到时是否再查旧版本oauth_token:userId列表中的token
+    private boolean legacyWrites = false;  // 是否同时写入旧版本的key, 滚动升级期间未升级的节点也能查到新签发的token
 
     public RedisTokenStore(StringRedisTemplate redisTemplate) {
         this.redisTemplate = redisTemplate;
@@ -28,82 +237,260 @@ public class RedisTokenStore implements TokenStore {
 
     @Override
     public String getTokenKey() {
+        return keyProvider.getHexKey();
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return keyProvider.getKey();
+    }
+
+    public TokenKeyProvider getKeyProvider() {
+        return keyProvider;
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * 开启已校验token的本地缓存, 删除token或更新权限时自动失效
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return keyRing;
+    }
+
+    /**
+     * 使用key环签发和校验token, 没有kid的旧token仍使用store中的key校验
+     */
+    public void setKeyRing(KeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @Override
+    public SlidingExpiration getSlidingExpiration() {
+        return slidingExpiration;
+    }
+
+    /**
+     * 开启滑动过期, 签发token时store中的过期时间为空闲超时, 有访问时由slidingExpiration延长
+     * slidingExpiration的writer应为本store的extendTokens
+     */
+    public void setSlidingExpiration(SlidingExpiration slidingExpiration) {
+        this.slidingExpiration = slidingExpiration;
+    }
+
+    public RolePermissions getRolePermissions() {
+        return rolePermissions;
+    }
+
+    /**
+     * 按角色解析权限, oauth_prem只保存用户单独的权限, 查询时合并oauth_role_ids中角色的权限
+     * 修改角色权限使用rolePermissions.setPermissions, 不需要逐个用户updatePermissionsByUserId
+     */
+    public void setRolePermissions(RolePermissions rolePermissions) {
+        this.rolePermissions = rolePermissions;
+        rolePermissions.addListener(() -> {
+            if (tokenCache != null) {
+                tokenCache.invalidateAll();
+            }
+        });
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * 删除token或更新权限时通知其他节点, 收到其他节点的通知时清除本地缓存
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        invalidationBus.addListener((userIds, accessTokens) -> {
+            if (tokenCache != null) {
+                tokenCache.invalidateUsers(userIds);
+                accessTokens.forEach(tokenCache::invalidate);
+            }
+        });
+    }
+
+    /**
+     * 从redis读取key, 不存在时生成
+     */
+    private String loadTokenKey() {
         String tokenKey = redisTemplate.opsForValue().get(KEY_TOKEN_KEY);
         if (tokenKey == null || tokenKey.trim().isEmpty()) {
-            tokenKey = TokenUtil.getHexKey();
-            redisTemplate.opsForValue().set(KEY_TOKEN_KEY, tokenKey);
+            // key会被缓存, 多节点同时生成时以先写入的为准
+            redisTemplate.opsForValue().setIfAbsent(KEY_TOKEN_KEY, TokenUtil.getHexKey());
+            tokenKey = redisTemplate.opsForValue().get(KEY_TOKEN_KEY);
         }
         return tokenKey;
     }
 
 
 
+    /**
+     * 设置了key环时使用当前启用的key签发, header带kid
+     */
+    Token buildToken(String userId, long expire) {
+        Token token;
+        if (keyRing != null) {
+            KeyRing.Entry key = keyRing.getActive();
+            log.debug("构建token使用kid：" + key.getKid());
+            token = TokenUtil.buildToken(userId, expire, key.getSignKey(), key.getKid());
+        } else {
+            String tokenKey = getTokenKey();
+            log.debug("-------------------------------------------");
+            log.debug("构建token使用tokenKey：" + tokenKey);
+            log.debug("-------------------------------------------");
+            token = TokenUtil.buildToken(userId, expire, getSigningKey());
+        }
+        if (slidingExpiration != null) {
+            // jwt的exp为会话最长时长, store中的过期时间为空闲超时
+            token.setExpireTime(slidingExpiration.initialExpireTime(token.getExpireTime()));
+        }
+        return token;
+    }
+
     public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
         return createNewToken(userId, permissions, roles, roleIds , TokenUtil.DEFAULT_EXPIRE);
     }
 
     public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
-        String tokenKey = getTokenKey();
-        log.debug("-------------------------------------------");
-        log.debug("构建token使用tokenKey：" + tokenKey);
-        log.debug("-------------------------------------------");
-        Token token = TokenUtil.buildToken(userId, expire, TokenUtil.parseHexKey(tokenKey));
+        Token token = buildToken(userId, expire);
         token.setPermissions(permissions);
         token.setRoles(roles);
         token.setRoleIds(roleIds);
-        if (storeToken(token) > 0) {
-            if (null != Config.getInstance().getMaxToken() && -1 != Config.getInstance().getMaxToken() ) {
-                Long userTokenSize = redisTemplate.opsForList().size(KEY_PRE_TOKEN + userId);
-                if (userTokenSize > Config.getInstance().getMaxToken()) {
-                    for (int i = 0; i < userTokenSize - Config.getInstance().getMaxToken(); i++) {
-                        redisTemplate.opsForList().leftPop(KEY_PRE_TOKEN + userId);
-                    }
-                }
-            }
+        Integer maxToken = Config.getInstance().getMaxToken();
+        if (storeToken(token, maxToken == null ? -1 : maxToken) > 0) {
             return token;
         }
         return null;
     }
 
+    public List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        List<Token> tokens = new ArrayList<Token>();
+        for (String userId : userIds) {
+            Token token = buildToken(userId, expire);
+            token.setPermissions(permissions);
+            token.setRoles(roles);
+            token.setRoleIds(roleIds);
+            tokens.add(token);
+        }
+        Integer maxToken = Config.getInstance().getMaxToken();
+        storeTokens(tokens, maxToken == null ? -1 : maxToken);
+        return tokens;
+    }
+
     public int storeToken(Token token) {
-        // 存储access_token
-        redisTemplate.opsForList().rightPush(KEY_PRE_TOKEN + token.getUserId(), token.getAccessToken());
-        // 存储权限
-        if(!ObjectUtils.isEmpty(token.getPermissions())) {
-            String permKey = KEY_PRE_PERM + token.getUserId();
-            redisTemplate.delete(permKey);
-            redisTemplate.opsForSet().add(permKey, token.getPermissions());
-        }
-        // 存储角色
-        if(!ObjectUtils.isEmpty(token.getRoles())) {
-            String roleKey = KEY_PRE_ROLE + token.getUserId();
-            redisTemplate.delete(roleKey);
-            redisTemplate.opsForSet().add(roleKey, token.getRoles());
-        }
-        //存储角色id
-        if(!ObjectUtils.isEmpty(token.getRoleIds())) {
-            String roleIdsKey = KEY_PRE_ROLE_IDS + token.getUserId();
-            redisTemplate.delete(roleIdsKey);
-            redisTemplate.opsForSet().add(roleIdsKey, token.getRoleIds());
+        return storeToken(token, -1);
+    }
+
+    public int storeTokens(List<Token> tokens) {
+        return storeTokens(tokens, -1);
+    }
+
+    /**
+     * 一次脚本调用完成存储和淘汰, 往返次数与淘汰的token数无关
+     *
+     * @param maxToken 用户最大token数, -1不限制
+     */
+    private int storeToken(Token token, int maxToken) {
+        return storeTokens(Collections.singletonList(token), maxToken);
+    }
+
+    /**
+     * 每个token一次脚本调用, 用pipeline发送
+     */
+    private int storeTokens(List<Token> tokens, int maxToken) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        List<List<String>> keys = new ArrayList<List<String>>();
+        List<List<String>> args = new ArrayList<List<String>>();
+        for (Token token : tokens) {
+            keys.add(userKeys(token.getUserId()));
+            args.add(storeArgs(token, maxToken));
+        }
+        int removed = 0;
+        for (Object rs : execute(SCRIPT_STORE_TOKENS, keys, args)) {
+            removed += rs == null ? 0 : ((List<?>) rs).size();
+        }
+        if (removed > 0) {
+            log.debug("淘汰token数：" + removed);
+        }
+        if (legacyWrites) {
+            storeLegacyTokens(tokens, maxToken);
+        }
+        // 权限和角色按用户存储, 已缓存的token需要重新加载
+        for (Token token : tokens) {
+            invalidateCache(token.getUserId());
+        }
+        return tokens.size();
+    }
+
+    /**
+     * 按旧版本的结构写入, 旧版本的key没有hash tag, 逐个命令写入
+     */
+    void storeLegacyTokens(List<Token> tokens, int maxToken) {
+        for (Token token : tokens) {
+            String userId = token.getUserId();
+            String listKey = KEY_PRE_TOKEN + userId;
+            redisTemplate.opsForList().rightPush(listKey, token.getAccessToken());
+            if (maxToken >= 0) {
+                redisTemplate.opsForList().trim(listKey, -maxToken, -1);
+            }
+            String[][] sets = {token.getPermissions(), token.getRoles(), token.getRoleIds()};
+            String[] prefixes = {KEY_PRE_PERM, KEY_PRE_ROLE, KEY_PRE_ROLE_IDS};
+            for (int i = 0; i < sets.length; i++) {
+                if (!ObjectUtils.isEmpty(sets[i])) {
+                    redisTemplate.delete(prefixes[i] + userId);
+                    redisTemplate.opsForSet().add(prefixes[i] + userId, sets[i]);
+                }
+            }
         }
-        return 1;
+    }
+
+    List<String> storeArgs(Token token, int maxToken) {
+        long now = System.currentTimeMillis();
+        if (token.getCreateTime() == null) {
+            token.setCreateTime(now);
+        }
+        List<String> args = new ArrayList<String>();
+        args.add(token.getAccessToken());
+        args.add(String.valueOf(getScore(token)));
+        args.add(String.valueOf(token.getCreateTime()));
+        args.add(String.valueOf(maxToken));
+        args.add(String.valueOf(now));
+        args.add(expireKeys ? "1" : "0");
+        // 为空的集合不替换
+        String[][] sets = {token.getPermissions(), token.getRoles(), token.getRoleIds()};
+        for (String[] set : sets) {
+            args.add(String.valueOf(ObjectUtils.isEmpty(set) ? 0 : set.length));
+        }
+        for (String[] set : sets) {
+            if (!ObjectUtils.isEmpty(set)) {
+                args.addAll(Arrays.asList(set));
+            }
+        }
+        return args;
     }
 
     @Override
     public Token findToken(String userId, String access_token) {
         if (userId != null && !userId.trim().isEmpty()) {
-            List<String> accessTokens = redisTemplate.opsForList().range(KEY_PRE_TOKEN + userId, 0, -1);
-            for (int i = 0; i < accessTokens.size(); i++) {
-                if (accessTokens.get(i).equals(access_token)) {
-                    Token token = new Token();
-                    token.setUserId(userId);
-                    token.setAccessToken(access_token);
-                    token.setPermissions(setToArray(redisTemplate.opsForSet().members(KEY_PRE_PERM + userId)));
-                    token.setRoles(setToArray(redisTemplate.opsForSet().members(KEY_PRE_ROLE + userId)));
-                    token.setRoleIds(setToArray(redisTemplate.opsForSet().members(KEY_PRE_ROLE_IDS + userId)));
-                    return token;
-                }
+            List<Object> rs = redisTemplate.execute(SCRIPT_FIND_TOKEN, userKeys(userId), access_token, now());
+            Token token = toToken(userId, access_token, rs);
+            if (token == null && legacyLookup) {
+                token = findLegacyToken(userId, access_token);
             }
+            return resolvePermissions(token);
         }
         return null;
     }
@@ -112,15 +499,128 @@ public class RedisTokenStore implements TokenStore {
         if (userId == null || userId.trim().isEmpty()) {
             return null;
         }
+        List<Object> rs = redisTemplate.execute(SCRIPT_FIND_TOKENS, userKeys(userId), now());
+        List<Token> tokens = toTokens(userId, rs);
+        if (legacyLookup) {
+            mergeLegacyTokens(userId, tokens);
+        }
+        return resolvePermissions(tokens);
+    }
+
+    /**
+     * 把旧版本列表中的token加到tokens中, 已存在的不重复添加
+     */
+    List<Token> mergeLegacyTokens(String userId, List<Token> tokens) {
+        Set<String> found = new HashSet<String>();
+        for (Token token : tokens) {
+            found.add(token.getAccessToken());
+        }
+        for (Token token : findLegacyTokens(userId, null)) {
+            if (found.add(token.getAccessToken())) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 查询旧版本oauth_token:userId列表中的token, 没有过期时间, 由jwt的exp校验
+     */
+    Token findLegacyToken(String userId, String access_token) {
+        List<Token> tokens = findLegacyTokens(userId, access_token);
+        return tokens.isEmpty() ? null : tokens.get(0);
+    }
+
+    /**
+     * 旧版本的key没有hash tag, 不在同一个slot, 逐个命令查询
+     *
+     * @param access_token 为null时查询用户所有token
+     */
+    private List<Token> findLegacyTokens(String userId, String access_token) {
         List<Token> tokens = new ArrayList<Token>();
         List<String> accessTokens = redisTemplate.opsForList().range(KEY_PRE_TOKEN + userId, 0, -1);
-        if (accessTokens != null || accessTokens.size() > 0) {
-            String[] perms = setToArray(redisTemplate.opsForSet().members(KEY_PRE_PERM + userId));
-            String[] roles = setToArray(redisTemplate.opsForSet().members(KEY_PRE_ROLE + userId));
-            String[] roleIds = setToArray(redisTemplate.opsForSet().members(KEY_PRE_ROLE_IDS + userId));
-            for (int i = 0; i < accessTokens.size(); i++) {
+        if (accessTokens == null || accessTokens.isEmpty() || (access_token != null && !accessTokens.contains(access_token))) {
+            return tokens;
+        }
+        String[] perms = PermissionDictionary.PERMISSIONS.internAll(setToArray(redisTemplate.opsForSet().members(KEY_PRE_PERM + userId)));
+        String[] roles = PermissionDictionary.ROLES.internAll(setToArray(redisTemplate.opsForSet().members(KEY_PRE_ROLE + userId)));
+        String[] roleIds = setToArray(redisTemplate.opsForSet().members(KEY_PRE_ROLE_IDS + userId));
+        Collection<String> values = access_token != null ? Collections.singletonList(access_token) : new LinkedHashSet<String>(accessTokens);
+        for (String accessToken : values) {
+            Token token = new Token();
+            token.setAccessToken(accessToken);
+            token.setUserId(userId);
+            token.setPermissions(perms);
+            token.setRoles(roles);
+            token.setRoleIds(roleIds);
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * 开启按角色解析权限时, 把角色的权限合并为token的有效权限, permissions仍只有用户单独的权限
+     */
+    Token resolvePermissions(Token token) {
+        if (rolePermissions != null && token != null) {
+            token.setEffectivePermissions(rolePermissions.resolve(token.getRoleIds(), token.getPermissions()));
+        }
+        return token;
+    }
+
+    List<Token> resolvePermissions(List<Token> tokens) {
+        if (rolePermissions != null && !tokens.isEmpty()) {
+            // 同一用户的token共用角色和权限, 只合并一次
+            Token first = tokens.get(0);
+            String[] permissions = rolePermissions.resolve(first.getRoleIds(), first.getPermissions());
+            for (Token token : tokens) {
+                token.setEffectivePermissions(permissions);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 把SCRIPT_FIND_TOKEN的结果转为token, 结果为空返回null
+     */
+    static Token toToken(String userId, String access_token, List<?> rs) {
+        if (rs == null || rs.isEmpty()) {
+            return null;
+        }
+        Token token = new Token();
+        token.setUserId(userId);
+        token.setAccessToken(access_token);
+        token.setExpireTime(parseScore(rs.get(0)));
+        token.setPermissions(PermissionDictionary.PERMISSIONS.internAll(listToArray(rs.get(1))));
+        token.setRoles(PermissionDictionary.ROLES.internAll(listToArray(rs.get(2))));
+        token.setRoleIds(listToArray(rs.get(3)));
+        if (rs.size() > 4) {
+            token.setCreateTime(parseScore(rs.get(4)));
+        }
+        return token;
+    }
+
+    /**
+     * 把SCRIPT_FIND_TOKENS的结果转为token列表
+     */
+    static List<Token> toTokens(String userId, List<?> rs) {
+        List<Token> tokens = new ArrayList<Token>();
+        List<?> accessTokens = rs == null || rs.isEmpty() ? null : (List<?>) rs.get(0);
+        if (accessTokens != null && accessTokens.size() > 0) {
+            String[] perms = PermissionDictionary.PERMISSIONS.internAll(listToArray(rs.get(1)));
+            String[] roles = PermissionDictionary.ROLES.internAll(listToArray(rs.get(2)));
+            String[] roleIds = listToArray(rs.get(3));
+            Map<String, Long> issued = new HashMap<String, Long>();
+            List<?> issuedScores = rs.size() > 4 ? (List<?>) rs.get(4) : null;
+            for (int i = 0; issuedScores != null && i + 1 < issuedScores.size(); i += 2) {
+                issued.put(String.valueOf(issuedScores.get(i)), parseScore(issuedScores.get(i + 1)));
+            }
+            // WITHSCORES返回member和score交替的列表
+            for (int i = 0; i + 1 < accessTokens.size(); i += 2) {
                 Token token = new Token();
-                token.setAccessToken(accessTokens.get(i));
+                token.setAccessToken(String.valueOf(accessTokens.get(i)));
+                token.setExpireTime(parseScore(accessTokens.get(i + 1)));
+                token.setCreateTime(issued.get(token.getAccessToken()));
                 token.setUserId(userId);
                 token.setPermissions(perms);
                 token.setRoles(roles);
@@ -131,42 +631,457 @@ public class RedisTokenStore implements TokenStore {
         return tokens;
     }
 
+    /**
+     * 批量延长token的过期时间, 每个token一次脚本调用, 用pipeline发送, 已过期或已删除的token不会恢复
+     *
+     * @param tokens 包含userId、accessToken和新的expireTime
+     * @return 延长的token数
+     */
+    public int extendTokens(List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        String now = now();
+        List<List<String>> keys = new ArrayList<List<String>>();
+        List<List<String>> args = new ArrayList<List<String>>();
+        for (Token token : tokens) {
+            keys.add(userKeys(token.getUserId()));
+            args.add(Arrays.asList(now, expireKeys ? "1" : "0", token.getAccessToken(), String.valueOf(token.getExpireTime())));
+        }
+        return sum(execute(SCRIPT_EXTEND_TOKENS, keys, args));
+    }
+
     public int removeToken(String userId, String access_token) {
-        redisTemplate.opsForList().remove(KEY_PRE_TOKEN + userId, 0, access_token);
-        return 1;
+        Token token = new Token();
+        token.setUserId(userId);
+        token.setAccessToken(access_token);
+        return removeTokens(Collections.singletonList(token));
     }
 
     public int removeTokensByUserId(String userId) {
-        redisTemplate.delete(KEY_PRE_TOKEN + userId);
-        return 1;
+        return removeTokensByUserIds(Collections.singletonList(userId));
+    }
+
+    public int removeTokens(List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        String now = expireKeys ? now() : "0";
+        List<List<String>> keys = new ArrayList<List<String>>();
+        List<List<String>> args = new ArrayList<List<String>>();
+        for (Token token : tokens) {
+            keys.add(userKeys(token.getUserId()));
+            args.add(Arrays.asList(now, token.getAccessToken()));
+        }
+        List<Object> results = execute(SCRIPT_REMOVE_TOKENS, keys, args);
+        if (isLegacyKeys()) {
+            // 同时在两种结构中的token只计一次
+            List<Object> legacyResults = removeLegacyTokens(tokens);
+            for (int i = 0; i < results.size(); i++) {
+                if (((Number) legacyResults.get(i)).intValue() > 0) {
+                    results.set(i, 1L);
+                }
+            }
+        }
+        int rs = sum(results);
+        for (Token token : tokens) {
+            invalidateToken(token.getAccessToken());
+        }
+        return rs;
+    }
+
+    /**
+     * 从旧版本的列表中删除, 用pipeline发送
+     *
+     * @return 每个token删除的元素数
+     */
+    private List<Object> removeLegacyTokens(List<Token> tokens) {
+        List<Object> results = new ArrayList<Object>(tokens.size());
+        for (int from = 0; from < tokens.size(); from += PIPELINE_SIZE) {
+            List<Token> batch = tokens.subList(from, Math.min(tokens.size(), from + PIPELINE_SIZE));
+            results.addAll(redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Token token : batch) {
+                    connection.lRem(toBytes(KEY_PRE_TOKEN + token.getUserId()), 0, toBytes(token.getAccessToken()));
+                }
+                return null;
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * 每个用户一条DEL, 用pipeline发送
+     */
+    public int removeTokensByUserIds(List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        boolean legacyKeys = isLegacyKeys();
+        List<List<String>> legacyTokens = legacyKeys ? findLegacyTokenLists(userIds) : null;
+        String now = now();
+        List<List<String>> keys = new ArrayList<List<String>>();
+        List<List<String>> args = new ArrayList<List<String>>();
+        for (int i = 0; i < userIds.size(); i++) {
+            keys.add(expireKeys ? userKeys(userIds.get(i)) : tokenKeys(userIds.get(i)));
+            List<String> arg = new ArrayList<String>();
+            arg.add(now);
+            if (legacyKeys) {
+                arg.addAll(legacyTokens.get(i));
+            }
+            args.add(arg);
+        }
+        int rs = sum(execute(SCRIPT_REMOVE_USER, keys, args));
+        if (legacyKeys) {
+            List<String> legacyListKeys = new ArrayList<String>();
+            for (String userId : userIds) {
+                legacyListKeys.add(KEY_PRE_TOKEN + userId);
+            }
+            redisTemplate.delete(legacyListKeys);
+        }
+        for (String userId : userIds) {
+            invalidateCache(userId);
+        }
+        return rs;
+    }
+
+    /**
+     * 读取旧版本列表中的token, 用pipeline发送
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<String>> findLegacyTokenLists(List<String> userIds) {
+        List<List<String>> results = new ArrayList<List<String>>(userIds.size());
+        for (int from = 0; from < userIds.size(); from += PIPELINE_SIZE) {
+            List<String> batch = userIds.subList(from, Math.min(userIds.size(), from + PIPELINE_SIZE));
+            for (Object rs : redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String userId : batch) {
+                    connection.lRange(toBytes(KEY_PRE_TOKEN + userId), 0, -1);
+                }
+                return null;
+            })) {
+                results.add(rs == null ? Collections.<String>emptyList() : (List<String>) rs);
+            }
+        }
+        return results;
     }
 
     public int updateRolesByUserId(String userId, String[] roles) {
-        String roleKey = KEY_PRE_ROLE + userId;
-        redisTemplate.delete(roleKey);
-        redisTemplate.opsForSet().add(roleKey, roles);
+        updateSet(KEY_PRE_ROLE, userId, roles);
         return 1;
     }
 
     @Override
     public int updateRoleIdsByUserId(String userId, String[] roleIds) {
-        String roleKey = KEY_PRE_ROLE_IDS + userId;
-        redisTemplate.delete(roleKey);
-        redisTemplate.opsForSet().add(roleKey, roleIds);
+        updateSet(KEY_PRE_ROLE_IDS, userId, roleIds);
         return 1;
     }
 
     public int updatePermissionsByUserId(String userId, String[] permissions) {
-        String permKey = KEY_PRE_PERM + userId;
-        redisTemplate.delete(permKey);
-        redisTemplate.opsForSet().add(permKey, permissions);
+        updateSet(KEY_PRE_PERM, userId, permissions);
         return 1;
     }
 
-    private String[] setToArray(Set<String> set) {
+    public boolean isExpireKeys() {
+        return expireKeys;
+    }
+
+    /**
+     * 开启后每次写入时清除过期token, 用户的token、权限和角色key随最后一个有效token过期,
+     * 用户没有有效token时更新权限或角色不会保留
+     */
+    public void setExpireKeys(boolean expireKeys) {
+        this.expireKeys = expireKeys;
+    }
+
+    public boolean isLegacyLookup() {
+        return legacyLookup;
+    }
+
+    /**
+     * 查询不到时是否再查旧版本oauth_token:userId列表中的token, 删除token和修改权限时同时修改旧版本的key
+     * 升级后已登录的用户不需要重新登录, migrateLegacyTokens完成后自动关闭
+     */
+    public void setLegacyLookup(boolean legacyLookup) {
+        this.legacyLookup = legacyLookup;
+    }
+
+    public boolean isLegacyWrites() {
+        return legacyWrites;
+    }
+
+    /**
+     * 签发token时同时写入旧版本的key, 滚动升级期间开启, 未升级的节点也能查到升级后的节点签发的token
+     * 所有节点升级后关闭, 再执行migrateLegacyTokens
+     */
+    public void setLegacyWrites(boolean legacyWrites) {
+        this.legacyWrites = legacyWrites;
+    }
+
+    private boolean isLegacyKeys() {
+        return legacyLookup || legacyWrites;
+    }
+
+    private void updateSet(String prefix, String userId, String[] values) {
+        String key = userKey(prefix, userId);
+        if (legacyWrites || (legacyLookup && Boolean.TRUE.equals(redisTemplate.hasKey(KEY_PRE_TOKEN + userId)))) {
+            // 旧版本的token仍使用旧版本的权限和角色
+            redisTemplate.delete(prefix + userId);
+            if (!ObjectUtils.isEmpty(values)) {
+                redisTemplate.opsForSet().add(prefix + userId, values);
+            }
+        }
+        if (expireKeys) {
+            List<String> keys = new ArrayList<String>();
+            keys.add(key);
+            keys.addAll(userKeys(userId));
+            List<String> args = new ArrayList<String>();
+            args.add(now());
+            args.addAll(Arrays.asList(values));
+            redisTemplate.execute(SCRIPT_UPDATE_SET, keys, args.toArray());
+        } else {
+            redisTemplate.delete(key);
+            redisTemplate.opsForSet().add(key, values);
+        }
+        invalidateCache(userId);
+    }
+
+    static String now() {
+        return String.valueOf(System.currentTimeMillis());
+    }
+
+    /**
+     * 执行多次脚本调用, 每次调用只访问一个用户的key, 单个脚本的执行时间不随批量大小增长
+     * 多次调用按PIPELINE_SIZE分批用pipeline发送, 脚本未加载时加载后重试, 连接不支持时逐个执行
+     *
+     * @return 每次调用的结果
+     */
+    private List<Object> execute(RedisScript<?> script, List<List<String>> keys, List<List<String>> args) {
+        List<Object> results = new ArrayList<Object>(keys.size());
+        for (int from = 0; from < keys.size(); from += PIPELINE_SIZE) {
+            int to = Math.min(keys.size(), from + PIPELINE_SIZE);
+            if (to - from > 1 && pipelineScripts) {
+                try {
+                    results.addAll(executePipelined(script, keys.subList(from, to), args.subList(from, to)));
+                    continue;
+                } catch (UnsupportedOperationException e) {
+                    log.debug("连接不支持在pipeline中执行脚本, 改为逐个执行");
+                    pipelineScripts = false;
+                } catch (RuntimeException e) {
+                    if (!isNoScript(e)) {
+                        throw e;
+                    }
+                    // 脚本只修改本用户的key且可重复执行, 整批重试
+                    redisTemplate.execute((RedisCallback<String>) connection ->
+                            connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+                    results.addAll(executePipelined(script, keys.subList(from, to), args.subList(from, to)));
+                    continue;
+                }
+            }
+            for (int i = from; i < to; i++) {
+                results.add(redisTemplate.execute(script, keys.get(i), args.get(i).toArray()));
+            }
+        }
+        return results;
+    }
+
+    private List<Object> executePipelined(RedisScript<?> script, List<List<String>> keys, List<List<String>> args) {
+        ReturnType returnType = ReturnType.fromJavaType(script.getResultType());
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                List<String> keysAndArgs = new ArrayList<String>(keys.get(i));
+                keysAndArgs.addAll(args.get(i));
+                connection.evalSha(script.getSha1(), returnType, keys.get(i).size(), toBytes(keysAndArgs));
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] toBytes(List<String> values) {
+        byte[][] bytes = new byte[values.size()][];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static int sum(List<Object> results) {
+        int sum = 0;
+        for (Object rs : results) {
+            sum += rs == null ? 0 : ((Number) rs).intValue();
+        }
+        return sum;
+    }
+
+    void invalidateCache(String userId) {
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishUser(userId);
+        }
+    }
+
+    void invalidateToken(String accessToken) {
+        if (tokenCache != null) {
+            tokenCache.invalidate(accessToken);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishToken(accessToken);
+        }
+    }
+
+    /**
+     * 把旧版本list结构的token及权限、角色集合迁移到新结构, 所有节点升级并关闭legacyWrites后执行一次, 可重复执行
+     * 已在新结构中的token和集合以新结构为准, 旧token按列表顺序视为最早签发, 完成后关闭本节点的legacyLookup
+     * 过期时间取jwt中的exp, 已过期的token不迁移, 没有exp的按默认过期时长计算
+     *
+     * @return 迁移的用户数
+     */
+    public int migrateLegacyTokens() {
+        List<String> legacyKeys = scan(KEY_PRE_TOKEN + "*");
+        long now = System.currentTimeMillis();
+        for (String legacyKey : legacyKeys) {
+            String userId = legacyKey.substring(KEY_PRE_TOKEN.length());
+            String tokensKey = userKey(KEY_PRE_TOKENS, userId);
+            List<String> accessTokens = redisTemplate.opsForList().range(legacyKey, 0, -1);
+            for (int i = 0; accessTokens != null && i < accessTokens.size(); i++) {
+                String accessToken = accessTokens.get(i);
+                Long expireTime = TokenUtil.parseExpireTime(accessToken);
+                if (expireTime == null) {
+                    expireTime = now + 1000 * TokenUtil.DEFAULT_EXPIRE;
+                } else if (expireTime <= now) {
+                    continue;
+                }
+                if (redisTemplate.opsForZSet().score(tokensKey, accessToken) == null) {
+                    redisTemplate.opsForZSet().add(tokensKey, accessToken, expireTime);
+                    redisTemplate.opsForZSet().add(userKey(KEY_PRE_ISSUED, userId), accessToken, i);
+                }
+            }
+            for (String prefix : new String[]{KEY_PRE_PERM, KEY_PRE_ROLE, KEY_PRE_ROLE_IDS}) {
+                Set<String> members = redisTemplate.opsForSet().members(prefix + userId);
+                if (members != null && !members.isEmpty() && !Boolean.TRUE.equals(redisTemplate.hasKey(userKey(prefix, userId)))) {
+                    redisTemplate.opsForSet().add(userKey(prefix, userId), members.toArray(new String[0]));
+                }
+                redisTemplate.delete(prefix + userId);
+            }
+            if (expireKeys) {
+                redisTemplate.execute(SCRIPT_SYNC_EXPIRE, userKeys(userId), now());
+            }
+            redisTemplate.delete(legacyKey);
+        }
+        legacyLookup = false;
+        return legacyKeys.size();
+    }
+
+    /**
+     * 把未带hash tag的旧版本key迁移为oauth_tokens:{userId}格式, 所有节点升级后执行一次, 可重复执行
+     * token合并到新key, 新key已存在的权限和角色集合以新key为准, 保留原有的过期时间
+     *
+     * @return 迁移的key数
+     */
+    public int migrateHashTags() {
+        int count = 0;
+        for (String prefix : new String[]{KEY_PRE_TOKENS, KEY_PRE_PERM, KEY_PRE_ROLE, KEY_PRE_ROLE_IDS}) {
+            for (String key : scan(prefix + "*")) {
+                String userId = key.substring(prefix.length());
+                if (userId.startsWith("{") && userId.endsWith("}")) {
+                    continue;
+                }
+                String newKey = userKey(prefix, userId);
+                Long ttl = redisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+                if (prefix.equals(KEY_PRE_TOKENS)) {
+                    Set<ZSetOperations.TypedTuple<String>> tokens = redisTemplate.opsForZSet().rangeWithScores(key, 0, -1);
+                    if (tokens != null && !tokens.isEmpty()) {
+                        redisTemplate.opsForZSet().add(newKey, tokens);
+                    }
+                } else if (!Boolean.TRUE.equals(redisTemplate.hasKey(newKey))) {
+                    Set<String> members = redisTemplate.opsForSet().members(key);
+                    if (members != null && !members.isEmpty()) {
+                        redisTemplate.opsForSet().add(newKey, members.toArray(new String[0]));
+                    }
+                }
+                if (ttl != null && ttl > 0) {
+                    redisTemplate.expire(newKey, ttl, TimeUnit.MILLISECONDS);
+                }
+                redisTemplate.delete(key);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<String> scan(String pattern) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        return redisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<String>();
+            // 游标遍历完即结束, 关闭游标会关闭当前连接
+            Cursor<byte[]> cursor = connection.scan(options);
+            while (cursor.hasNext()) {
+                keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * 用户的key, userId作为hash tag, 同一用户的key在redis cluster的同一个slot
+     */
+    static String userKey(String prefix, String userId) {
+        return prefix + "{" + userId + "}";
+    }
+
+    static List<String> userKeys(String userId) {
+        return Arrays.asList(userKey(KEY_PRE_TOKENS, userId), userKey(KEY_PRE_PERM, userId), userKey(KEY_PRE_ROLE, userId),
+                userKey(KEY_PRE_ROLE_IDS, userId), userKey(KEY_PRE_ISSUED, userId));
+    }
+
+    /**
+     * 用户的token集合, 不含权限和角色
+     */
+    static List<String> tokenKeys(String userId) {
+        return Arrays.asList(userKey(KEY_PRE_TOKENS, userId), userKey(KEY_PRE_ISSUED, userId));
+    }
+
+    private static double getScore(Token token) {
+        return token.getExpireTime() == null ? Double.MAX_VALUE : token.getExpireTime();
+    }
+
+    private static Long parseScore(Object score) {
+        if (score == null) {
+            return null;
+        }
+        double value = Double.parseDouble(String.valueOf(score));
+        return value >= Long.MAX_VALUE ? null : (long) value;
+    }
+
+    private static String[] setToArray(Set<String> set) {
         if (set == null) {
             return null;
         }
         return set.toArray(new String[set.size()]);
     }
+
+    private static String[] listToArray(Object list) {
+        if (list == null) {
+            return null;
+        }
+        List<?> values = (List<?>) list;
+        String[] array = new String[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            array[i] = String.valueOf(values.get(i));
+        }
+        return array;
+    }
 }
@@ -0,0 +1,257 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 滑动过期, 有访问的token自动延长store中的过期时间, jwt的exp作为会话的最长时长
+ * 请求线程只把延长记录到内存, 由后台线程合并后批量写入store, 每个token在window内最多延长一次
+ * 进程退出时未写入的延长会丢失, 对应token按上次写入的过期时间失效
+ * 缓存中的token对象不会被修改, 已延长到的过期时间单独记录, 在token空闲过期后清除
+ */
+@Slf4j
+public class SlidingExpiration {
+    public static final long DEFAULT_WINDOW = 60;  // 默认延长间隔,单位秒
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;  // 默认写入间隔,单位毫秒
+    public static final int DEFAULT_BATCH_SIZE = 500;  // 默认每批写入数
+    public static final int DEFAULT_MAX_PENDING = 100000;  // 默认最多缓存的延长数
+
+    private final Writer writer;
+    private final long expire;  // 空闲超时,单位秒
+    private long window = DEFAULT_WINDOW;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxPending = DEFAULT_MAX_PENDING;
+    private final Map<String, Token> pending = new ConcurrentHashMap<>();
+    private final Map<String, Extension> extended = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong extendedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    /**
+     * 已延长到的过期时间, capped表示已达到jwt的exp, 不再延长
+     */
+    private static final class Extension {
+        private final long expireTime;
+        private final boolean capped;
+
+        private Extension(long expireTime, boolean capped) {
+            this.expireTime = expireTime;
+            this.capped = capped;
+        }
+    }
+
+    /**
+     * 批量写入延长后的过期时间, token包含userId、accessToken和新的expireTime
+     */
+    public interface Writer {
+        int extend(List<Token> tokens);
+    }
+
+    /**
+     * @param writer 一般为store的extendTokens方法
+     * @param expire 空闲超时, 单位秒
+     */
+    public SlidingExpiration(Writer writer, long expire) {
+        Assert.notNull(writer, "Writer required");
+        Assert.isTrue(expire > 0, "expire must be positive");
+        this.writer = writer;
+        this.expire = expire;
+    }
+
+    /**
+     * 开始后台写入
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-sliding-expiration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("写入token过期时间失败：" + e.getMessage());
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台写入, 并写入剩余的延长
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            flush();
+        }
+    }
+
+    /**
+     * 新token在store中的过期时间, 不超过jwt的exp
+     *
+     * @param expireTime jwt的exp, 单位毫秒
+     */
+    public long initialExpireTime(long expireTime) {
+        return Math.min(System.currentTimeMillis() + 1000 * expire, expireTime);
+    }
+
+    /**
+     * 记录token的一次访问, 距上次延长超过window时加入待写入队列, 不访问store
+     * 新的过期时间不超过jwt的exp, 并发的访问只有一个加入队列
+     */
+    public void touch(Token token) {
+        Long expireTime = token.getExpireTime();
+        String accessToken = token.getAccessToken();
+        if (expireTime == null || accessToken == null) {
+            return;
+        }
+        Extension last = extended.get(accessToken);
+        if (last != null && last.capped) {
+            return;
+        }
+        long current = last == null ? expireTime : Math.max(expireTime, last.expireTime);
+        long newExpireTime = System.currentTimeMillis() + 1000 * expire;
+        if (newExpireTime - current < 1000 * window) {
+            return;
+        }
+        Long maxExpireTime = TokenUtil.parseExpireTime(accessToken);
+        boolean capped = maxExpireTime != null && newExpireTime >= maxExpireTime;
+        if (capped) {
+            newExpireTime = maxExpireTime;
+        }
+        if (pending.size() >= maxPending) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        Extension next = new Extension(Math.max(newExpireTime, current), capped);
+        boolean updated = last == null ? extended.putIfAbsent(accessToken, next) == null
+                : extended.replace(accessToken, last, next);
+        if (!updated || newExpireTime <= current) {
+            return;
+        }
+        Token extension = new Token();
+        extension.setUserId(token.getUserId());
+        extension.setAccessToken(accessToken);
+        extension.setExpireTime(newExpireTime);
+        pending.put(accessToken, extension);
+    }
+
+    /**
+     * 已加入写入队列的过期时间, 没有延长时为null
+     */
+    public Long getExtendedExpireTime(String accessToken) {
+        Extension extension = extended.get(accessToken);
+        return extension == null ? null : extension.expireTime;
+    }
+
+    /**
+     * 写入一次待延长的token
+     *
+     * @return store实际延长的token数
+     */
+    public int flush() {
+        if (!extended.isEmpty()) {
+            long now = System.currentTimeMillis();
+            extended.values().removeIf(extension -> extension.expireTime <= now);
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int total = 0;
+        List<Token> batch = new ArrayList<Token>();
+        for (Map.Entry<String, Token> entry : pending.entrySet()) {
+            // 写入期间又被延长的token留到下一次
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.add(entry.getValue());
+            }
+            if (batch.size() >= batchSize) {
+                total += write(batch);
+                batch = new ArrayList<Token>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            total += write(batch);
+        }
+        flushCount.incrementAndGet();
+        return total;
+    }
+
+    private int write(List<Token> batch) {
+        try {
+            int rs = writer.extend(batch);
+            extendedCount.addAndGet(rs);
+            return rs;
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            log.warn("写入token过期时间失败：" + e.getMessage());
+            return 0;
+        }
+    }
+
+    public long getExpire() {
+        return expire;
+    }
+
+    /**
+     * @param window 每个token的最小延长间隔, 单位秒
+     */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    /**
+     * @param flushInterval 写入间隔, 单位毫秒, start之前设置
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxPending 最多缓存的延长数, 超出时丢弃新的延长
+     */
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getExtendedCount() {
+        return extendedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+}
@@ -0,0 +1,559 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.event.InvalidationBus;
+import com.github.zkoalas.jwts.role.RolePermissions;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.springframework.util.Assert;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分层组合的store, 如堆内缓存 + RedisTokenStore + JdbcTokenStore
+ * 最后一层为持久存储, 负责签发token和maxToken淘汰, 上层作为它的缓存:
+ * 查询按层依次进行, 在下层命中时回填上层; 新token同步或延迟写入上层;
+ * maxToken淘汰和权限角色更新时清除用户在上层的token, 之后由查询重新回填
+ * 删除和更新期间不回填, 回填后发现期间有删除或更新时撤销回填, 避免已删除的token被写回上层
+ * 以上只对本节点有效, 多个节点共享上层时删除持久层后再删除一次上层;
+ * 其他节点在删除持久层之前读到、在第二次删除之后才回填的token仍会留在上层, 最长保留到本层ttl
+ */
+public class TieredTokenStore implements TokenStore {
+    private static final int STRIPES = 256;  // 按userId分段的删除计数和版本数
+    public static final long DEFAULT_TIER_TTL = 60 * 5;  // 上层默认保留时长,单位秒
+
+    private final List<Tier> tiers;
+    private final Tier record;
+    private TokenCache tokenCache;
+    private InvalidationBus invalidationBus;
+    private RolePermissions rolePermissions;
+    private final AtomicIntegerArray removing = new AtomicIntegerArray(STRIPES);  // 正在删除或更新的用户数
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);  // 删除或更新开始时加1
+
+    /**
+     * @param tiers 由快到慢, 最后一层为持久存储
+     */
+    public TieredTokenStore(Tier... tiers) {
+        this(Arrays.asList(tiers));
+    }
+
+    public TieredTokenStore(List<Tier> tiers) {
+        Assert.notEmpty(tiers, "Tiers required");
+        this.tiers = Collections.unmodifiableList(new ArrayList<Tier>(tiers));
+        this.record = tiers.get(tiers.size() - 1);
+    }
+
+    /**
+     * 每一层的配置和命中统计
+     */
+    public static class Tier {
+        private final String name;
+        private final TokenStore store;
+        private long ttl = DEFAULT_TIER_TTL;
+        private TokenWriteBehind writeBehind;
+
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+        private final AtomicLong populateCount = new AtomicLong();
+
+        public Tier(String name, TokenStore store) {
+            Assert.notNull(store, "TokenStore required");
+            this.name = name;
+            this.store = store;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public TokenStore getStore() {
+            return store;
+        }
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        /**
+         * 也是其他节点删除后仍可能被回填的token的最长保留时长, 见TieredTokenStore的说明
+         *
+         * @param ttl 写入本层的token最长保留时长, 单位秒, 0为token的过期时间, 对最后一层无效
+         */
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public TokenWriteBehind getWriteBehind() {
+            return writeBehind;
+        }
+
+        /**
+         * 延迟写入本层, writeBehind的writer应为本层store的storeTokens, 未设置remover时使用本层store的removeTokens
+         * 缓冲区已满时同步写入本层
+         * 最后一层需要延迟写入时使用JdbcTokenStore.setWriteBehind
+         */
+        public void setWriteBehind(TokenWriteBehind writeBehind) {
+            if (writeBehind != null && writeBehind.getRemover() == null) {
+                writeBehind.setRemover(store::removeTokens);
+            }
+            this.writeBehind = writeBehind;
+        }
+
+        public long getHitCount() {
+            return hitCount.get();
+        }
+
+        public long getMissCount() {
+            return missCount.get();
+        }
+
+        public long getPopulateCount() {
+            return populateCount.get();
+        }
+
+        private void write(Token token) {
+            Token copy = copy(token);
+            if (writeBehind == null || !writeBehind.offer(copy)) {
+                store.storeToken(copy);
+            }
+        }
+
+        private void write(List<Token> tokens) {
+            if (writeBehind == null) {
+                List<Token> copies = new ArrayList<Token>();
+                for (Token token : tokens) {
+                    copies.add(copy(token));
+                }
+                store.storeTokens(copies);
+                return;
+            }
+            for (Token token : tokens) {
+                write(token);
+            }
+        }
+
+        /**
+         * 按本层ttl缩短过期时间, 不修改原token
+         */
+        private Token copy(Token token) {
+            Token copy = new Token();
+            copy.setAccessToken(token.getAccessToken());
+            copy.setTokenKey(token.getTokenKey());
+            copy.setTokenId(token.getTokenId());
+            copy.setUserId(token.getUserId());
+            copy.setPermissions(token.getPermissions());
+            copy.setRoles(token.getRoles());
+            copy.setRoleIds(token.getRoleIds());
+            copy.setRefreshToken(token.getRefreshToken());
+            copy.setCreateTime(token.getCreateTime());
+            copy.setUpdateTime(token.getUpdateTime());
+            Long expireTime = token.getExpireTime();
+            if (ttl > 0) {
+                long maxExpireTime = System.currentTimeMillis() + 1000 * ttl;
+                expireTime = expireTime == null ? maxExpireTime : Math.min(expireTime, maxExpireTime);
+            }
+            copy.setExpireTime(expireTime);
+            return copy;
+        }
+
+        private void removeToken(String userId, String accessToken) {
+            if (writeBehind != null) {
+                writeBehind.remove(accessToken);
+            }
+            store.removeToken(userId, accessToken);
+        }
+
+        private void removeUser(String userId) {
+            if (writeBehind != null) {
+                writeBehind.removeUser(userId);
+            }
+            store.removeTokensByUserId(userId);
+        }
+    }
+
+    public List<Tier> getTiers() {
+        return tiers;
+    }
+
+    @Override
+    public String getTokenKey() {
+        return record.store.getTokenKey();
+    }
+
+    @Override
+    public Key getSigningKey() {
+        return record.store.getSigningKey();
+    }
+
+    @Override
+    public KeyRing getKeyRing() {
+        return record.store.getKeyRing();
+    }
+
+    @Override
+    public SlidingExpiration getSlidingExpiration() {
+        return record.store.getSlidingExpiration();
+    }
+
+    @Override
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * 堆内的第一层缓存, 按maximumSize和ttl淘汰, 命中统计见TokenCache.stats()
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    public RolePermissions getRolePermissions() {
+        return rolePermissions;
+    }
+
+    /**
+     * 按角色解析权限, 任一层命中时合并角色的权限, 各层只保存角色id和用户单独的权限
+     * 角色权限变化不需要清除上层, 只清除堆内缓存
+     */
+    public void setRolePermissions(RolePermissions rolePermissions) {
+        this.rolePermissions = rolePermissions;
+        rolePermissions.addListener(() -> {
+            if (tokenCache != null) {
+                tokenCache.invalidateAll();
+            }
+        });
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * 删除token或更新权限时通知其他节点, 收到其他节点的通知时清除本节点的堆内缓存
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        invalidationBus.addListener((userIds, accessTokens) -> {
+            if (tokenCache != null) {
+                tokenCache.invalidateUsers(userIds);
+                accessTokens.forEach(tokenCache::invalidate);
+            }
+        });
+    }
+
+    @Override
+    public Token findToken(String userId, String access_token) {
+        if (tokenCache != null) {
+            Token token = tokenCache.get(access_token);
+            if (token != null && token.getUserId().equals(userId)) {
+                return token;
+            }
+        }
+        // 先读版本再读删除计数, 与beginRemove的顺序相反
+        int stripe = stripe(userId);
+        long generation = generations.get(stripe);
+        boolean populate = removing.get(stripe) == 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < tiers.size(); i++) {
+            Tier tier = tiers.get(i);
+            Token token = tier.writeBehind == null ? null : tier.writeBehind.get(access_token);
+            if (token == null) {
+                token = tier.store.findToken(userId, access_token);
+            } else if (!token.getUserId().equals(userId)) {
+                token = null;
+            }
+            // 上层按本层ttl过期, 由下层重新回填
+            if (token != null && tier != record && token.getExpireTime() != null && token.getExpireTime() <= now) {
+                token = null;
+            }
+            if (token == null) {
+                tier.missCount.incrementAndGet();
+                continue;
+            }
+            tier.hitCount.incrementAndGet();
+            if (populate && i > 0) {
+                populate(userId, token, i, stripe, generation);
+            }
+            if (rolePermissions != null) {
+                token.setEffectivePermissions(rolePermissions.resolve(token.getRoleIds(), token.getPermissions()));
+            }
+            return token;
+        }
+        return null;
+    }
+
+    /**
+     * 回填上层, 回填期间开始了删除或更新时撤销
+     * 删除方先删除再结束, 版本在删除前已变化, 回填写入在删除之后时一定能发现
+     */
+    private void populate(String userId, Token token, int tier, int stripe, long generation) {
+        for (int j = 0; j < tier; j++) {
+            tiers.get(j).write(token);
+            tiers.get(j).populateCount.incrementAndGet();
+        }
+        if (generations.get(stripe) != generation) {
+            for (int j = 0; j < tier; j++) {
+                tiers.get(j).removeToken(userId, token.getAccessToken());
+            }
+        }
+    }
+
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
+        return createNewToken(userId, permissions, roles, roleIds, TokenUtil.DEFAULT_EXPIRE);
+    }
+
+    public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        boolean maxTokenEnabled = isMaxTokenEnabled();
+        if (maxTokenEnabled) {
+            beginRemove(userId);
+        }
+        try {
+            Token token = record.store.createNewToken(userId, permissions, roles, roleIds, expire);
+            if (token == null) {
+                return null;
+            }
+            if (maxTokenEnabled) {
+                // 持久层可能淘汰了旧token, 清除用户在上层的token
+                removeUserFromUpperTiers(userId);
+            }
+            for (Tier tier : upperTiers()) {
+                tier.write(token);
+            }
+            return token;
+        } finally {
+            if (maxTokenEnabled) {
+                endRemove(userId);
+            }
+        }
+    }
+
+    public List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        List<String> removed = isMaxTokenEnabled() ? new ArrayList<String>(new LinkedHashSet<String>(userIds)) : Collections.<String>emptyList();
+        beginRemove(removed);
+        try {
+            List<Token> tokens = record.store.createNewTokens(userIds, permissions, roles, roleIds, expire);
+            for (String userId : removed) {
+                removeUserFromUpperTiers(userId);
+            }
+            for (Tier tier : upperTiers()) {
+                tier.write(tokens);
+            }
+            return tokens;
+        } finally {
+            endRemove(removed);
+        }
+    }
+
+    public int storeToken(Token token) {
+        int rs = record.store.storeToken(token);
+        for (Tier tier : upperTiers()) {
+            tier.write(token);
+        }
+        return rs;
+    }
+
+    public int storeTokens(List<Token> tokens) {
+        int rs = record.store.storeTokens(tokens);
+        for (Tier tier : upperTiers()) {
+            tier.write(tokens);
+        }
+        return rs;
+    }
+
+    /**
+     * 只查询持久层, 上层可能只有部分token
+     */
+    public List<Token> findTokensByUserId(String userId) {
+        return record.store.findTokensByUserId(userId);
+    }
+
+    public int removeToken(String userId, String access_token) {
+        beginRemove(userId);
+        try {
+            for (Tier tier : upperTiers()) {
+                tier.removeToken(userId, access_token);
+            }
+            invalidateToken(access_token);
+            int rs = record.store.removeToken(userId, access_token);
+            // 其他节点可能在删除持久层之前读到并回填了上层
+            for (Tier tier : upperTiers()) {
+                tier.removeToken(userId, access_token);
+            }
+            return rs;
+        } finally {
+            endRemove(userId);
+        }
+    }
+
+    public int removeTokensByUserId(String userId) {
+        beginRemove(userId);
+        try {
+            removeUserFromUpperTiers(userId);
+            int rs = record.store.removeTokensByUserId(userId);
+            for (Tier tier : upperTiers()) {
+                tier.removeUser(userId);
+            }
+            return rs;
+        } finally {
+            endRemove(userId);
+        }
+    }
+
+    public int removeTokens(List<Token> tokens) {
+        List<String> userIds = new ArrayList<String>();
+        for (Token token : tokens) {
+            userIds.add(token.getUserId());
+        }
+        beginRemove(userIds);
+        try {
+            removeTokensFromUpperTiers(tokens);
+            for (Token token : tokens) {
+                invalidateToken(token.getAccessToken());
+            }
+            int rs = record.store.removeTokens(tokens);
+            removeTokensFromUpperTiers(tokens);
+            return rs;
+        } finally {
+            endRemove(userIds);
+        }
+    }
+
+    public int removeTokensByUserIds(List<String> userIds) {
+        beginRemove(userIds);
+        try {
+            removeUsersFromUpperTiers(userIds);
+            if (tokenCache != null) {
+                tokenCache.invalidateUsers(new LinkedHashSet<String>(userIds));
+            }
+            if (invalidationBus != null) {
+                userIds.forEach(invalidationBus::publishUser);
+            }
+            int rs = record.store.removeTokensByUserIds(userIds);
+            removeUsersFromUpperTiers(userIds);
+            return rs;
+        } finally {
+            endRemove(userIds);
+        }
+    }
+
+    public int updateRolesByUserId(String userId, String[] roles) {
+        beginRemove(userId);
+        try {
+            int rs = record.store.updateRolesByUserId(userId, roles);
+            removeUserFromUpperTiers(userId);
+            return rs;
+        } finally {
+            endRemove(userId);
+        }
+    }
+
+    public int updateRoleIdsByUserId(String userId, String[] roleIds) {
+        beginRemove(userId);
+        try {
+            int rs = record.store.updateRoleIdsByUserId(userId, roleIds);
+            removeUserFromUpperTiers(userId);
+            return rs;
+        } finally {
+            endRemove(userId);
+        }
+    }
+
+    public int updatePermissionsByUserId(String userId, String[] permissions) {
+        beginRemove(userId);
+        try {
+            int rs = record.store.updatePermissionsByUserId(userId, permissions);
+            removeUserFromUpperTiers(userId);
+            return rs;
+        } finally {
+            endRemove(userId);
+        }
+    }
+
+    private boolean isMaxTokenEnabled() {
+        Integer maxToken = Config.getInstance().getMaxToken();
+        return maxToken != null && maxToken != -1;
+    }
+
+    private List<Tier> upperTiers() {
+        return tiers.subList(0, tiers.size() - 1);
+    }
+
+    private void removeUserFromUpperTiers(String userId) {
+        for (Tier tier : upperTiers()) {
+            tier.removeUser(userId);
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidateUser(userId);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishUser(userId);
+        }
+    }
+
+    private void removeTokensFromUpperTiers(List<Token> tokens) {
+        for (Tier tier : upperTiers()) {
+            for (Token token : tokens) {
+                if (tier.writeBehind != null) {
+                    tier.writeBehind.remove(token.getAccessToken());
+                }
+            }
+            tier.store.removeTokens(tokens);
+        }
+    }
+
+    private void removeUsersFromUpperTiers(List<String> userIds) {
+        for (Tier tier : upperTiers()) {
+            if (tier.writeBehind != null) {
+                for (String userId : userIds) {
+                    tier.writeBehind.removeUser(userId);
+                }
+            }
+            tier.store.removeTokensByUserIds(userIds);
+        }
+    }
+
+    private void invalidateToken(String accessToken) {
+        if (tokenCache != null) {
+            tokenCache.invalidate(accessToken);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publishToken(accessToken);
+        }
+    }
+
+    private static int stripe(String userId) {
+        int h = userId == null ? 0 : userId.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * 删除或更新开始, 先加删除计数再加版本, 之后开始的查询不回填, 之前开始的查询在回填后发现版本变化
+     */
+    private void beginRemove(String userId) {
+        int stripe = stripe(userId);
+        removing.incrementAndGet(stripe);
+        generations.incrementAndGet(stripe);
+    }
+
+    private void endRemove(String userId) {
+        removing.decrementAndGet(stripe(userId));
+    }
+
+    private void beginRemove(List<String> userIds) {
+        for (String userId : userIds) {
+            beginRemove(userId);
+        }
+    }
+
+    private void endRemove(List<String> userIds) {
+        for (String userId : userIds) {
+            endRemove(userId);
+        }
+    }
+}
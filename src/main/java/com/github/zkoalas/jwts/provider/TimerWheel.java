@@ -0,0 +1,134 @@
+package com.github.zkoalas.jwts.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮, 添加、取消和每个tick的推进都是O(1), 不扫描未到期的节点
+ * 4层各64个槽, 每层的槽覆盖下一层的一整圈, tick为1秒时可覆盖约194天, 更远的节点在最高层轮转
+ * 非线程安全, 由调用方加锁
+ */
+class TimerWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Node[][] slots = new Node[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * 时间轮中的节点, 通过继承携带数据
+     */
+    static class Node {
+        private long deadline;  // 到期tick
+        private Node prev;
+        private Node next;
+    }
+
+    TimerWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Node head = new Node();
+                head.prev = head;
+                head.next = head;
+                slots[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * 添加节点, 已在时间轮中时先取消
+     *
+     * @param expireTime 到期时间, 单位毫秒
+     */
+    void schedule(Node node, long expireTime) {
+        cancel(node);
+        // 当前槽已处理过, 已到期的节点放到下一个tick
+        node.deadline = Math.max((expireTime + tickMillis - 1) / tickMillis, currentTick + 1);
+        insert(node);
+        size++;
+    }
+
+    void cancel(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+    }
+
+    /**
+     * 推进到当前时间
+     *
+     * @return 到期的节点, 已从时间轮中移除
+     */
+    List<Node> advance(long nowMillis) {
+        List<Node> expired = new ArrayList<Node>();
+        long nowTick = nowMillis / tickMillis;
+        while (currentTick < nowTick) {
+            currentTick++;
+            // 下层转完一圈时把上层对应槽的节点重新分配到下层
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(slots[level][(int) (currentTick >>> (SLOT_BITS * level)) & MASK]);
+            }
+            Node head = slots[0][(int) currentTick & MASK];
+            for (Node node = head.next; node != head; ) {
+                Node next = node.next;
+                node.prev = null;
+                node.next = null;
+                expired.add(node);
+                node = next;
+            }
+            head.prev = head;
+            head.next = head;
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void cascade(Node head) {
+        Node node = head.next;
+        head.prev = head;
+        head.next = head;
+        while (node != head) {
+            Node next = node.next;
+            insert(node);
+            node = next;
+        }
+    }
+
+    private void insert(Node node) {
+        long deadline = node.deadline;
+        Node head = null;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            if ((deadline >>> shift) - (currentTick >>> shift) < SLOTS) {
+                head = slots[level][(int) (deadline >>> shift) & MASK];
+                break;
+            }
+        }
+        if (head == null) {
+            // 超出最高层范围, 放在最高层最远的槽, 轮转到时重新分配
+            int shift = SLOT_BITS * (LEVELS - 1);
+            head = slots[LEVELS - 1][(int) ((currentTick >>> shift) + SLOTS - 1) & MASK];
+        }
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+}
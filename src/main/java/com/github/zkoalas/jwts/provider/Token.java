@@ -1,6 +1,13 @@
 package com.github.zkoalas.jwts.provider;
 
+import com.github.zkoalas.jwts.util.PermissionDictionary;
+import com.github.zkoalas.jwts.util.PermissionSet;
+import com.github.zkoalas.jwts.util.PermissionTrie;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.io.Serializable;
 import java.util.Date;
@@ -29,4 +36,93 @@ public class Token implements Serializable {
     private Long createTime;
 
     private Long updateTime;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile PermissionSet permissionSet;  // 权限位图, 首次检查时生成
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile PermissionTrie permissionTrie;  // 通配符权限树, 没有通配符时为null
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile boolean permissionTrieResolved;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile PermissionSet roleSet;  // 角色位图, 首次检查时生成
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile String[] effectivePermissions;  // 合并了角色权限的有效权限, 只用于检查, 不保存
+
+    public void setPermissions(String[] permissions) {
+        this.permissions = permissions;
+        this.effectivePermissions = null;
+        this.permissionSet = null;
+        this.permissionTrieResolved = false;
+    }
+
+    /**
+     * 设置按角色合并后的有效权限, 权限检查使用它, getPermissions()仍只返回用户单独的权限, store不会保存
+     */
+    public void setEffectivePermissions(String[] effectivePermissions) {
+        this.effectivePermissions = effectivePermissions;
+        this.permissionSet = null;
+        this.permissionTrieResolved = false;
+    }
+
+    /**
+     * 有效权限, 没有按角色合并时与getPermissions()相同
+     */
+    public String[] effectivePermissions() {
+        String[] effective = effectivePermissions;
+        return effective != null ? effective : getPermissions();
+    }
+
+    public void setRoles(String[] roles) {
+        this.roles = roles;
+        this.roleSet = null;
+    }
+
+    /**
+     * 有效权限的位图, 直接修改getPermissions()返回的数组不会更新位图
+     */
+    public PermissionSet permissionSet() {
+        PermissionSet set = permissionSet;
+        if (set == null) {
+            set = PermissionDictionary.PERMISSIONS.toSet(effectivePermissions());
+            permissionSet = set;
+        }
+        return set;
+    }
+
+    /**
+     * 通配符权限树, 没有通配符权限时返回null, 相同权限的用户共享同一棵树
+     */
+    public PermissionTrie permissionTrie() {
+        if (!permissionTrieResolved) {
+            permissionTrie = PermissionTrie.of(permissionSet(), effectivePermissions());
+            permissionTrieResolved = true;
+        }
+        return permissionTrie;
+    }
+
+    /**
+     * 角色位图, 直接修改getRoles()返回的数组不会更新位图
+     */
+    public PermissionSet roleSet() {
+        PermissionSet set = roleSet;
+        if (set == null) {
+            set = PermissionDictionary.ROLES.toSet(getRoles());
+            roleSet = set;
+        }
+        return set;
+    }
 }
@@ -0,0 +1,183 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 已校验token的本地缓存, 命中时跳过签名校验和store查询
+ * 按用户索引缓存的token, 清除一个用户只访问该用户的token
+ * 每次清除增加对应用户和token的版本, 查询store前取得的版本已变化时不再缓存, 避免放回已删除的token
+ */
+public class TokenCache {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;  // 默认最大缓存数
+    public static final long DEFAULT_TTL = 60 * 5;  // 默认缓存时长,单位秒
+
+    private static final int STRIPES = 1024;
+
+    private final Cache<String, Entry> cache;
+    private final ConcurrentHashMap<String, Map<String, Entry>> userTokens = new ConcurrentHashMap<>();  // 只在compute中修改
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES + 1);  // 最后一个用于invalidateAll
+
+    public TokenCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maximumSize 最大缓存数
+     * @param ttl         缓存时长, 单位秒
+     */
+    public TokenCache(long maximumSize, long ttl) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .recordStats()
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    /**
+     * 获取缓存的token, 已过期返回null
+     */
+    public Token get(String accessToken) {
+        Entry entry = cache.getIfPresent(accessToken);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireTime <= System.currentTimeMillis()) {
+            cache.invalidate(accessToken);
+            return null;
+        }
+        return entry.token;
+    }
+
+    /**
+     * 缓存token, 缓存不会超过token的过期时间
+     *
+     * @param expireTime jwt的exp, 单位毫秒
+     */
+    public void put(Token token, long expireTime) {
+        put(token, expireTime, generation(token.getUserId(), token.getAccessToken()));
+    }
+
+    /**
+     * 查询store之前调用, 查询到的token用put(token, expireTime, generation)缓存
+     */
+    public long generation(String userId, String accessToken) {
+        // 各部分只增不减, 和不变说明期间没有清除
+        return generations.get(stripe(userId)) + generations.get(stripe(accessToken)) + generations.get(STRIPES);
+    }
+
+    /**
+     * 缓存token, 取得generation之后该用户或token被清除过时不缓存
+     *
+     * @param expireTime jwt的exp, 单位毫秒
+     * @param generation 查询store之前generation(userId, accessToken)的返回值
+     */
+    public void put(Token token, long expireTime, long generation) {
+        if (token.getExpireTime() != null) {
+            expireTime = Math.min(expireTime, token.getExpireTime());
+        }
+        if (expireTime <= System.currentTimeMillis()) {
+            return;
+        }
+        String userId = token.getUserId();
+        String accessToken = token.getAccessToken();
+        if (generation != generation(userId, accessToken)) {
+            return;
+        }
+        Entry entry = new Entry(token, expireTime);
+        cache.put(accessToken, entry);
+        if (userId != null) {
+            userTokens.compute(userId, (k, entries) -> {
+                if (entries == null) {
+                    entries = new HashMap<>();
+                }
+                entries.put(accessToken, entry);
+                return entries;
+            });
+        }
+        // 先写入再检查, 与清除时先增加版本的顺序相反, 期间的清除或者看到这次写入, 或者在这里撤销
+        if (generation != generation(userId, accessToken)) {
+            cache.invalidate(accessToken);
+        }
+    }
+
+    public void invalidate(String accessToken) {
+        if (accessToken != null) {
+            generations.incrementAndGet(stripe(accessToken));
+            cache.invalidate(accessToken);
+        }
+    }
+
+    /**
+     * 移除用户的所有缓存token
+     */
+    public void invalidateUser(String userId) {
+        if (userId != null) {
+            generations.incrementAndGet(stripe(userId));
+            Map<String, Entry> entries = userTokens.remove(userId);
+            if (entries != null) {
+                cache.invalidateAll(entries.keySet());
+            }
+        }
+    }
+
+    /**
+     * 移除多个用户的缓存token
+     */
+    public void invalidateUsers(Set<String> userIds) {
+        if (userIds != null) {
+            for (String userId : userIds) {
+                invalidateUser(userId);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        generations.incrementAndGet(STRIPES);
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private void onRemoval(RemovalNotification<String, Entry> notification) {
+        Entry entry = notification.getValue();
+        if (entry == null || entry.token.getUserId() == null) {
+            return;
+        }
+        // 只删除这一次放入的索引, 同一token重新放入的不受影响
+        userTokens.computeIfPresent(entry.token.getUserId(), (userId, entries) -> {
+            entries.remove(notification.getKey(), entry);
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    private static int stripe(String key) {
+        return key == null ? 0 : (key.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private static class Entry {
+        private final Token token;
+        private final long expireTime;
+
+        private Entry(Token token, long expireTime) {
+            this.token = token;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.Key;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 签名key提供者, 缓存解码后的Key, 校验token时不再访问store
+ */
+@Slf4j
+public class TokenKeyProvider {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jwt-soul-key-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Supplier<String> loader;  // 从store读取16进制key
+    private volatile KeyHolder holder;
+    private volatile ScheduledFuture<?> refreshTask;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong versionChangeCount = new AtomicLong();
+
+    public TokenKeyProvider(Supplier<String> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * 获取解码后的Key
+     */
+    public Key getKey() {
+        return getHolder().key;
+    }
+
+    /**
+     * 获取16进制的key
+     */
+    public String getHexKey() {
+        return getHolder().hexKey;
+    }
+
+    /**
+     * 当前key版本, key变化时递增
+     */
+    public long getVersion() {
+        return getHolder().version;
+    }
+
+    /**
+     * 是否已加载过key, 已加载时获取key不会访问store
+     */
+    public boolean isLoaded() {
+        return holder != null;
+    }
+
+    /**
+     * 重新从store加载key, key变化时版本号加一
+     */
+    public synchronized void refresh() {
+        refreshCount.incrementAndGet();
+        load();
+    }
+
+    /**
+     * 开启后台定时刷新
+     *
+     * @param interval 刷新间隔, 单位秒
+     */
+    public synchronized void startRefresh(long interval) {
+        stopRefresh();
+        if (interval > 0) {
+            refreshTask = SCHEDULER.scheduleWithFixedDelay(() -> {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    log.warn("刷新tokenKey失败：" + e.getMessage());
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 停止后台刷新
+     */
+    public synchronized void stopRefresh() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getVersionChangeCount() {
+        return versionChangeCount.get();
+    }
+
+    private KeyHolder getHolder() {
+        KeyHolder current = holder;
+        if (current != null) {
+            hitCount.incrementAndGet();
+            return current;
+        }
+        synchronized (this) {
+            if (holder == null) {
+                load();
+            }
+            return holder;
+        }
+    }
+
+    private void load() {
+        String hexKey = loader.get();
+        loadCount.incrementAndGet();
+        KeyHolder old = holder;
+        if (old != null && old.hexKey.equals(hexKey)) {
+            return;
+        }
+        long version = old == null ? 1 : old.version + 1;
+        if (old != null) {
+            versionChangeCount.incrementAndGet();
+            log.debug("tokenKey已变更, 版本：" + version);
+        }
+        holder = new KeyHolder(hexKey, TokenUtil.parseHexKey(hexKey), version);
+    }
+
+    private static class KeyHolder {
+        private final String hexKey;
+        private final Key key;
+        private final long version;
+
+        private KeyHolder(String hexKey, Key key, long version) {
+            this.hexKey = hexKey;
+            this.key = key;
+            this.version = version;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.github.zkoalas.jwts.provider;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 操作token的接口
+ * 批量方法默认逐个调用单个token的方法, 自带的store都有批量实现
  */
 public interface TokenStore extends BaseTokenStore{
 
@@ -13,12 +15,59 @@ public interface TokenStore extends BaseTokenStore{
 
     int storeToken(Token token);
 
+    /**
+     * 批量为多个用户签发相同权限的token, 用于服务账号、批量开通等场景
+     */
+    default List<Token> createNewTokens(List<String> userIds, String[] permissions, String[] roles, String[] roleIds, long expire) {
+        List<Token> tokens = new ArrayList<Token>();
+        for (String userId : userIds) {
+            Token token = createNewToken(userId, permissions, roles, roleIds, expire);
+            if (token != null) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 批量存储token, 不做maxToken淘汰
+     */
+    default int storeTokens(List<Token> tokens) {
+        int rs = 0;
+        for (Token token : tokens) {
+            rs += storeToken(token);
+        }
+        return rs;
+    }
+
     List<Token> findTokensByUserId(String userId);
 
     int removeToken(String userId, String access_token);
 
     int removeTokensByUserId(String userId);
 
+    /**
+     * 批量移除token, token需包含userId和accessToken
+     */
+    default int removeTokens(List<Token> tokens) {
+        int rs = 0;
+        for (Token token : tokens) {
+            rs += removeToken(token.getUserId(), token.getAccessToken());
+        }
+        return rs;
+    }
+
+    /**
+     * 批量移除多个用户的所有token
+     */
+    default int removeTokensByUserIds(List<String> userIds) {
+        int rs = 0;
+        for (String userId : userIds) {
+            rs += removeTokensByUserId(userId);
+        }
+        return rs;
+    }
+
     int updateRolesByUserId(String userId, String[] roles);
 
     int updateRoleIdsByUserId(String userId, String[] roleIds);
@@ -0,0 +1,390 @@
+package com.github.zkoalas.jwts.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 新token的延迟写入, 签发时只放入有界的内存缓冲区, 由后台线程批量写入store
+ * 缓冲区中的token对本节点的findToken可见, 其他节点在写入后才能查询到
+ * 进程崩溃时未写入的token会丢失, 对应用户需重新登录, 丢失范围不超过maxLatency内签发的token
+ * 删除不等待正在进行的写入: 正在写入的token被删除时, 写入完成后由remover从store删除
+ */
+@Slf4j
+public class TokenWriteBehind {
+    public static final int DEFAULT_FLUSH_SIZE = 200;  // 默认每批写入数, 缓冲达到该数量时立即写入
+    public static final long DEFAULT_MAX_LATENCY = 100;  // 默认最长写入延迟,单位毫秒
+    public static final int DEFAULT_MAX_PENDING = 10000;  // 默认缓冲区大小
+    public static final long DEFAULT_BLOCK_TIMEOUT = 1000;  // 默认BLOCK时的最长等待,单位毫秒
+    public static final int DEFAULT_MAX_RETRIES = 3;  // 默认一批token连续写入失败后的最多重试次数
+
+    /**
+     * 缓冲区已满时的处理方式
+     */
+    public enum Overflow {
+        BLOCK,  // 等待缓冲区有空位, 超过blockTimeout时拒绝
+        WRITE_THROUGH,  // 直接同步写入store
+        REJECT  // 立即拒绝, createNewToken返回null
+    }
+
+    private final Writer writer;
+    private Remover remover;
+    private int flushSize = DEFAULT_FLUSH_SIZE;
+    private long maxLatency = DEFAULT_MAX_LATENCY;
+    private int maxPending = DEFAULT_MAX_PENDING;
+    private long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private Overflow overflow = Overflow.BLOCK;
+    private Semaphore permits = new Semaphore(DEFAULT_MAX_PENDING);
+    private final Map<String, Token> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<Token> queue = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private int retries;  // 队首这一批连续失败的次数, 只在flushLock内访问
+
+    private final AtomicLong bufferedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong removedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    /**
+     * 批量写入新token, 失败时抛出异常, 整批留在缓冲区等待下次写入
+     * 抛出异常时整批都不能已写入, 否则重新写入会重复
+     */
+    public interface Writer {
+        int insert(List<Token> tokens);
+    }
+
+    /**
+     * 删除写入期间已被删除的token, 一般为store的removeTokens方法
+     */
+    public interface Remover {
+        int remove(List<Token> tokens);
+    }
+
+    /**
+     * @param writer 一般为store的insertTokens方法
+     */
+    public TokenWriteBehind(Writer writer) {
+        Assert.notNull(writer, "Writer required");
+        this.writer = writer;
+    }
+
+    /**
+     * 开始后台写入, 未start时缓冲区中的token不会写入store
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, maxLatency, maxLatency, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台写入, 并写入缓冲区中剩余的token
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            flush();
+        }
+    }
+
+    /**
+     * 放入缓冲区
+     *
+     * @return false表示缓冲区已满, 由调用方按overflow处理
+     */
+    public boolean offer(Token token) {
+        if (!acquire()) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        pending.put(token.getAccessToken(), token);
+        queue.add(token);
+        bufferedCount.incrementAndGet();
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null && pending.size() >= flushSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (Exception e) {
+                flushRequested.set(false);
+            }
+        }
+        return true;
+    }
+
+    private boolean acquire() {
+        if (overflow != Overflow.BLOCK) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(blockTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 查询缓冲区中未写入的token, 不访问store
+     */
+    public Token get(String accessToken) {
+        return pending.get(accessToken);
+    }
+
+    /**
+     * 从缓冲区删除token, 不等待正在进行的写入
+     * 不在缓冲区中的token即为已删除, 写入完成后flush把其中已写入的token交给remover删除
+     *
+     * @return true表示已从缓冲区删除, store中不会留下该token
+     */
+    public boolean remove(String accessToken) {
+        Token token = pending.remove(accessToken);
+        if (token != null) {
+            permits.release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 从缓冲区删除用户的所有token, 不等待正在进行的写入
+     *
+     * @return 删除的token数
+     */
+    public int removeUser(String userId) {
+        int count = 0;
+        for (Map.Entry<String, Token> entry : pending.entrySet()) {
+            if (userId.equals(entry.getValue().getUserId()) && pending.remove(entry.getKey(), entry.getValue())) {
+                permits.release();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 写入缓冲区中的全部token, 写入失败时剩余的token留到下一次
+     * 同一批连续失败超过maxRetries次时丢弃该批, 避免一直阻塞后面的token
+     *
+     * @return 写入的token数
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            int total = 0;
+            while (true) {
+                List<Token> batch = new ArrayList<Token>();
+                Token token;
+                while (batch.size() < flushSize && (token = queue.poll()) != null) {
+                    // 已删除的token不再写入
+                    if (pending.get(token.getAccessToken()) == token) {
+                        batch.add(token);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                try {
+                    writer.insert(batch);
+                } catch (Exception e) {
+                    failedCount.addAndGet(batch.size());
+                    if (maxRetries != -1 && ++retries > maxRetries) {
+                        retries = 0;
+                        drop(batch);
+                        log.error("写入token连续失败" + (maxRetries + 1) + "次, 丢弃" + batch.size() + "个token：" + e.getMessage());
+                        continue;
+                    }
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        queue.addFirst(batch.get(i));
+                    }
+                    log.warn("写入token失败：" + e.getMessage());
+                    break;
+                }
+                retries = 0;
+                List<Token> removed = new ArrayList<Token>();
+                for (Token written : batch) {
+                    if (pending.remove(written.getAccessToken(), written)) {
+                        permits.release();
+                    } else {
+                        // 写入期间被删除
+                        removed.add(written);
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    removeWritten(removed);
+                }
+                total += batch.size();
+                writtenCount.addAndGet(batch.size());
+            }
+            flushCount.incrementAndGet();
+            return total;
+        }
+    }
+
+    private void removeWritten(List<Token> removed) {
+        if (remover == null) {
+            log.warn("没有设置remover, 写入期间被删除的" + removed.size() + "个token仍留在store中");
+            return;
+        }
+        try {
+            removedCount.addAndGet(remover.remove(removed));
+        } catch (Exception e) {
+            log.warn("删除写入期间被删除的token失败：" + e.getMessage());
+        }
+    }
+
+    private void drop(List<Token> batch) {
+        for (Token token : batch) {
+            if (pending.remove(token.getAccessToken(), token)) {
+                permits.release();
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("写入token失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 缓冲区中是否有该用户的token, 按用户操作的方法据此决定是否先flush
+     */
+    public boolean hasPending(String userId) {
+        for (Iterator<Token> it = pending.values().iterator(); it.hasNext(); ) {
+            if (userId.equals(it.next().getUserId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Remover getRemover() {
+        return remover;
+    }
+
+    /**
+     * @param remover 删除写入期间已被删除的token, 一般为store的removeTokens方法
+     */
+    public void setRemover(Remover remover) {
+        this.remover = remover;
+    }
+
+    /**
+     * @param flushSize 每批写入数, 即多行insert的行数
+     */
+    public void setFlushSize(int flushSize) {
+        this.flushSize = flushSize;
+    }
+
+    /**
+     * @param maxLatency 最长写入延迟, 单位毫秒, start之前设置
+     */
+    public void setMaxLatency(long maxLatency) {
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * @param maxPending 缓冲区大小, 放入token之前设置
+     */
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    /**
+     * @param blockTimeout BLOCK时的最长等待, 单位毫秒
+     */
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param maxRetries 一批token连续写入失败后的最多重试次数, 超过后丢弃, -1不限制
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(Overflow overflow) {
+        Assert.notNull(overflow, "Overflow required");
+        this.overflow = overflow;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getBufferedCount() {
+        return bufferedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 重试后仍写入失败而丢弃的token数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 写入期间被删除, 写入后又从store删除的token数
+     */
+    public long getRemovedCount() {
+        return removedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+}
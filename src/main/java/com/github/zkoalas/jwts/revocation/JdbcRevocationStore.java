@@ -0,0 +1,51 @@
+package com.github.zkoalas.jwts.revocation;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于oauth_token_revoked表的吊销存储
+ */
+public class JdbcRevocationStore implements RevocationStore {
+    private static final String SQL_INSERT = "insert into oauth_token_revoked (token_id, expire_time) values (?,?)";
+
+    private static final String SQL_SELECT = "select token_id, expire_time from oauth_token_revoked where expire_time > ?";
+
+    private static final String SQL_DELETE_EXPIRED = "delete from oauth_token_revoked where expire_time <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcRevocationStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void revoke(String tokenId, long expireTime) {
+        try {
+            jdbcTemplate.update(SQL_INSERT, tokenId, new Date(expireTime));
+        } catch (DuplicateKeyException e) {
+            // 已吊销
+        }
+    }
+
+    @Override
+    public Map<String, Long> loadRevoked(long now) {
+        Map<String, Long> rs = new HashMap<>();
+        jdbcTemplate.query(SQL_SELECT, resultSet -> {
+            rs.put(resultSet.getString("token_id"), resultSet.getTimestamp("expire_time").getTime());
+        }, new Date(now));
+        return rs;
+    }
+
+    @Override
+    public int purgeExpired(long now) {
+        return jdbcTemplate.update(SQL_DELETE_EXPIRED, new Date(now));
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.zkoalas.jwts.revocation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的吊销存储, 用于单节点或测试
+ */
+public class LocalRevocationStore implements RevocationStore {
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    @Override
+    public void revoke(String tokenId, long expireTime) {
+        revoked.put(tokenId, expireTime);
+    }
+
+    @Override
+    public Map<String, Long> loadRevoked(long now) {
+        Map<String, Long> rs = new HashMap<>();
+        revoked.forEach((tokenId, expireTime) -> {
+            if (expireTime > now) {
+                rs.put(tokenId, expireTime);
+            }
+        });
+        return rs;
+    }
+
+    @Override
+    public int purgeExpired(long now) {
+        int before = revoked.size();
+        revoked.values().removeIf(expireTime -> expireTime <= now);
+        return before - revoked.size();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.zkoalas.jwts.revocation;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于redis有序集合的吊销存储, score为token的过期时间
+ */
+public class RedisRevocationStore implements RevocationStore {
+    public static final String DEFAULT_KEY = "oauth_token_revoked";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String key;
+
+    public RedisRevocationStore(StringRedisTemplate redisTemplate) {
+        this(redisTemplate, DEFAULT_KEY);
+    }
+
+    public RedisRevocationStore(StringRedisTemplate redisTemplate, String key) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+
+    @Override
+    public void revoke(String tokenId, long expireTime) {
+        redisTemplate.opsForZSet().add(key, tokenId, expireTime);
+    }
+
+    @Override
+    public Map<String, Long> loadRevoked(long now) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .rangeByScoreWithScores(key, now + 1, Double.MAX_VALUE);
+        Map<String, Long> rs = new HashMap<>();
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                rs.put(tuple.getValue(), tuple.getScore() == null ? Long.MAX_VALUE : tuple.getScore().longValue());
+            }
+        }
+        return rs;
+    }
+
+    @Override
+    public int purgeExpired(long now) {
+        Long rs = redisTemplate.opsForZSet().removeRangeByScore(key, 0, now);
+        return rs == null ? 0 : rs.intValue();
+    }
+}
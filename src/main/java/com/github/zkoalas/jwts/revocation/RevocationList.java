@@ -0,0 +1,238 @@
+package com.github.zkoalas.jwts.revocation;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点本地的吊销列表, 布隆过滤器在前, 精确集合在后
+ * 绝大多数未吊销的token只需查询布隆过滤器, 不访问存储
+ * 本节点吊销立即生效, 其他节点吊销在下一次同步后生效
+ * startSync时在调用线程上完成第一次同步, 第一次同步成功前只包含本节点的吊销, 查询不访问存储
+ */
+@Slf4j
+public class RevocationList {
+    public static final double DEFAULT_FPP = 0.01;  // 默认误判率
+    public static final int DEFAULT_MIN_CAPACITY = 1024;  // 布隆过滤器最小容量
+    public static final long DEFAULT_SYNC_INTERVAL = 30;  // 默认同步间隔,单位秒
+
+    private final RevocationStore store;
+    private double fpp = DEFAULT_FPP;
+    private int minCapacity = DEFAULT_MIN_CAPACITY;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), DEFAULT_MIN_CAPACITY, DEFAULT_FPP);
+    private volatile boolean unsyncedWarned;
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder checkCount = new LongAdder();
+    private final LongAdder filterHitCount = new LongAdder();
+    private final LongAdder falsePositiveCount = new LongAdder();
+    private final LongAdder revokedHitCount = new LongAdder();
+    private final AtomicLong syncCount = new AtomicLong();
+    private volatile long lastSyncTime;
+
+    public RevocationList(RevocationStore store) {
+        this.store = store;
+    }
+
+    /**
+     * token是否已吊销
+     *
+     * @param tokenId token的jti, 为null时返回false
+     */
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        Snapshot current = snapshot;
+        if (lastSyncTime == 0 && !unsyncedWarned) {
+            unsyncedWarned = true;
+            log.warn("吊销列表尚未同步, 其他节点的吊销暂不生效");
+        }
+        checkCount.increment();
+        if (!current.filter.mightContain(tokenId)) {
+            return false;
+        }
+        filterHitCount.increment();
+        if (!current.revoked.containsKey(tokenId)) {
+            falsePositiveCount.increment();
+            return false;
+        }
+        revokedHitCount.increment();
+        return true;
+    }
+
+    /**
+     * 吊销token, 写入共享存储并立即在本节点生效
+     *
+     * @param expireTime token的过期时间, 单位毫秒
+     */
+    public synchronized void revoke(String tokenId, long expireTime) {
+        store.revoke(tokenId, expireTime);
+        snapshot.add(tokenId, expireTime);
+    }
+
+    /**
+     * 从共享存储重新加载, 按当前数量重新确定布隆过滤器容量
+     */
+    public synchronized void sync() {
+        long now = System.currentTimeMillis();
+        try {
+            store.purgeExpired(now);
+        } catch (Exception e) {
+            log.warn("清理过期吊销记录失败：" + e.getMessage());
+        }
+        Map<String, Long> revoked = store.loadRevoked(now);
+        snapshot = new Snapshot(revoked, Math.max(minCapacity, revoked.size() * 2), fpp);
+        syncCount.incrementAndGet();
+        lastSyncTime = now;
+    }
+
+    /**
+     * 先同步一次, 再开始定时同步, 第一次同步失败时由定时任务重试
+     *
+     * @param interval 同步间隔, 单位秒
+     */
+    public synchronized void startSync(long interval) {
+        stopSync();
+        try {
+            sync();
+        } catch (Exception e) {
+            log.warn("同步吊销列表失败：" + e.getMessage());
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-revocation-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Exception e) {
+                log.warn("同步吊销列表失败：" + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopSync() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @param fpp 期望误判率, 下次同步时生效
+     */
+    public void setFpp(double fpp) {
+        this.fpp = fpp;
+    }
+
+    public double getFpp() {
+        return fpp;
+    }
+
+    /**
+     * @param minCapacity 布隆过滤器最小容量, 下次同步时生效
+     */
+    public void setMinCapacity(int minCapacity) {
+        this.minCapacity = minCapacity;
+    }
+
+    /**
+     * 当前布隆过滤器的容量
+     */
+    public int getCapacity() {
+        return snapshot.capacity;
+    }
+
+    /**
+     * 当前布隆过滤器的位数
+     */
+    public long getBitSize() {
+        Snapshot current = snapshot;
+        return (long) (-current.capacity * Math.log(current.fpp) / (Math.log(2) * Math.log(2)));
+    }
+
+    /**
+     * 按当前元素数估算的误判率, 本地吊销超过容量时会高于设定值
+     */
+    public double getExpectedFpp() {
+        return snapshot.filter.expectedFpp();
+    }
+
+    /**
+     * 实际观察到的误判率: 布隆过滤器命中但不在精确集合中的比例
+     */
+    public double getObservedFpp() {
+        long negatives = checkCount.sum() - revokedHitCount.sum();
+        return negatives <= 0 ? 0 : (double) falsePositiveCount.sum() / negatives;
+    }
+
+    /**
+     * 当前吊销的token数
+     */
+    public int size() {
+        return snapshot.revoked.size();
+    }
+
+    public long getCheckCount() {
+        return checkCount.sum();
+    }
+
+    public long getFilterHitCount() {
+        return filterHitCount.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.sum();
+    }
+
+    public long getRevokedHitCount() {
+        return revokedHitCount.sum();
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    public long getLastSyncTime() {
+        return lastSyncTime;
+    }
+
+    /**
+     * 是否已成功同步过
+     */
+    public boolean isSynced() {
+        return lastSyncTime != 0;
+    }
+
+    private static class Snapshot {
+        private final BloomFilter<CharSequence> filter;
+        private final Map<String, Long> revoked;
+        private final int capacity;
+        private final double fpp;
+
+        private Snapshot(Map<String, Long> revoked, int capacity, double fpp) {
+            this.filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), capacity, fpp);
+            this.revoked = new ConcurrentHashMap<>(revoked);
+            this.capacity = capacity;
+            this.fpp = fpp;
+            revoked.keySet().forEach(filter::put);
+        }
+
+        private void add(String tokenId, long expireTime) {
+            revoked.put(tokenId, expireTime);
+            filter.put(tokenId);
+        }
+    }
+}
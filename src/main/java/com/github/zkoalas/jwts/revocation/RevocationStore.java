@@ -0,0 +1,34 @@
+package com.github.zkoalas.jwts.revocation;
+
+import java.util.Map;
+
+/**
+ * 已吊销token id(jti)的共享存储
+ */
+public interface RevocationStore {
+
+    /**
+     * 吊销token
+     *
+     * @param tokenId    token的jti
+     * @param expireTime token的过期时间, 单位毫秒, 过期后可删除
+     */
+    void revoke(String tokenId, long expireTime);
+
+    /**
+     * 读取所有未过期的吊销记录
+     *
+     * @param now 当前时间, 单位毫秒
+     * @return jti到过期时间的映射
+     */
+    Map<String, Long> loadRevoked(long now);
+
+    /**
+     * 删除已过期的吊销记录
+     *
+     * @return 删除的条数
+     */
+    default int purgeExpired(long now) {
+        return 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.zkoalas.jwts.role;
+
+import com.alibaba.fastjson.JSON;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于oauth_role_permission表的角色权限存储, 每个角色一行, 权限为json数组
+ */
+public class JdbcRolePermissionStore implements RolePermissionStore {
+    private static final String SQL_UPDATE = "update oauth_role_permission set permissions = ?, update_time = ? where role_id = ?";
+
+    private static final String SQL_INSERT = "insert into oauth_role_permission (role_id, permissions, update_time) values (?,?,?)";
+
+    private static final String SQL_DELETE = "delete from oauth_role_permission where role_id = ?";
+
+    private static final String SQL_SELECT = "select role_id, permissions from oauth_role_permission";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcRolePermissionStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void savePermissions(String roleId, String[] permissions) {
+        String json = JSON.toJSONString(permissions == null ? new String[0] : permissions);
+        Date now = new Date();
+        if (jdbcTemplate.update(SQL_UPDATE, json, now, roleId) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(SQL_INSERT, roleId, json, now);
+        } catch (DuplicateKeyException e) {
+            // 其他节点同时插入
+            jdbcTemplate.update(SQL_UPDATE, json, now, roleId);
+        }
+    }
+
+    @Override
+    public void removeRole(String roleId) {
+        jdbcTemplate.update(SQL_DELETE, roleId);
+    }
+
+    @Override
+    public Map<String, String[]> loadPermissions() {
+        Map<String, String[]> rs = new HashMap<>();
+        jdbcTemplate.query(SQL_SELECT, resultSet -> {
+            String permissions = resultSet.getString("permissions");
+            List<String> list = permissions == null ? null : JSON.parseArray(permissions, String.class);
+            rs.put(resultSet.getString("role_id"), list == null ? new String[0] : list.toArray(new String[0]));
+        });
+        return rs;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.zkoalas.jwts.role;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的角色权限存储, 用于单节点或测试
+ */
+public class LocalRolePermissionStore implements RolePermissionStore {
+    private final Map<String, String[]> permissions = new ConcurrentHashMap<>();
+
+    @Override
+    public void savePermissions(String roleId, String[] permissions) {
+        this.permissions.put(roleId, permissions == null ? new String[0] : permissions.clone());
+    }
+
+    @Override
+    public void removeRole(String roleId) {
+        permissions.remove(roleId);
+    }
+
+    @Override
+    public Map<String, String[]> loadPermissions() {
+        return new HashMap<>(permissions);
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.zkoalas.jwts.role;
+
+import com.alibaba.fastjson.JSON;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于redis哈希的角色权限存储, field为角色id, value为权限的json数组
+ */
+public class RedisRolePermissionStore implements RolePermissionStore {
+    public static final String DEFAULT_KEY = "oauth_role_perm";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String key;
+
+    public RedisRolePermissionStore(StringRedisTemplate redisTemplate) {
+        this(redisTemplate, DEFAULT_KEY);
+    }
+
+    public RedisRolePermissionStore(StringRedisTemplate redisTemplate, String key) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+
+    @Override
+    public void savePermissions(String roleId, String[] permissions) {
+        redisTemplate.opsForHash().put(key, roleId, JSON.toJSONString(permissions == null ? new String[0] : permissions));
+    }
+
+    @Override
+    public void removeRole(String roleId) {
+        redisTemplate.opsForHash().delete(key, roleId);
+    }
+
+    @Override
+    public Map<String, String[]> loadPermissions() {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(key);
+        Map<String, String[]> rs = new HashMap<>();
+        if (entries != null) {
+            entries.forEach((roleId, permissions) -> {
+                List<String> list = permissions == null ? null : JSON.parseArray(String.valueOf(permissions), String.class);
+                rs.put(String.valueOf(roleId), list == null ? new String[0] : list.toArray(new String[0]));
+            });
+        }
+        return rs;
+    }
+}
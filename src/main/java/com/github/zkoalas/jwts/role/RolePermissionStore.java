@@ -0,0 +1,29 @@
+package com.github.zkoalas.jwts.role;
+
+import java.util.Map;
+
+/**
+ * 角色到权限映射的共享存储, 每个角色只存一份权限
+ */
+public interface RolePermissionStore {
+
+    /**
+     * 替换角色的权限, 一次写入
+     *
+     * @param roleId      角色id
+     * @param permissions 角色的全部权限
+     */
+    void savePermissions(String roleId, String[] permissions);
+
+    /**
+     * 删除角色
+     */
+    void removeRole(String roleId);
+
+    /**
+     * 读取所有角色的权限
+     *
+     * @return 角色id到权限的映射
+     */
+    Map<String, String[]> loadPermissions();
+}
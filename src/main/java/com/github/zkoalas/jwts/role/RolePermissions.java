@@ -0,0 +1,317 @@
+package com.github.zkoalas.jwts.role;
+
+import com.github.zkoalas.jwts.util.PermissionDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点本地的角色权限, token只保存角色id, 查询时按角色合并出有效权限
+ * 每种角色组合(及用户单独的权限)只合并一次, 相同组合的token共享同一个权限数组
+ * 修改一个角色只写入一次存储, 本节点立即生效, 其他节点在下一次同步后生效
+ */
+@Slf4j
+public class RolePermissions {
+    public static final int DEFAULT_MAX_COMBINATIONS = 10000;  // 默认最多缓存的角色组合数
+    public static final long DEFAULT_SYNC_INTERVAL = 30;  // 默认同步间隔,单位秒
+
+    private static final String[] EMPTY = new String[0];
+
+    private final RolePermissionStore store;
+    private int maxCombinations = DEFAULT_MAX_COMBINATIONS;
+    private volatile Snapshot snapshot;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder resolveCount = new LongAdder();
+    private final LongAdder combinationHitCount = new LongAdder();
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong changeCount = new AtomicLong();
+    private volatile long lastSyncTime;
+
+    public RolePermissions(RolePermissionStore store) {
+        Assert.notNull(store, "RolePermissionStore required");
+        this.store = store;
+    }
+
+    /**
+     * 合并角色的权限, 结果按角色组合缓存, 不要修改返回的数组
+     *
+     * @param roleIds 角色id, 顺序和重复不影响结果, 不存在的角色没有权限
+     */
+    public String[] resolve(String[] roleIds) {
+        resolveCount.increment();
+        if (roleIds == null || roleIds.length == 0) {
+            return EMPTY;
+        }
+        Snapshot current = getSnapshot();
+        if (roleIds.length == 1) {
+            String[] permissions = roleIds[0] == null ? null : current.roles.get(roleIds[0]);
+            combinationHitCount.increment();
+            return permissions == null ? EMPTY : permissions;
+        }
+        return resolve(current, combinationKey(roleIds), roleIds, null);
+    }
+
+    /**
+     * 合并角色的权限和用户单独的权限, 没有单独权限时与resolve(roleIds)相同
+     * 结果按角色组合和单独权限的组合缓存, 不要修改返回的数组
+     *
+     * @param permissions 用户单独的权限, 顺序和重复不影响结果
+     */
+    public String[] resolve(String[] roleIds, String[] permissions) {
+        if (permissions == null || permissions.length == 0) {
+            return resolve(roleIds);
+        }
+        resolveCount.increment();
+        String key = (roleIds == null ? "" : combinationKey(roleIds)) + '\0' + combinationKey(permissions);
+        return resolve(getSnapshot(), key, roleIds, permissions);
+    }
+
+    private String[] resolve(Snapshot current, String key, String[] roleIds, String[] permissions) {
+        String[] merged = current.combinations.get(key);
+        if (merged != null) {
+            combinationHitCount.increment();
+            return merged;
+        }
+        merged = current.merge(roleIds, permissions);
+        if (current.combinations.size() < maxCombinations) {
+            String[] existing = current.combinations.putIfAbsent(key, merged);
+            if (existing != null) {
+                merged = existing;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 角色当前的权限
+     */
+    public String[] getPermissions(String roleId) {
+        String[] permissions = getSnapshot().roles.get(roleId);
+        return permissions == null ? null : permissions.clone();
+    }
+
+    /**
+     * 替换角色的权限, 写入共享存储并立即在本节点生效
+     */
+    public synchronized void setPermissions(String roleId, String[] permissions) {
+        Assert.notNull(roleId, "RoleId required");
+        store.savePermissions(roleId, permissions);
+        Map<String, String[]> roles = new HashMap<>(getSnapshot().roles);
+        roles.put(roleId, permissions == null ? EMPTY : permissions.clone());
+        update(roles);
+    }
+
+    /**
+     * 删除角色, 引用该角色的token不再拥有它的权限
+     */
+    public synchronized void removeRole(String roleId) {
+        store.removeRole(roleId);
+        Map<String, String[]> roles = new HashMap<>(getSnapshot().roles);
+        if (roles.remove(roleId) != null) {
+            update(roles);
+        }
+    }
+
+    /**
+     * 从共享存储重新加载, 角色权限有变化时清除组合缓存并通知监听者
+     */
+    public synchronized void sync() {
+        Map<String, String[]> roles = store.loadPermissions();
+        syncCount.incrementAndGet();
+        lastSyncTime = System.currentTimeMillis();
+        Snapshot current = snapshot;
+        if (current == null) {
+            snapshot = new Snapshot(roles);
+        } else if (!current.sameRoles(roles)) {
+            update(roles);
+        }
+    }
+
+    /**
+     * 开始定时同步
+     *
+     * @param interval 同步间隔, 单位秒
+     */
+    public synchronized void startSync(long interval) {
+        stopSync();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwt-soul-role-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Exception e) {
+                log.warn("同步角色权限失败：" + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopSync() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 角色权限变化时调用, store用来清除已缓存的token
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param maxCombinations 最多缓存的组合数, 超过后新的组合每次重新合并
+     */
+    public void setMaxCombinations(int maxCombinations) {
+        this.maxCombinations = maxCombinations;
+    }
+
+    public int getMaxCombinations() {
+        return maxCombinations;
+    }
+
+    /**
+     * 当前的角色数
+     */
+    public int getRoleCount() {
+        return getSnapshot().roles.size();
+    }
+
+    /**
+     * 当前缓存的角色组合数
+     */
+    public int getCombinationCount() {
+        return getSnapshot().combinations.size();
+    }
+
+    public long getResolveCount() {
+        return resolveCount.sum();
+    }
+
+    public long getCombinationHitCount() {
+        return combinationHitCount.sum();
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * 角色权限的变化次数, 包括本节点的修改和同步到的其他节点的修改
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    public long getLastSyncTime() {
+        return lastSyncTime;
+    }
+
+    private void update(Map<String, String[]> roles) {
+        snapshot = new Snapshot(roles);
+        changeCount.incrementAndGet();
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.warn("处理角色权限变化失败：" + e.getMessage());
+            }
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    sync();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 排序去重后的角色id或权限, 顺序不同的相同组合共用一个缓存
+     */
+    private static String combinationKey(String[] roleIds) {
+        String[] sorted = roleIds.clone();
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] == null) {
+                sorted[i] = "";
+            }
+        }
+        Arrays.sort(sorted);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i].equals(sorted[i - 1])) {
+                continue;
+            }
+            sb.append(sorted[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static class Snapshot {
+        private final Map<String, String[]> roles;
+        private final Map<String, String[]> combinations = new ConcurrentHashMap<>();
+
+        private Snapshot(Map<String, String[]> roles) {
+            this.roles = new HashMap<>(roles);
+            this.roles.replaceAll((roleId, permissions) ->
+                    PermissionDictionary.PERMISSIONS.internAll(permissions == null ? EMPTY : permissions.clone()));
+        }
+
+        private String[] merge(String[] roleIds, String[] permissions) {
+            Set<String> merged = new LinkedHashSet<String>();
+            if (roleIds != null) {
+                for (String roleId : roleIds) {
+                    String[] rolePermissions = roleId == null ? null : roles.get(roleId);
+                    if (rolePermissions != null) {
+                        merged.addAll(Arrays.asList(rolePermissions));
+                    }
+                }
+            }
+            if (permissions != null) {
+                merged.addAll(Arrays.asList(permissions));
+            }
+            return merged.toArray(EMPTY);
+        }
+
+        private boolean sameRoles(Map<String, String[]> other) {
+            if (roles.size() != other.size()) {
+                return false;
+            }
+            for (Map.Entry<String, String[]> entry : other.entrySet()) {
+                String[] permissions = entry.getValue() == null ? EMPTY : entry.getValue();
+                if (!Arrays.equals(roles.get(entry.getKey()), permissions)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
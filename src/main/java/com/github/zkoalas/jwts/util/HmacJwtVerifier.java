@@ -0,0 +1,266 @@
+package com.github.zkoalas.jwts.util;
+
+import com.github.zkoalas.jwts.provider.KeyRing;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * HMAC签名(HS256/HS384/HS512)jwt的快速校验
+ * 每个线程复用Mac和缓冲区, 先校验签名再检查exp, claims按需解码
+ * 不支持的header(压缩、crit、非HMAC算法)或带nbf的token交给jjwt处理
+ */
+public class HmacJwtVerifier {
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * 校验并返回claims, 异常与jjwt一致
+     */
+    public static Claims parseClaims(String token, Key key) {
+        checkSignature(token);
+        Claims claims = verify(token, key, null, null);
+        if (claims == null) {
+            return Jwts.parser().setSigningKey(key).parseClaimsJws(token).getBody();
+        }
+        return claims;
+    }
+
+    /**
+     * 按header中的kid从key环选择key, 非HMAC的key交给jjwt
+     */
+    public static Claims parseClaims(String token, KeyRing keyRing, Supplier<Key> defaultKey) {
+        checkSignature(token);
+        Claims claims = verify(token, null, keyRing, defaultKey);
+        if (claims == null) {
+            return TokenUtil.parseClaimsJws(token, keyRing, defaultKey).getBody();
+        }
+        return claims;
+    }
+
+    /**
+     * 签名必须是规范的base64url: 不带'='、空白或其他字符, 最后一个字符中多余的位为0
+     * jjwt会忽略这些差异, 同一个签名有多种写法, 按原始字符串缓存时可被无限填充, 两种校验方式都先调用
+     */
+    public static void checkSignature(String token) {
+        if (token == null) {
+            return;
+        }
+        int from = token.lastIndexOf('.') + 1;
+        if (from == 0) {
+            return;
+        }
+        int length = token.length() - from;
+        int v = 0;
+        for (int i = from; i < token.length(); i++) {
+            char c = token.charAt(i);
+            v = c < 128 ? DECODE[c] : -1;
+            if (v < 0) {
+                throw new SignatureException("JWT signature is not canonical Base64Url: invalid character");
+            }
+        }
+        // 剩余2个字符时最后一个字符只有高2位有效, 剩余3个字符时只有高4位有效
+        int rest = length % 4;
+        if (rest == 1 || (rest == 2 && (v & 0x0f) != 0) || (rest == 3 && (v & 0x03) != 0)) {
+            throw new SignatureException("JWT signature is not canonical Base64Url");
+        }
+    }
+
+    /**
+     * 快速校验, 不支持的token返回null, header和payload不是合法的base64url时也返回null, 由jjwt给出相同的异常
+     */
+    static Claims verify(String token, Key key, KeyRing keyRing, Supplier<Key> defaultKey) {
+        if (token == null || (keyRing == null && !(key instanceof SecretKey))) {
+            return null;
+        }
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (headerEnd <= 0 || payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            return null;
+        }
+        State state = STATE.get();
+
+        // header: 只接受与key算法一致的HMAC签名
+        int length = state.decode(token, 0, headerEnd);
+        if (length < 0) {
+            return null;
+        }
+        Object kid;
+        Object alg;
+        try {
+            kid = keyRing == null ? JsonScanner.NOT_FOUND : JsonScanner.find(state.buffer, 0, length, JwsHeader.KEY_ID);
+            alg = JsonScanner.find(state.buffer, 0, length, "alg");
+            if (JsonScanner.find(state.buffer, 0, length, "zip") != JsonScanner.NOT_FOUND
+                    || JsonScanner.find(state.buffer, 0, length, "crit") != JsonScanner.NOT_FOUND) {
+                return null;
+            }
+        } catch (MalformedJwtException e) {
+            // header不是合法的json, 交给jjwt以得到相同的异常
+            return null;
+        }
+        if (keyRing != null) {
+            if (kid != JsonScanner.NOT_FOUND && !(kid instanceof String)) {
+                return null;
+            }
+            key = keyRing.resolve(kid == JsonScanner.NOT_FOUND ? null : (String) kid, defaultKey);
+            if (!(key instanceof SecretKey)) {
+                return null;
+            }
+        }
+        if (!(alg instanceof String) || !macAlgorithm((String) alg).equals(key.getAlgorithm())) {
+            return null;
+        }
+
+        // 签名: 直接对header.payload的字节计算, 与token中的签名按常量时间比较
+        Mac mac = state.mac(key);
+        byte[] input = state.input(payloadEnd);
+        for (int i = 0; i < payloadEnd; i++) {
+            input[i] = (byte) token.charAt(i);
+        }
+        mac.update(input, 0, payloadEnd);
+        int macLength = mac.getMacLength();
+        try {
+            mac.doFinal(state.expected, 0);
+        } catch (GeneralSecurityException e) {
+            throw new SignatureException("Unable to calculate JWT signature", e);
+        }
+        // checkSignature已保证签名是规范的base64url
+        int signatureLength = state.decode(token, payloadEnd + 1, token.length(), state.actual);
+        if (!isEqual(state.expected, state.actual, macLength, signatureLength)) {
+            // jjwt先解析header和payload再校验签名, 交给jjwt以得到相同的异常, 只有校验失败的token多一次解析
+            return null;
+        }
+
+        // payload: 只扫描exp和nbf, 其余claims按需解码
+        length = state.decode(token, headerEnd + 1, payloadEnd);
+        if (length < 0) {
+            return null;
+        }
+        Object exp;
+        try {
+            if (JsonScanner.find(state.buffer, 0, length, Claims.NOT_BEFORE) != JsonScanner.NOT_FOUND) {
+                return null;
+            }
+            exp = JsonScanner.find(state.buffer, 0, length, Claims.EXPIRATION);
+        } catch (MalformedJwtException e) {
+            return null;
+        }
+        Claims claims = new LazyClaims(Arrays.copyOf(state.buffer, length));
+        if (exp instanceof Number) {
+            long expireTime = ((Number) exp).longValue() * 1000;
+            long now = System.currentTimeMillis();
+            if (now > expireTime) {
+                throw new ExpiredJwtException(null, claims, "JWT expired at " + new Date(expireTime)
+                        + ". Current time: " + new Date(now));
+            }
+        }
+        return claims;
+    }
+
+    private static String macAlgorithm(String alg) {
+        switch (alg) {
+            case "HS256":
+                return "HmacSHA256";
+            case "HS384":
+                return "HmacSHA384";
+            case "HS512":
+                return "HmacSHA512";
+            default:
+                return "";
+        }
+    }
+
+    private static boolean isEqual(byte[] a, byte[] b, int aLength, int bLength) {
+        int result = aLength ^ bLength;
+        for (int i = 0; i < aLength; i++) {
+            result |= a[i] ^ b[i];
+        }
+        return result == 0;
+    }
+
+    private static class State {
+        private Key key;
+        private Mac mac;
+        private byte[] buffer = new byte[512];
+        private byte[] input = new byte[1024];
+        private final byte[] expected = new byte[64];
+        private final byte[] actual = new byte[64];
+
+        private Mac mac(Key key) {
+            if (key != this.key) {
+                try {
+                    Mac mac = this.mac != null && this.mac.getAlgorithm().equals(key.getAlgorithm())
+                            ? this.mac : Mac.getInstance(key.getAlgorithm());
+                    mac.init(key);
+                    this.mac = mac;
+                    this.key = key;
+                } catch (GeneralSecurityException e) {
+                    throw new SignatureException("Unable to initialize MAC for " + key.getAlgorithm(), e);
+                }
+            }
+            return mac;
+        }
+
+        private byte[] input(int length) {
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            return input;
+        }
+
+        /**
+         * base64url解码到buffer, 返回字节数, 有'='等非法字符时返回-1
+         */
+        private int decode(String s, int from, int to) {
+            int length = (to - from) * 3 / 4 + 3;
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            return decode(s, from, to, buffer);
+        }
+
+        private int decode(String s, int from, int to, byte[] out) {
+            int bits = 0;
+            int count = 0;
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                int v = c < 128 ? DECODE[c] : -1;
+                if (v < 0) {
+                    return -1;
+                }
+                bits = (bits << 6) | v;
+                count += 6;
+                if (count >= 8) {
+                    count -= 8;
+                    if (length == out.length) {
+                        // 签名长度超出缓冲区, 视为签名不匹配
+                        return length + 1;
+                    }
+                    out[length++] = (byte) (bits >> count);
+                }
+            }
+            return length;
+        }
+    }
+}
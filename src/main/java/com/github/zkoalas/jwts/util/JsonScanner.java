@@ -0,0 +1,347 @@
+package com.github.zkoalas.jwts.util;
+
+import io.jsonwebtoken.MalformedJwtException;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 极简json扫描器, 按key查找顶层对象的单个值, 跳过其余内容不解码
+ * 值的类型与jackson一致: String、Integer/Long/Double、Boolean、List、Map
+ */
+final class JsonScanner {
+    static final Object NOT_FOUND = new Object();
+
+    private final byte[] b;
+    private final int end;
+    private int pos;
+
+    private JsonScanner(byte[] b, int start, int end) {
+        this.b = b;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * 查找顶层对象中key的值, 不存在返回NOT_FOUND
+     */
+    static Object find(byte[] json, int start, int end, String key) {
+        JsonScanner scanner = new JsonScanner(json, start, end);
+        scanner.skipWhitespace();
+        scanner.expect('{');
+        scanner.skipWhitespace();
+        if (scanner.peek() == '}') {
+            return NOT_FOUND;
+        }
+        while (true) {
+            scanner.skipWhitespace();
+            boolean match = scanner.keyEquals(key);
+            scanner.skipWhitespace();
+            scanner.expect(':');
+            scanner.skipWhitespace();
+            if (match) {
+                return scanner.readValue();
+            }
+            scanner.skipValue();
+            scanner.skipWhitespace();
+            if (scanner.endOf('}')) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    /**
+     * 完整解析顶层对象
+     */
+    static Map<String, Object> parseObject(byte[] json, int start, int end) {
+        JsonScanner scanner = new JsonScanner(json, start, end);
+        scanner.skipWhitespace();
+        if (scanner.peek() != '{') {
+            throw new MalformedJwtException("JWT payload is not a JSON object");
+        }
+        return scanner.readObject();
+    }
+
+    private Object readValue() {
+        switch (peek()) {
+            case '"':
+                return readString();
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case 't':
+                literal("true");
+                return Boolean.TRUE;
+            case 'f':
+                literal("false");
+                return Boolean.FALSE;
+            case 'n':
+                literal("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        expect('{');
+        Map<String, Object> map = new LinkedHashMap<>();
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            map.put(key, readValue());
+            skipWhitespace();
+            if (endOf('}')) {
+                return map;
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        expect('[');
+        List<Object> list = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            skipWhitespace();
+            list.add(readValue());
+            skipWhitespace();
+            if (endOf(']')) {
+                return list;
+            }
+        }
+    }
+
+    private String readString() {
+        expect('"');
+        int start = pos;
+        while (true) {
+            byte c = byteAt(pos);
+            if (c == '"') {
+                String s = new String(b, start, pos - start, StandardCharsets.UTF_8);
+                pos++;
+                return s;
+            }
+            if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+        // 含转义字符
+        pos = start;
+        StringBuilder sb = new StringBuilder();
+        int segment = pos;
+        while (true) {
+            byte c = byteAt(pos);
+            if (c == '"') {
+                sb.append(new String(b, segment, pos - segment, StandardCharsets.UTF_8));
+                pos++;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                pos++;
+                continue;
+            }
+            sb.append(new String(b, segment, pos - segment, StandardCharsets.UTF_8));
+            byte e = byteAt(pos + 1);
+            pos += 2;
+            switch (e) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > end) {
+                        throw malformed();
+                    }
+                    sb.append((char) Integer.parseInt(new String(b, pos, 4, StandardCharsets.US_ASCII), 16));
+                    pos += 4;
+                    break;
+                default:
+                    sb.append((char) e);
+            }
+            segment = pos;
+        }
+    }
+
+    /**
+     * 比较当前位置的key, 纯ascii且无转义时不创建字符串
+     */
+    private boolean keyEquals(String key) {
+        expect('"');
+        int start = pos;
+        int k = 0;
+        boolean match = true;
+        while (true) {
+            byte c = byteAt(pos);
+            if (c == '"') {
+                pos++;
+                return match && k == key.length();
+            }
+            if (c == '\\' || c < 0) {
+                pos = start - 1;
+                return key.equals(readString());
+            }
+            if (match && (k >= key.length() || key.charAt(k) != c)) {
+                match = false;
+            }
+            k++;
+            pos++;
+        }
+    }
+
+    private Object readNumber() {
+        int start = pos;
+        boolean decimal = false;
+        while (pos < end) {
+            byte c = b[pos];
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+                break;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            throw malformed();
+        }
+        String s = new String(b, start, pos - start, StandardCharsets.US_ASCII);
+        try {
+            if (decimal) {
+                return Double.valueOf(s);
+            }
+            if (pos - start > 18) {
+                BigInteger value = new BigInteger(s);
+                return value.bitLength() < 64 ? (Object) value.longValue() : value;
+            }
+            long value = Long.parseLong(s);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw malformed();
+        }
+    }
+
+    private void skipValue() {
+        byte c = peek();
+        if (c == '"') {
+            pos++;
+            while (true) {
+                byte s = byteAt(pos++);
+                if (s == '\\') {
+                    pos++;
+                } else if (s == '"') {
+                    return;
+                }
+            }
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (true) {
+                byte s = byteAt(pos++);
+                if (s == '"') {
+                    pos--;
+                    skipValue();
+                } else if (s == '{' || s == '[') {
+                    depth++;
+                } else if ((s == '}' || s == ']') && --depth == 0) {
+                    return;
+                }
+            }
+        }
+        while (pos < end) {
+            c = b[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void literal(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (byteAt(pos + i) != literal.charAt(i)) {
+                throw malformed();
+            }
+        }
+        pos += literal.length();
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte c = b[pos];
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * 读取成员分隔符, 遇到结束符返回true
+     */
+    private boolean endOf(char close) {
+        byte c = next();
+        if (c == close) {
+            return true;
+        }
+        if (c != ',') {
+            throw malformed();
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw malformed();
+        }
+    }
+
+    private byte next() {
+        return byteAt(pos++);
+    }
+
+    private byte peek() {
+        return byteAt(pos);
+    }
+
+    private byte byteAt(int i) {
+        if (i >= end) {
+            throw malformed();
+        }
+        return b[i];
+    }
+
+    private static MalformedJwtException malformed() {
+        return new MalformedJwtException("Unable to read JSON value");
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.zkoalas.jwts.util;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.RequiredTypeException;
+
+import java.util.AbstractMap;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按需解码的claims, 读取单个claim时只扫描payload, 遍历或修改时才完整解析
+ */
+class LazyClaims extends AbstractMap<String, Object> implements Claims {
+    private final byte[] json;
+    private volatile Map<String, Object> values;
+
+    LazyClaims(byte[] json) {
+        this.json = json;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = lookup(key);
+        return value == JsonScanner.NOT_FOUND ? null : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return lookup(key) != JsonScanner.NOT_FOUND;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return materialize().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return materialize().remove(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return materialize().entrySet();
+    }
+
+    @Override
+    public String getIssuer() {
+        return getString(ISSUER);
+    }
+
+    @Override
+    public Claims setIssuer(String iss) {
+        return set(ISSUER, iss);
+    }
+
+    @Override
+    public String getSubject() {
+        return getString(SUBJECT);
+    }
+
+    @Override
+    public Claims setSubject(String sub) {
+        return set(SUBJECT, sub);
+    }
+
+    @Override
+    public String getAudience() {
+        return getString(AUDIENCE);
+    }
+
+    @Override
+    public Claims setAudience(String aud) {
+        return set(AUDIENCE, aud);
+    }
+
+    @Override
+    public Date getExpiration() {
+        return get(EXPIRATION, Date.class);
+    }
+
+    @Override
+    public Claims setExpiration(Date exp) {
+        return set(EXPIRATION, exp == null ? null : exp.getTime() / 1000);
+    }
+
+    @Override
+    public Date getNotBefore() {
+        return get(NOT_BEFORE, Date.class);
+    }
+
+    @Override
+    public Claims setNotBefore(Date nbf) {
+        return set(NOT_BEFORE, nbf == null ? null : nbf.getTime() / 1000);
+    }
+
+    @Override
+    public Date getIssuedAt() {
+        return get(ISSUED_AT, Date.class);
+    }
+
+    @Override
+    public Claims setIssuedAt(Date iat) {
+        return set(ISSUED_AT, iat == null ? null : iat.getTime() / 1000);
+    }
+
+    @Override
+    public String getId() {
+        return getString(ID);
+    }
+
+    @Override
+    public Claims setId(String jti) {
+        return set(ID, jti);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String claimName, Class<T> requiredType) {
+        Object value = get(claimName);
+        if (value == null) {
+            return null;
+        }
+        if (requiredType == Date.class && value instanceof Number) {
+            // 时间类claim以秒为单位
+            return (T) new Date(((Number) value).longValue() * 1000);
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (requiredType == Long.class) {
+                return (T) Long.valueOf(number.longValue());
+            } else if (requiredType == Integer.class) {
+                return (T) Integer.valueOf(number.intValue());
+            } else if (requiredType == Short.class) {
+                return (T) Short.valueOf(number.shortValue());
+            } else if (requiredType == Byte.class) {
+                return (T) Byte.valueOf(number.byteValue());
+            }
+        }
+        if (!requiredType.isInstance(value)) {
+            throw new RequiredTypeException("Expected value to be of type: " + requiredType + ", but was " + value.getClass());
+        }
+        return requiredType.cast(value);
+    }
+
+    private String getString(String name) {
+        Object value = get(name);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private Claims set(String name, Object value) {
+        if (value == null) {
+            remove(name);
+        } else {
+            put(name, value);
+        }
+        return this;
+    }
+
+    private Object lookup(Object key) {
+        if (!(key instanceof String)) {
+            return JsonScanner.NOT_FOUND;
+        }
+        Map<String, Object> current = values;
+        if (current != null) {
+            return current.containsKey(key) ? current.get(key) : JsonScanner.NOT_FOUND;
+        }
+        return JsonScanner.find(json, 0, json.length, (String) key);
+    }
+
+    private Map<String, Object> materialize() {
+        Map<String, Object> current = values;
+        if (current == null) {
+            synchronized (this) {
+                current = values;
+                if (current == null) {
+                    current = JsonScanner.parseObject(json, 0, json.length);
+                    values = current;
+                }
+            }
+        }
+        return current;
+    }
+}
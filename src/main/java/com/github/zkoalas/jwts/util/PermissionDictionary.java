@@ -0,0 +1,101 @@
+package com.github.zkoalas.jwts.util;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 权限/角色字典, 把字符串映射为连续的整数id, 并共享相同的字符串和位图
+ * 字典只增不减, 不要把带业务主键的权限(如order:read:123)放入token
+ */
+public class PermissionDictionary {
+    public static final PermissionDictionary PERMISSIONS = new PermissionDictionary();
+    public static final PermissionDictionary ROLES = new PermissionDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Interner<PermissionSet> sets = Interners.newWeakInterner();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    /**
+     * 查询id, 不存在返回-1, 不会新增
+     */
+    public int idOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 获取id, 不存在时分配新id
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                id = size++;
+                if (id >= names.length) {
+                    names = Arrays.copyOf(names, names.length * 2);
+                }
+                names[id] = name;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    public String nameOf(int id) {
+        String[] current = names;
+        return id < 0 || id >= current.length ? null : current[id];
+    }
+
+    /**
+     * 把数组中的字符串替换为字典中的共享实例, 直接修改并返回原数组
+     */
+    public String[] internAll(String[] values) {
+        if (values == null) {
+            return null;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                values[i] = nameOf(intern(values[i]));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 转换为位图, 内容相同的位图共享同一实例
+     */
+    public PermissionSet toSet(String[] values) {
+        if (values == null || values.length == 0) {
+            return PermissionSet.EMPTY;
+        }
+        long[] words = new long[(ids.size() + 63) >>> 6];
+        for (String value : values) {
+            if (value == null) {
+                continue;
+            }
+            int id = intern(value);
+            int index = id >>> 6;
+            if (index >= words.length) {
+                words = Arrays.copyOf(words, index + 1);
+            }
+            words[index] |= 1L << id;
+        }
+        return sets.intern(new PermissionSet(words));
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
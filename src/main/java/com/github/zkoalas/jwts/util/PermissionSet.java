@@ -0,0 +1,113 @@
+package com.github.zkoalas.jwts.util;
+
+import java.util.Arrays;
+
+/**
+ * 不可变的权限/角色位图, 位下标为PermissionDictionary分配的id
+ * 相同内容的集合由字典共享同一实例
+ */
+public final class PermissionSet {
+    public static final PermissionSet EMPTY = new PermissionSet(new long[0]);
+
+    private final long[] words;
+    private final int hash;
+
+    PermissionSet(long[] words) {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+        this.words = length == words.length ? words : Arrays.copyOf(words, length);
+        this.hash = Arrays.hashCode(this.words);
+    }
+
+    /**
+     * 是否包含指定id, id小于0返回false
+     */
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = id >>> 6;
+        return index < words.length && (words[index] & (1L << id)) != 0;
+    }
+
+    /**
+     * 是否包含other中的全部元素
+     */
+    public boolean containsAll(PermissionSet other) {
+        long[] otherWords = other.words;
+        if (otherWords.length > words.length) {
+            return false;
+        }
+        for (int i = 0; i < otherWords.length; i++) {
+            if ((otherWords[i] & ~words[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 是否包含other中的任一元素
+     */
+    public boolean containsAny(PermissionSet other) {
+        long[] otherWords = other.words;
+        int length = Math.min(words.length, otherWords.length);
+        for (int i = 0; i < length; i++) {
+            if ((otherWords[i] & words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从fromId开始的下一个id, 没有返回-1
+     */
+    public int nextId(int fromId) {
+        int index = fromId >>> 6;
+        if (index >= words.length) {
+            return -1;
+        }
+        long word = words[index] & (-1L << fromId);
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    public boolean isEmpty() {
+        return words.length == 0;
+    }
+
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PermissionSet)) {
+            return false;
+        }
+        PermissionSet other = (PermissionSet) o;
+        return hash == other.hash && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.zkoalas.jwts.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 通配符权限的分段字典树, 按":"分段, 末段为"*"时匹配该前缀及其下的所有权限
+ * 例如order:*匹配order、order:read、order:read:123, 单独的*匹配所有权限
+ * 匹配时间与权限段数成正比, 非末段的*按普通字符匹配
+ */
+public final class PermissionTrie {
+    public static final String SEPARATOR = ":";
+    public static final String WILDCARD = "*";
+
+    private static final char SEPARATOR_CHAR = ':';
+
+    // 相同权限集合的用户共享同一棵树, PermissionSet已被字典共享, 按实例弱引用缓存
+    private static final Cache<PermissionSet, PermissionTrie> CACHE = CacheBuilder.newBuilder().weakKeys().build();
+
+    private static final PermissionTrie NONE = new PermissionTrie(null);
+
+    private final Node root;
+
+    private PermissionTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * 获取权限集合的字典树, 没有通配符权限时返回null
+     *
+     * @param set         permissions对应的位图
+     * @param permissions 用户权限
+     */
+    public static PermissionTrie of(PermissionSet set, String[] permissions) {
+        if (set.isEmpty()) {
+            return null;
+        }
+        PermissionTrie trie;
+        try {
+            trie = CACHE.get(set, () -> compile(permissions));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return trie == NONE ? null : trie;
+    }
+
+    /**
+     * 编译权限, 没有通配符权限时返回NONE
+     */
+    private static PermissionTrie compile(String[] permissions) {
+        boolean hasWildcard = false;
+        for (String permission : permissions) {
+            if (permission != null && isWildcard(permission)) {
+                hasWildcard = true;
+                break;
+            }
+        }
+        if (!hasWildcard) {
+            return NONE;
+        }
+        Builder root = new Builder();
+        for (String permission : permissions) {
+            if (permission == null) {
+                continue;
+            }
+            Builder node = root;
+            String[] segments = permission.split(SEPARATOR, -1);
+            for (int i = 0; i < segments.length; i++) {
+                if (i == segments.length - 1 && WILDCARD.equals(segments[i])) {
+                    node.wildcard = true;
+                    break;
+                }
+                node = node.children.computeIfAbsent(segments[i], k -> new Builder());
+                if (i == segments.length - 1) {
+                    node.granted = true;
+                }
+            }
+        }
+        return new PermissionTrie(root.build());
+    }
+
+    /**
+     * 是否包含通配符权限
+     */
+    public static boolean isWildcard(String permission) {
+        return permission.equals(WILDCARD) || permission.endsWith(SEPARATOR + WILDCARD);
+    }
+
+    /**
+     * 是否拥有指定权限, 匹配过程不分配对象
+     */
+    public boolean implies(String permission) {
+        if (permission == null) {
+            return false;
+        }
+        Node node = root;
+        int start = 0;
+        int length = permission.length();
+        while (true) {
+            if (node.wildcard) {
+                return true;
+            }
+            int end = permission.indexOf(SEPARATOR_CHAR, start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.child(permission, start, end);
+            if (node == null) {
+                return false;
+            }
+            if (end == length) {
+                return node.granted || node.wildcard;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static final class Node {
+        private static final String[] NO_KEYS = new String[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String[] keys;  // 有序, 二分查找
+        private final Node[] children;
+        private final boolean granted;
+        private final boolean wildcard;
+
+        private Node(String[] keys, Node[] children, boolean granted, boolean wildcard) {
+            this.keys = keys;
+            this.children = children;
+            this.granted = granted;
+            this.wildcard = wildcard;
+        }
+
+        private Node child(String permission, int start, int end) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(keys[mid], permission, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 与String.compareTo一致的区间比较
+         */
+        private static int compare(String key, String permission, int start, int end) {
+            int length = end - start;
+            int limit = Math.min(key.length(), length);
+            for (int i = 0; i < limit; i++) {
+                char c1 = key.charAt(i);
+                char c2 = permission.charAt(start + i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return key.length() - length;
+        }
+    }
+
+    private static final class Builder {
+        private final Map<String, Builder> children = new TreeMap<>();
+        private boolean granted;
+        private boolean wildcard;
+
+        private Node build() {
+            // 通配符已覆盖的子树无需保留
+            if (wildcard || children.isEmpty()) {
+                return new Node(Node.NO_KEYS, Node.NO_CHILDREN, granted, wildcard);
+            }
+            String[] keys = new String[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<String, Builder> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().build();
+                i++;
+            }
+            return new Node(keys, nodes, granted, wildcard);
+        }
+    }
+}
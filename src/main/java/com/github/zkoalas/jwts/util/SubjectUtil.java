@@ -26,16 +26,17 @@ public class SubjectUtil {
         if (token == null) {
             return false;
         }
-        boolean rs = false;
-        for (int i = 0; i < roles.length; i++) {
-            if (token.getRoles() != null) {
-                rs = contains(token.getRoles(), roles[i]);
-            }
-            if (logical == (rs ? Logical.OR : Logical.AND)) {
-                break;
-            }
+        return matches(token.roleSet(), PermissionDictionary.ROLES, roles, logical);
+    }
+
+    /**
+     * 使用预先生成的位图检查角色, 按字进行位运算
+     */
+    public static boolean hasRole(Token token, PermissionSet roles, Logical logical) {
+        if (token == null) {
+            return false;
         }
-        return rs;
+        return matches(token.roleSet(), roles, logical);
     }
 
     public static boolean hasRole(Token token, String roles) {
@@ -62,11 +63,13 @@ public class SubjectUtil {
         if (token == null) {
             return false;
         }
+        PermissionTrie trie = token.permissionTrie();
+        if (trie == null) {
+            return matches(token.permissionSet(), PermissionDictionary.PERMISSIONS, permissions, logical);
+        }
         boolean rs = false;
         for (int i = 0; i < permissions.length; i++) {
-            if (token.getPermissions() != null) {
-                rs = contains(token.getPermissions(), permissions[i]);
-            }
+            rs = trie.implies(permissions[i]);
             if (logical == (rs ? Logical.OR : Logical.AND)) {
                 break;
             }
@@ -74,6 +77,31 @@ public class SubjectUtil {
         return rs;
     }
 
+    /**
+     * 使用预先生成的位图检查权限, 按字进行位运算
+     */
+    public static boolean hasPermission(Token token, PermissionSet permissions, Logical logical) {
+        if (token == null) {
+            return false;
+        }
+        PermissionTrie trie = token.permissionTrie();
+        if (trie == null || permissions.isEmpty()) {
+            return matches(token.permissionSet(), permissions, logical);
+        }
+        // 先按位图精确匹配, 未命中的再查通配符
+        PermissionSet owned = token.permissionSet();
+        if (logical == Logical.OR && owned.containsAny(permissions)) {
+            return true;
+        }
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            boolean rs = owned.contains(id) || trie.implies(PermissionDictionary.PERMISSIONS.nameOf(id));
+            if (logical == (rs ? Logical.OR : Logical.AND)) {
+                return rs;
+            }
+        }
+        return logical == Logical.AND;
+    }
+
     public static boolean hasPermission(Token token, String permissions) {
         return hasPermission(token, new String[]{permissions}, Logical.OR);
     }
@@ -96,13 +124,22 @@ public class SubjectUtil {
         return (Token) request.getAttribute(REQUEST_TOKEN_NAME);
     }
 
-    private static boolean contains(String[] strs, String str) {
-        for (int i = 0; i < strs.length; i++) {
-            if (strs[i].equals(str)) {
-                return true;
+    private static boolean matches(PermissionSet owned, PermissionDictionary dictionary, String[] required, Logical logical) {
+        boolean rs = false;
+        for (int i = 0; i < required.length; i++) {
+            rs = owned.contains(dictionary.idOf(required[i]));
+            if (logical == (rs ? Logical.OR : Logical.AND)) {
+                break;
             }
         }
-        return false;
+        return rs;
+    }
+
+    private static boolean matches(PermissionSet owned, PermissionSet required, Logical logical) {
+        if (required.isEmpty()) {
+            return false;
+        }
+        return logical == Logical.AND ? owned.containsAll(required) : owned.containsAny(required);
     }
 
 
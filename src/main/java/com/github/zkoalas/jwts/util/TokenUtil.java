@@ -1,24 +1,44 @@
 package com.github.zkoalas.jwts.util;
 
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.KeyRing;
 import com.github.zkoalas.jwts.provider.Token;
 import com.google.common.collect.Maps;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.util.ObjectUtils;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 /**
  * Token工具类
  */
 public class TokenUtil {
     public static final long DEFAULT_EXPIRE = 60 * 60 * 24;  // 默认过期时长,单位秒
+    public static final int TOKEN_HASH_LENGTH = 64;  // token摘要长度, sha-256的16进制
+    private static volatile Object[] lastParsedKey;  // 最近一次解析的{hexKey, Key}
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
     /**
      * 生成token
@@ -32,10 +52,17 @@ public class TokenUtil {
     }
 
     public static Token buildToken(String subject, long expire, Key key) {
+        return buildToken(subject, expire, key, null);
+    }
+
+    /**
+     * 生成header带kid的token, tokenKey记录kid
+     */
+    public static Token buildToken(String subject, long expire, Key key, String kid) {
         Date expireDate = new Date(new Date().getTime() + 1000 * expire);  // 单位毫秒
-        String access_token = toBuildAccessToken(null, subject, expireDate, key);
+        String access_token = toBuildAccessToken(null, subject, expireDate, key, kid);
         Token token = new Token();
-        token.setTokenKey(Hex.encodeToString(key.getEncoded()));
+        token.setTokenKey(kid != null ? kid : Hex.encodeToString(key.getEncoded()));
         token.setAccessToken(access_token);
         token.setUserId(subject);
         token.setExpireTime(expireDate.getTime());
@@ -43,10 +70,14 @@ public class TokenUtil {
     }
 
     public static Token toBuildToken(Map<String, Object> claims, String subject, long expire, Key key) {
+        return toBuildToken(claims, subject, expire, key, null);
+    }
+
+    public static Token toBuildToken(Map<String, Object> claims, String subject, long expire, Key key, String kid) {
         Date expireDate = new Date(new Date().getTime() + 1000 * expire);  // 单位毫秒
-        String access_token = toBuildAccessToken(claims, subject, expireDate, key);
+        String access_token = toBuildAccessToken(claims, subject, expireDate, key, kid);
         Token token = new Token();
-        token.setTokenKey(Hex.encodeToString(key.getEncoded()));
+        token.setTokenKey(kid != null ? kid : Hex.encodeToString(key.getEncoded()));
         token.setAccessToken(access_token);
         token.setExpireTime(expireDate.getTime());
         return token;
@@ -54,23 +85,145 @@ public class TokenUtil {
 
 
     public static String toBuildAccessToken(Map<String, Object> claims, String subject, Date expireDate, Key key) {
+        return toBuildAccessToken(claims, subject, expireDate, key, null);
+    }
+
+    /**
+     * @param kid 签名key的id, 写入header, 为null时不写
+     */
+    public static String toBuildAccessToken(Map<String, Object> claims, String subject, Date expireDate, Key key, String kid) {
         if(ObjectUtils.isEmpty(claims)){
             claims = Maps.newHashMap();
         }
-        String access_token = Jwts.builder()
-                .setClaims(claims)
+        JwtBuilder builder = Jwts.builder();
+        if (kid != null) {
+            builder.setHeaderParam(JwsHeader.KEY_ID, kid);
+        }
+        builder.setClaims(claims);
+        if (!claims.containsKey(Claims.ID)) {
+            // 每个token有唯一的jti, 用于吊销
+            builder.setId(newTokenId());
+        }
+        String access_token = builder
                 .setSubject(subject)
                 .signWith(key)
                 .setExpiration(expireDate)
                 .compact();
         return access_token;
     }
+    /**
+     * 生成token id(jti), 22位base64url
+     */
+    public static String newTokenId() {
+        byte[] bytes = new byte[16];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * token的sha-256摘要, 64位16进制, 用于代替完整的token存储和查询
+     */
+    public static String hashToken(String access_token) {
+        return Hex.encodeToString(digestToken(access_token));
+    }
+
+    /**
+     * token的sha-256摘要, 32字节
+     */
+    public static byte[] digestToken(String access_token) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return digest.digest(access_token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 是否为hashToken的结果, jwt中总包含'.', 摘要中没有
+     */
+    public static boolean isTokenHash(String value) {
+        return value != null && value.length() == TOKEN_HASH_LENGTH && value.indexOf('.') < 0;
+    }
+
     /**
      * 解析token
      */
     public static String parseToken(String token, String hexKey) {
-        Jws<Claims> claimsJws = Jwts.parser().setSigningKey(parseHexKey(hexKey)).parseClaimsJws(token);
-        return claimsJws.getBody().getSubject();
+        return parseToken(token, parseHexKey(hexKey));
+    }
+
+    public static String parseToken(String token, Key key) {
+        return parseClaims(token, key).getSubject();
+    }
+
+    /**
+     * 解析claims, 开启Config.fastVerify时使用HmacJwtVerifier
+     */
+    public static Claims parseClaims(String token, Key key) {
+        if (Config.getInstance().isFastVerify()) {
+            return HmacJwtVerifier.parseClaims(token, key);
+        }
+        HmacJwtVerifier.checkSignature(token);
+        Jws<Claims> claimsJws = Jwts.parser().setSigningKey(key).parseClaimsJws(token);
+        return claimsJws.getBody();
+    }
+
+    /**
+     * 按header中的kid从key环选择校验key, 没有kid的token使用defaultKey
+     */
+    public static Claims parseClaims(String token, KeyRing keyRing, Supplier<Key> defaultKey) {
+        if (Config.getInstance().isFastVerify()) {
+            return HmacJwtVerifier.parseClaims(token, keyRing, defaultKey);
+        }
+        return parseClaimsJws(token, keyRing, defaultKey).getBody();
+    }
+
+    /**
+     * 读取header中的kid, 不校验签名, 没有kid或header格式错误时返回null
+     */
+    public static String parseKid(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            byte[] header = Base64.getUrlDecoder().decode(token.substring(0, dot));
+            Object kid = JsonScanner.find(header, 0, header.length, JwsHeader.KEY_ID);
+            return kid instanceof String ? (String) kid : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 读取payload中的exp并转为毫秒, 不校验签名, 没有exp或payload格式错误时返回null
+     */
+    public static Long parseExpireTime(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        int end = dot < 0 ? -1 : token.indexOf('.', dot + 1);
+        if (end <= dot + 1) {
+            return null;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(dot + 1, end));
+            Object exp = JsonScanner.find(payload, 0, payload.length, Claims.EXPIRATION);
+            return exp instanceof Number ? ((Number) exp).longValue() * 1000 : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 使用jjwt按kid解析
+     */
+    public static Jws<Claims> parseClaimsJws(String token, KeyRing keyRing, Supplier<Key> defaultKey) {
+        HmacJwtVerifier.checkSignature(token);
+        return Jwts.parser().setSigningKeyResolver(new SigningKeyResolverAdapter() {
+            // 父类方法的参数为原始类型, 不能改为JwsHeader<?>
+            @Override
+            @SuppressWarnings("rawtypes")
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                return keyRing.resolve(header.getKeyId(), defaultKey);
+            }
+        }).parseClaimsJws(token);
     }
 
     /**
@@ -98,7 +251,12 @@ public class TokenUtil {
         if (hexKey == null || hexKey.trim().isEmpty()) {
             return null;
         }
+        Object[] last = lastParsedKey;
+        if (last != null && last[0].equals(hexKey)) {
+            return (Key) last[1];
+        }
         SecretKey key = Keys.hmacShaKeyFor(Hex.decode(hexKey));
+        lastParsedKey = new Object[]{hexKey, key};
         return key;
     }
 
@@ -0,0 +1,90 @@
+package com.github.zkoalas.jwts;
+
+import com.github.zkoalas.jwts.annotation.Logical;
+import com.github.zkoalas.jwts.annotation.RequiresPermissions;
+import com.github.zkoalas.jwts.annotation.RequiresRoles;
+import com.github.zkoalas.jwts.provider.Token;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 方法和类上注解的预编译
+ */
+public class AuthorizationCheckerTest {
+
+    static class Open {
+        public void any() {
+        }
+    }
+
+    @RequiresRoles("admin")
+    static class Admin {
+        public void classRole() {
+        }
+
+        @RequiresRoles(value = {"admin", "ops"}, logical = Logical.OR)
+        public void methodRole() {
+        }
+
+        @RequiresPermissions({"user:read", "user:write"})
+        public void permissions() {
+        }
+
+        @RequiresPermissions(value = {"user:read", "user:write"}, logical = Logical.OR)
+        public void anyPermission() {
+        }
+    }
+
+    @Test
+    public void unannotatedMethodIsNone() throws Exception {
+        assertSame(AuthorizationChecker.NONE, AuthorizationChecker.compile(Open.class.getMethod("any")));
+        assertTrue(AuthorizationChecker.NONE.check(token(null, null)));
+    }
+
+    @Test
+    public void classAnnotationApplies() throws Exception {
+        AuthorizationChecker checker = compile("classRole");
+        assertTrue(checker.check(token(null, new String[]{"admin"})));
+        assertFalse(checker.check(token(null, new String[]{"ops"})));
+        assertFalse(checker.check(token(null, null)));
+    }
+
+    @Test
+    public void methodAnnotationOverridesClass() throws Exception {
+        AuthorizationChecker checker = compile("methodRole");
+        assertTrue(checker.check(token(null, new String[]{"ops"})));
+        assertFalse(checker.check(token(null, new String[]{"guest"})));
+    }
+
+    @Test
+    public void permissionsWithClassRole() throws Exception {
+        AuthorizationChecker all = compile("permissions");
+        String[] admin = {"admin"};
+        assertTrue(all.check(token(new String[]{"user:read", "user:write"}, admin)));
+        assertFalse(all.check(token(new String[]{"user:read"}, admin)));
+        // 方法上只有权限注解时, 类上的角色注解仍然生效
+        assertFalse(all.check(token(new String[]{"user:read", "user:write"}, null)));
+
+        AuthorizationChecker any = compile("anyPermission");
+        assertTrue(any.check(token(new String[]{"user:write"}, admin)));
+        assertFalse(any.check(token(new String[]{"order:read"}, admin)));
+    }
+
+    private static AuthorizationChecker compile(String name) throws Exception {
+        Method method = Admin.class.getMethod(name);
+        return AuthorizationChecker.compile(method);
+    }
+
+    private static Token token(String[] permissions, String[] roles) {
+        Token token = new Token();
+        token.setUserId("u");
+        token.setPermissions(permissions);
+        token.setRoles(roles);
+        return token;
+    }
+}
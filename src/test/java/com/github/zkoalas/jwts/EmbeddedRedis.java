@@ -0,0 +1,70 @@
+package com.github.zkoalas.jwts;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+/**
+ * 测试用的redis, 默认启动embedded-redis, 指定-Dredis.port时使用本地已运行的redis
+ * 同一个jvm中只启动一次, 每个测试前用flushDb清空
+ */
+public class EmbeddedRedis {
+    private static final int EMBEDDED_PORT = 16380;
+
+    private static RedisServer redisServer;
+    private static StringRedisTemplate redisTemplate;
+    private static LettuceConnectionFactory reactiveConnectionFactory;
+
+    public static synchronized StringRedisTemplate redisTemplate() {
+        if (redisTemplate == null) {
+            JedisConnectionFactory connectionFactory = new JedisConnectionFactory(configuration());
+            connectionFactory.afterPropertiesSet();
+            redisTemplate = new StringRedisTemplate(connectionFactory);
+        }
+        return redisTemplate;
+    }
+
+    /**
+     * 连接同一个redis的lettuce连接, 用于ReactiveRedisTokenStore
+     */
+    public static synchronized LettuceConnectionFactory reactiveConnectionFactory() {
+        if (reactiveConnectionFactory == null) {
+            reactiveConnectionFactory = new LettuceConnectionFactory(configuration());
+            reactiveConnectionFactory.afterPropertiesSet();
+        }
+        return reactiveConnectionFactory;
+    }
+
+    private static RedisStandaloneConfiguration configuration() {
+        String port = System.getProperty("redis.port");
+        if (port == null) {
+            if (redisServer == null) {
+                redisServer = start();
+                Runtime.getRuntime().addShutdownHook(new Thread(redisServer::stop));
+            }
+            port = String.valueOf(EMBEDDED_PORT);
+        }
+        return new RedisStandaloneConfiguration(System.getProperty("redis.host", "localhost"), Integer.parseInt(port));
+    }
+
+    public static StringRedisTemplate flushDb() {
+        StringRedisTemplate template = redisTemplate();
+        template.execute(connection -> {
+            connection.flushDb();
+            return null;
+        }, true);
+        return template;
+    }
+
+    private static RedisServer start() {
+        try {
+            RedisServer redisServer = new RedisServer(EMBEDDED_PORT);
+            redisServer.start();
+            return redisServer;
+        } catch (Exception e) {
+            throw new IllegalStateException("启动embedded-redis失败", e);
+        }
+    }
+}
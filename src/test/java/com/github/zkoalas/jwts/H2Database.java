@@ -0,0 +1,34 @@
+package com.github.zkoalas.jwts;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+/**
+ * 测试用的h2内存数据库, MySQL兼容模式, 表结构见schema.sql
+ * 同一个jvm中只建表一次, 每个测试前用truncate清空
+ */
+public class H2Database {
+    private static final String[] TABLES = {"oauth_token", "oauth_token_key", "oauth_token_revoked", "oauth_role_permission"};
+
+    private static DriverManagerDataSource dataSource;
+
+    public static synchronized DataSource dataSource() {
+        if (dataSource == null) {
+            dataSource = new DriverManagerDataSource("jdbc:h2:mem:jwt_soul;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        }
+        return dataSource;
+    }
+
+    public static JdbcTemplate truncate() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource());
+        for (String table : TABLES) {
+            jdbcTemplate.execute("truncate table " + table);
+        }
+        return jdbcTemplate;
+    }
+}
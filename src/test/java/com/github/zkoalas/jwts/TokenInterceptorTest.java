@@ -0,0 +1,130 @@
+package com.github.zkoalas.jwts;
+
+import com.github.zkoalas.jwts.annotation.RequiresPermissions;
+import com.github.zkoalas.jwts.exception.ErrorTokenException;
+import com.github.zkoalas.jwts.exception.UnauthorizedException;
+import com.github.zkoalas.jwts.metrics.MeteredTokenStore;
+import com.github.zkoalas.jwts.metrics.TokenMetrics;
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.MemoryTokenStore;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.provider.TokenCache;
+import com.github.zkoalas.jwts.util.SubjectUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 已校验token的缓存和处理方法的权限检查
+ */
+public class TokenInterceptorTest {
+    private final MemoryTokenStore memoryTokenStore = new MemoryTokenStore();
+    private final AtomicInteger findCount = new AtomicInteger();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private TokenInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        Config.getInstance().setMaxToken(-1);
+        TokenMetrics metrics = new TokenMetrics() {
+            @Override
+            public void recordStoreOperation(String store, String operation, long nanos) {
+                if ("findToken".equals(operation)) {
+                    findCount.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void recordCacheAccess(String cache, boolean hit) {
+                if (hit) {
+                    cacheHits.incrementAndGet();
+                }
+            }
+        };
+        interceptor = new TokenInterceptor(new MeteredTokenStore(memoryTokenStore, metrics));
+        interceptor.setMetrics(metrics);
+    }
+
+    @Test
+    public void verifiedTokenIsCached() throws Exception {
+        memoryTokenStore.setTokenCache(new TokenCache());
+        Token token = memoryTokenStore.createNewToken("u", null, null, null);
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = request(token.getAccessToken());
+            assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+            assertEquals("u", ((Token) request.getAttribute(SubjectUtil.REQUEST_TOKEN_NAME)).getUserId());
+        }
+        assertEquals(1, findCount.get());
+        assertEquals(2, cacheHits.get());
+
+        // 删除后不再使用缓存
+        memoryTokenStore.removeToken("u", token.getAccessToken());
+        try {
+            interceptor.preHandle(request(token.getAccessToken()), new MockHttpServletResponse(), null);
+            fail();
+        } catch (ErrorTokenException expected) {
+        }
+        assertEquals(2, findCount.get());
+    }
+
+    @Test
+    public void withoutCacheEveryRequestFindsToken() throws Exception {
+        Token token = memoryTokenStore.createNewToken("u", null, null, null);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(interceptor.preHandle(request(token.getAccessToken()), new MockHttpServletResponse(), null));
+        }
+        assertEquals(3, findCount.get());
+        assertEquals(0, cacheHits.get());
+    }
+
+    @Test
+    public void cacheBoundedByExpireTime() throws Exception {
+        TokenCache tokenCache = new TokenCache();
+        Token token = memoryTokenStore.createNewToken("u", null, null, null);
+        tokenCache.put(token, System.currentTimeMillis() + 50);
+        assertSame(token, tokenCache.get(token.getAccessToken()));
+        Thread.sleep(100);
+        assertNull(tokenCache.get(token.getAccessToken()));
+
+        // 已过期的不缓存
+        tokenCache.put(token, System.currentTimeMillis() - 1);
+        assertNull(tokenCache.get(token.getAccessToken()));
+    }
+
+    @Test
+    public void handlerPermissionsChecked() throws Exception {
+        HandlerMethod handler = new HandlerMethod(new Controller(), Controller.class.getMethod("write"));
+        Token writer = memoryTokenStore.createNewToken("u", new String[]{"user:write"}, null, null);
+        Token reader = memoryTokenStore.createNewToken("v", new String[]{"user:read"}, null, null);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(interceptor.preHandle(request(writer.getAccessToken()), new MockHttpServletResponse(), handler));
+            try {
+                interceptor.preHandle(request(reader.getAccessToken()), new MockHttpServletResponse(), handler);
+                fail();
+            } catch (UnauthorizedException expected) {
+            }
+        }
+    }
+
+    public static class Controller {
+        @RequiresPermissions("user:write")
+        public void write() {
+        }
+    }
+
+    private static MockHttpServletRequest request(String accessToken) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("Authorization", "Bearer " + accessToken);
+        return request;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.zkoalas.jwts.event;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 合并、分批、发送失败重试和延迟启动
+ */
+public class InvalidationBusTest {
+
+    /**
+     * 收集发送的消息, failures次之前的发送抛出异常
+     */
+    private static class RecordingBus extends InvalidationBus {
+        private final List<String> messages = new ArrayList<String>();
+        private final CountDownLatch sent = new CountDownLatch(1);
+        private int failures;
+
+        RecordingBus(long flushInterval, int failures) {
+            super(flushInterval);
+            this.failures = failures;
+        }
+
+        @Override
+        protected synchronized void send(String message) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("redis unavailable");
+            }
+            messages.add(message);
+            sent.countDown();
+        }
+    }
+
+    @Test
+    public void coalescesAndBatches() {
+        RecordingBus bus = new RecordingBus(60000, 0);
+        bus.setMaxBatchSize(2);
+        bus.publishUser("u1");
+        bus.publishUser("u1");
+        bus.publishUser("u2");
+        bus.publishToken("t1");
+        bus.flush();
+        bus.close();
+
+        assertEquals(1, bus.getCoalescedCount());
+        assertEquals(2, bus.getPublishedCount());
+        assertEquals(Arrays.asList(bus.getNodeId() + "\nu u1\nu u2", bus.getNodeId() + "\nt t1"), bus.messages);
+    }
+
+    @Test
+    public void failedSendIsRequeued() {
+        RecordingBus bus = new RecordingBus(60000, 1);
+        bus.setMaxBatchSize(2);
+        bus.publishUser("u1");
+        bus.publishUser("u2");
+        bus.publishToken("t1");
+        try {
+            bus.flush();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        bus.publishUser("u3");
+        bus.close();
+
+        Set<String> entries = new HashSet<String>();
+        for (String message : bus.messages) {
+            List<String> lines = Arrays.asList(message.split("\n"));
+            entries.addAll(lines.subList(1, lines.size()));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("u u1", "u u2", "u u3", "t t1")), entries);
+    }
+
+    @Test
+    public void partialFailureRequeuesUnsentBatches() {
+        RecordingBus bus = new RecordingBus(60000, 0) {
+            private int calls;
+
+            @Override
+            protected synchronized void send(String message) {
+                if (++calls == 2) {
+                    throw new IllegalStateException("redis unavailable");
+                }
+                super.send(message);
+            }
+        };
+        bus.setMaxBatchSize(1);
+        bus.publishUser("u1");
+        bus.publishUser("u2");
+        try {
+            bus.flush();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        bus.flush();
+        bus.close();
+        assertEquals(Arrays.asList(bus.getNodeId() + "\nu u1", bus.getNodeId() + "\nu u2"), bus.messages);
+    }
+
+    @Test
+    public void schedulerStartsOnFirstPublish() throws Exception {
+        // send使用子类构造器中初始化的字段, 父类构造时不能开始发送
+        RecordingBus bus = new RecordingBus(10, 0);
+        try {
+            bus.publishToken("t1");
+            assertTrue(bus.sent.await(5, TimeUnit.SECONDS));
+        } finally {
+            bus.close();
+        }
+    }
+
+    @Test
+    public void localBusSkipsOwnMessages() {
+        LocalInvalidationBus bus1 = new LocalInvalidationBus();
+        LocalInvalidationBus bus2 = new LocalInvalidationBus(bus1);
+        List<Set<String>> received = new ArrayList<Set<String>>();
+        bus1.addListener((userIds, accessTokens) -> received.add(userIds));
+        bus2.addListener((userIds, accessTokens) -> received.add(null));
+        try {
+            bus2.publishUser("u");
+            bus2.flush();
+            assertEquals(1, received.size());
+            assertEquals(new HashSet<String>(Arrays.asList("u")), received.get(0));
+            assertEquals(1, bus1.getReceivedCount());
+            assertEquals(0, bus2.getReceivedCount());
+        } finally {
+            bus1.close();
+            bus2.close();
+        }
+    }
+}
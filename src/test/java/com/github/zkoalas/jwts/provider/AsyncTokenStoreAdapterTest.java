@@ -0,0 +1,80 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.metrics.MeteredTokenStore;
+import com.github.zkoalas.jwts.metrics.TokenMetrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 阻塞的store在线程池中执行, 线程和队列都满时立即失败
+ */
+public class AsyncTokenStoreAdapterTest {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch resume = new CountDownLatch(1);
+    private final AtomicReference<String> thread = new AtomicReference<String>();
+    private final MemoryTokenStore memoryStore = new MemoryTokenStore();
+    private final TokenStore blockingStore = new MeteredTokenStore(memoryStore, TokenMetrics.NOOP) {
+        @Override
+        public Token findToken(String userId, String access_token) {
+            thread.set(Thread.currentThread().getName());
+            started.countDown();
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.findToken(userId, access_token);
+        }
+    };
+    private final AsyncTokenStoreAdapter adapter = new AsyncTokenStoreAdapter(blockingStore, 1, 1);
+
+    @After
+    public void tearDown() {
+        resume.countDown();
+        adapter.shutdown();
+    }
+
+    @Test
+    public void runsOnPoolThread() throws Exception {
+        resume.countDown();
+        Token token = adapter.createNewToken("u", null, null, null, 3600).get();
+        assertNotNull(adapter.findToken("u", token.getAccessToken()).get());
+        assertTrue(thread.get(), thread.get().startsWith("jwt-soul-store-"));
+        assertEquals(1, adapter.findTokensByUserId("u").get().size());
+        assertEquals(Integer.valueOf(1), adapter.removeToken("u", token.getAccessToken()).get());
+    }
+
+    @Test
+    public void rejectsWhenSaturated() throws Exception {
+        Token token = memoryStore.createNewToken("u", null, null, null);
+        CompletableFuture<Token> running = adapter.findToken("u", token.getAccessToken());
+        started.await();
+        CompletableFuture<Token> queued = adapter.findToken("u", token.getAccessToken());
+        CompletableFuture<Token> rejected = adapter.findToken("u", token.getAccessToken());
+        // 调用线程不阻塞, 第三个请求直接失败
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, adapter.getRejectedCount());
+        assertEquals(1, adapter.getQueueSize());
+
+        resume.countDown();
+        assertNotNull(running.get());
+        assertNotNull(queued.get());
+    }
+}
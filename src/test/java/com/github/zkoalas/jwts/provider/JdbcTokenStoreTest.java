@@ -0,0 +1,168 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.H2Database;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 摘要模式的查询、未迁移token的兼容查询和迁移, 延迟写入的sql
+ */
+public class JdbcTokenStoreTest {
+    private JdbcTemplate jdbcTemplate;
+    private JdbcTokenStore tokenStore;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = H2Database.truncate();
+        tokenStore = new JdbcTokenStore(H2Database.dataSource());
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @Test
+    public void hashModeStoresDigestOnly() {
+        tokenStore.setHashTokens(true);
+        Token token = tokenStore.createNewToken("u", new String[]{"p"}, null, null);
+        String hash = TokenUtil.hashToken(token.getAccessToken());
+        assertEquals(hash, jdbcTemplate.queryForObject("select access_token from oauth_token", String.class));
+        assertEquals(hash, jdbcTemplate.queryForObject("select token_hash from oauth_token", String.class));
+
+        Token found = tokenStore.findToken("u", token.getAccessToken());
+        assertNotNull(found);
+        assertEquals(token.getAccessToken(), found.getAccessToken());
+        assertArrayEquals(new String[]{"p"}, found.getPermissions());
+        assertNull(tokenStore.findToken("v", token.getAccessToken()));
+
+        // findTokensByUserId返回摘要, 可用于removeToken
+        List<Token> tokens = tokenStore.findTokensByUserId("u");
+        assertEquals(hash, tokens.get(0).getAccessToken());
+        assertEquals(1, tokenStore.removeToken("u", hash));
+        assertNull(tokenStore.findToken("u", token.getAccessToken()));
+    }
+
+    @Test
+    public void legacyLookupFindsUnmigratedRows() {
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        tokenStore.setHashTokens(true);
+        assertNotNull(tokenStore.findToken("u", token.getAccessToken()));
+
+        tokenStore.setLegacyLookup(false);
+        assertNull(tokenStore.findToken("u", token.getAccessToken()));
+
+        tokenStore.setLegacyLookup(true);
+        assertEquals(1, tokenStore.removeToken("u", token.getAccessToken()));
+        assertEquals(0, countTokens());
+    }
+
+    @Test
+    public void migrationKeepsRawTokenUntilCleared() {
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        tokenStore.setHashTokens(true);
+        Token hashed = tokenStore.createNewToken("u", null, null, null);
+
+        assertEquals(1, tokenStore.migrateTokenHashes());
+        assertEquals(0, tokenStore.migrateTokenHashes());
+        assertFalse(tokenStore.isLegacyLookup());
+        assertNotNull(tokenStore.findToken("u", token.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", hashed.getAccessToken()));
+
+        // 迁移后仍可回退到完整token
+        JdbcTokenStore plain = new JdbcTokenStore(H2Database.dataSource());
+        assertNotNull(plain.findToken("u", token.getAccessToken()));
+
+        assertEquals(1, tokenStore.clearRawTokens());
+        assertEquals(0, tokenStore.clearRawTokens());
+        assertNull(plain.findToken("u", token.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", token.getAccessToken()));
+        assertEquals(0, (int) jdbcTemplate.queryForObject(
+                "select count(*) from oauth_token where access_token <> token_hash", Integer.class));
+    }
+
+    @Test
+    public void rawTokenModeLooksUpByToken() {
+        Token token = tokenStore.createNewToken("u", new String[]{"p"}, new String[]{"r"}, null);
+        assertEquals(token.getAccessToken(), jdbcTemplate.queryForObject("select access_token from oauth_token", String.class));
+        Token found = tokenStore.findToken("u", token.getAccessToken());
+        assertArrayEquals(new String[]{"r"}, found.getRoles());
+        assertEquals(1, tokenStore.findTokensByUserId("u").size());
+    }
+
+    @Test
+    public void writeBehindInsertsAndAppliesMaxToken() {
+        Config.getInstance().setMaxToken(2);
+        tokenStore.setHashTokens(true);
+        TokenWriteBehind writeBehind = new TokenWriteBehind(tokenStore::insertTokens);
+        tokenStore.setWriteBehind(writeBehind);
+        Token first = tokenStore.createNewToken("u", new String[]{"p"}, null, null);
+        Token second = tokenStore.createNewToken("u", null, null, null);
+        Token third = tokenStore.createNewToken("u", null, null, null);
+        Token other = tokenStore.createNewToken("v", null, null, null);
+        // 写入前本节点可见
+        assertEquals(0, countTokens());
+        assertArrayEquals(new String[]{"p"}, tokenStore.findToken("u", first.getAccessToken()).getPermissions());
+
+        assertEquals(4, writeBehind.flush());
+        assertEquals(3, countTokens());
+        assertNull(tokenStore.findToken("u", first.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", second.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", third.getAccessToken()));
+        assertNotNull(tokenStore.findToken("v", other.getAccessToken()));
+    }
+
+    @Test
+    public void removeBufferedTokens() {
+        TokenWriteBehind writeBehind = new TokenWriteBehind(tokenStore::insertTokens);
+        tokenStore.setWriteBehind(writeBehind);
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        tokenStore.createNewToken("v", null, null, null);
+        tokenStore.createNewToken("v", null, null, null);
+        assertEquals(1, tokenStore.removeToken("u", token.getAccessToken()));
+        assertEquals(2, tokenStore.removeTokensByUserId("v"));
+        assertEquals(0, writeBehind.flush());
+        assertEquals(0, countTokens());
+    }
+
+    @Test
+    public void removedWhileWritingIsDeleted() {
+        List<Token> removing = new ArrayList<Token>();
+        TokenWriteBehind writeBehind = new TokenWriteBehind(tokens -> {
+            int rs = tokenStore.insertTokens(tokens);
+            // 写入后、flush完成前删除
+            for (Token token : removing) {
+                assertEquals(1, tokenStore.removeToken(token.getUserId(), token.getAccessToken()));
+            }
+            return rs;
+        });
+        tokenStore.setWriteBehind(writeBehind);
+        assertNotNull(writeBehind.getRemover());
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        Token kept = tokenStore.createNewToken("u", null, null, null);
+        removing.add(token);
+
+        assertEquals(2, writeBehind.flush());
+        assertEquals(1, writeBehind.getRemovedCount());
+        assertEquals(1, countTokens());
+        assertNull(tokenStore.findToken("u", token.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", kept.getAccessToken()));
+    }
+
+    private int countTokens() {
+        return jdbcTemplate.queryForObject("select count(*) from oauth_token", Integer.class);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.H2Database;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 分批删除过期token, 以及filterExpired时忽略过期token
+ */
+public class JdbcTokenSweeperTest {
+    private JdbcTemplate jdbcTemplate;
+    private JdbcTokenStore tokenStore;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = H2Database.truncate();
+        tokenStore = new JdbcTokenStore(H2Database.dataSource());
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @Test
+    public void sweepDeletesExpiredInBatches() {
+        List<Token> live = new ArrayList<Token>();
+        for (int i = 0; i < 10; i++) {
+            Token token = store("u" + (i % 3), i % 2 == 0 ? -60 : 3600);
+            if (i % 2 == 1) {
+                live.add(token);
+            }
+        }
+        JdbcTokenSweeper sweeper = new JdbcTokenSweeper(H2Database.dataSource());
+        sweeper.setBatchSize(2);
+        assertEquals(5, sweeper.sweep());
+        assertEquals(3, sweeper.getBatchCount());
+        assertEquals(5, (int) jdbcTemplate.queryForObject("select count(*) from oauth_token", Integer.class));
+        for (Token token : live) {
+            assertNotNull(tokenStore.findToken(token.getUserId(), token.getAccessToken()));
+        }
+
+        assertEquals(0, sweeper.sweep());
+        assertEquals(5, sweeper.getReclaimedCount());
+        assertEquals(2, sweeper.getRunCount());
+    }
+
+    @Test
+    public void filterExpiredIgnoresExpiredTokens() throws Exception {
+        Config.getInstance().setMaxToken(2);
+        tokenStore.setFilterExpired(true);
+        store("u", -60);
+        store("u", -60);
+        Thread.sleep(2);
+        Token first = tokenStore.createNewToken("u", null, null, null);
+        Thread.sleep(2);
+        Token second = tokenStore.createNewToken("u", null, null, null);
+        // 淘汰时先删除过期的token, 不占用maxToken
+        assertNotNull(tokenStore.findToken("u", first.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", second.getAccessToken()));
+        assertEquals(2, tokenStore.findTokensByUserId("u").size());
+        assertEquals(2, (int) jdbcTemplate.queryForObject("select count(*) from oauth_token", Integer.class));
+
+        Token expired = store("v", -60);
+        assertEquals(0, tokenStore.findTokensByUserId("v").size());
+        tokenStore.setFilterExpired(false);
+        assertEquals(1, tokenStore.findTokensByUserId("v").size());
+        assertNull(tokenStore.findToken("w", expired.getAccessToken()));
+    }
+
+    /**
+     * @param expire 距现在的过期时长, 单位秒, 负数为已过期
+     */
+    private Token store(String userId, long expire) {
+        Token token = TokenUtil.buildToken(userId, 3600, tokenStore.getSigningKey());
+        token.setExpireTime(System.currentTimeMillis() + 1000 * expire);
+        tokenStore.storeToken(token);
+        return token;
+    }
+}
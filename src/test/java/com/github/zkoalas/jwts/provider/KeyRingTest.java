@@ -0,0 +1,133 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 按kid轮换: 新key启用后旧key在重叠时长内仍可校验, 未知kid触发刷新
+ */
+public class KeyRingTest {
+    private static final long HOUR = 3600 * 1000;
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setFastVerify(false);
+    }
+
+    @Test
+    public void latestActivatedKeySigns() {
+        long now = System.currentTimeMillis();
+        KeyRing keyRing = KeyRing.of(entry("k1", now - 2 * HOUR), entry("k2", now - HOUR), entry("k3", now + HOUR));
+        assertEquals("k2", keyRing.getActive().getKid());
+        // 已被k3取代, 在k3启用后的重叠时长内仍可校验
+        assertEquals(now + HOUR + keyRing.getOverlap() * 1000, keyRing.getActive().getValidUntil());
+    }
+
+    @Test
+    public void rotationOverlap() {
+        long now = System.currentTimeMillis();
+        KeyRing.Entry k1 = entry("k1", now - 3 * HOUR);
+        KeyRing.Entry k2 = entry("k2", now - HOUR);
+        KeyRing keyRing = KeyRing.of(k1, k2);
+        String oldToken = TokenUtil.buildToken("u", 3600, k1.getSignKey(), "k1").getAccessToken();
+        String newToken = TokenUtil.buildToken("u", 3600, k2.getSignKey(), "k2").getAccessToken();
+
+        // k2启用1小时, 重叠2小时内k1仍可校验
+        keyRing.setOverlap(2 * 3600);
+        for (boolean fastVerify : new boolean[]{false, true}) {
+            Config.getInstance().setFastVerify(fastVerify);
+            assertEquals("u", TokenUtil.parseClaims(oldToken, keyRing, null).getSubject());
+            assertEquals("u", TokenUtil.parseClaims(newToken, keyRing, null).getSubject());
+        }
+
+        keyRing.setOverlap(1800);
+        for (boolean fastVerify : new boolean[]{false, true}) {
+            Config.getInstance().setFastVerify(fastVerify);
+            try {
+                TokenUtil.parseClaims(oldToken, keyRing, null);
+                fail();
+            } catch (SignatureException expected) {
+            }
+            assertEquals("u", TokenUtil.parseClaims(newToken, keyRing, null).getSubject());
+        }
+    }
+
+    @Test
+    public void tokenWithoutKidUsesDefaultKey() {
+        Key defaultKey = TokenUtil.getKey();
+        KeyRing keyRing = KeyRing.of(entry("k1", 0));
+        String token = TokenUtil.buildToken("u", 3600, defaultKey).getAccessToken();
+        assertEquals("u", TokenUtil.parseClaims(token, keyRing, () -> defaultKey).getSubject());
+    }
+
+    @Test
+    public void unknownKidRefreshesOnce() {
+        long now = System.currentTimeMillis();
+        List<KeyRing.Entry> entries = new ArrayList<KeyRing.Entry>();
+        entries.add(entry("k1", now - HOUR));
+        KeyRing keyRing = new KeyRing(() -> new ArrayList<KeyRing.Entry>(entries));
+        assertTrue(keyRing.mayLoad("k1"));
+        assertEquals("k1", keyRing.getActive().getKid());
+        assertEquals(1, keyRing.getLoadCount());
+        assertFalse(keyRing.mayLoad("k1"));
+
+        // 其他节点新增的key, 第一次遇到时刷新
+        KeyRing.Entry k2 = entry("k2", now);
+        entries.add(k2);
+        String token = TokenUtil.buildToken("u", 3600, k2.getSignKey(), "k2").getAccessToken();
+        assertTrue(keyRing.mayLoad("k2"));
+        assertEquals("u", TokenUtil.parseClaims(token, keyRing, null).getSubject());
+        assertEquals(2, keyRing.getLoadCount());
+
+        // 最小刷新间隔内未知kid不再加载
+        try {
+            keyRing.resolve("k3", null);
+            fail();
+        } catch (SignatureException expected) {
+        }
+        assertFalse(keyRing.mayLoad("k3"));
+        assertEquals(2, keyRing.getLoadCount());
+        assertEquals(2, keyRing.getMissCount());
+    }
+
+    @Test
+    public void publicKeyOnlyVerifies() {
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        KeyRing signer = KeyRing.of(KeyRing.Entry.keyPair("r1", keyPair, 0));
+        KeyRing verifier = KeyRing.of(KeyRing.Entry.publicKey("r1", keyPair.getPublic(), 0));
+        KeyRing.Entry active = signer.getActive();
+        String token = TokenUtil.buildToken("u", 3600, active.getSignKey(), active.getKid()).getAccessToken();
+        assertEquals("u", TokenUtil.parseClaims(token, verifier, null).getSubject());
+        try {
+            verifier.getActive();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void parseExpireTime() {
+        Token token = TokenUtil.buildToken("u", 3600, TokenUtil.getKey(), "k1");
+        assertEquals(token.getExpireTime() / 1000 * 1000, TokenUtil.parseExpireTime(token.getAccessToken()).longValue());
+        assertEquals("k1", TokenUtil.parseKid(token.getAccessToken()));
+        assertEquals(null, TokenUtil.parseExpireTime("not-a-jwt"));
+    }
+
+    private static KeyRing.Entry entry(String kid, long activatedAt) {
+        return KeyRing.Entry.hmac(kid, TokenUtil.getHexKey(), activatedAt);
+    }
+}
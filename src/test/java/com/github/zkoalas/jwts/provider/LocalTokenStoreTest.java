@@ -0,0 +1,121 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import io.jsonwebtoken.Claims;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * typed claims和json subject两种模式签发的token都可以校验
+ */
+public class LocalTokenStoreTest {
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    public static class User implements BaseToken {
+        private final String userId;
+        private final String[] permissions;
+        private final String[] roles;
+
+        User(String userId, String[] permissions, String[] roles) {
+            this.userId = userId;
+            this.permissions = permissions;
+            this.roles = roles;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String[] getPermissions() {
+            return permissions;
+        }
+
+        public String[] getRoles() {
+            return roles;
+        }
+    }
+
+    @Test
+    public void typedClaims() {
+        LocalTokenStore tokenStore = new LocalTokenStore(SECRET, "nonce", 3600L);
+        tokenStore.setTypedClaims(true);
+        Token token = tokenStore.createNewToken(new User("u", new String[]{"user:read"}, new String[]{"admin"}));
+        Claims claims = TokenUtil.parseClaims(token.getAccessToken(), tokenStore.getSigningKey());
+        assertEquals("u", claims.getSubject());
+        assertTrue(ClaimsToken.isTypedClaims(claims));
+
+        Token found = tokenStore.findToken(claims, token.getAccessToken());
+        assertTrue(found instanceof ClaimsToken);
+        assertSame(claims, ((ClaimsToken) found).claims());
+        assertEquals("u", found.getUserId());
+        assertArrayEquals(new String[]{"user:read"}, found.getPermissions());
+        assertArrayEquals(new String[]{"admin"}, found.getRoles());
+        assertEquals(claims.getExpiration().getTime(), found.getExpireTime().longValue());
+    }
+
+    @Test
+    public void jsonSubjectStillVerifies() {
+        LocalTokenStore tokenStore = new LocalTokenStore(SECRET, "nonce", 3600L);
+        Token token = tokenStore.createNewToken(new User("u", new String[]{"user:read"}, null));
+        Claims claims = TokenUtil.parseClaims(token.getAccessToken(), tokenStore.getSigningKey());
+        assertFalse(ClaimsToken.isTypedClaims(claims));
+
+        // 开启typed claims后仍可校验之前签发的token
+        tokenStore.setTypedClaims(true);
+        Token found = tokenStore.findToken(claims, token.getAccessToken());
+        assertFalse(found instanceof ClaimsToken);
+        assertEquals("u", found.getUserId());
+        assertArrayEquals(new String[]{"user:read"}, found.getPermissions());
+        assertEquals(token.getAccessToken(), found.getAccessToken());
+    }
+
+    @Test
+    public void permissionsLoadedOnFirstRead() {
+        LocalTokenStore tokenStore = new LocalTokenStore(SECRET, "nonce", 3600L);
+        tokenStore.setTypedClaims(true);
+        Token token = tokenStore.createNewToken(new User("u", new String[]{"a", "b"}, null));
+        Claims claims = TokenUtil.parseClaims(token.getAccessToken(), tokenStore.getSigningKey());
+        ClaimsToken found = (ClaimsToken) tokenStore.findToken(claims, token.getAccessToken());
+        String[] permissions = found.getPermissions();
+        assertSame(permissions, found.getPermissions());
+
+        found.setPermissions(new String[]{"c"});
+        assertArrayEquals(new String[]{"c"}, found.getPermissions());
+        assertArrayEquals(new String[0], found.getRoles());
+        assertNull(found.getRoleIds());
+    }
+
+    @Test
+    public void serializesAsPlainToken() throws Exception {
+        LocalTokenStore tokenStore = new LocalTokenStore(SECRET, "nonce", 3600L);
+        tokenStore.setTypedClaims(true);
+        Token token = tokenStore.createNewToken(new User("u", new String[]{"a"}, new String[]{"r"}));
+        Claims claims = TokenUtil.parseClaims(token.getAccessToken(), tokenStore.getSigningKey());
+        Token found = tokenStore.findToken(claims, token.getAccessToken());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(found);
+        }
+        Object copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = in.readObject();
+        }
+        assertEquals(Token.class, copy.getClass());
+        assertEquals("u", ((Token) copy).getUserId());
+        assertArrayEquals(new String[]{"a"}, ((Token) copy).getPermissions());
+        assertArrayEquals(new String[]{"r"}, ((Token) copy).getRoles());
+        assertEquals(found.getExpireTime(), ((Token) copy).getExpireTime());
+    }
+}
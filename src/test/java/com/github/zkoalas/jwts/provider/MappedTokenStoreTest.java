@@ -0,0 +1,160 @@
+package com.github.zkoalas.jwts.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 重启恢复、crc校验、压缩和maxToken淘汰
+ */
+public class MappedTokenStoreTest {
+    private static final int SLOTS = 16;
+    private static final int HEADER_SIZE = 512;
+    private static final int SLOT_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), "tokens.dat");
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @Test
+    public void recoversAfterRestart() {
+        MappedTokenStore tokenStore = new MappedTokenStore(file, SLOTS, 4096);
+        Token token = tokenStore.createNewToken("u", new String[]{"p"}, new String[]{"r"}, null);
+        Token removed = tokenStore.createNewToken("u", null, null, null);
+        tokenStore.removeToken("u", removed.getAccessToken());
+        tokenStore.flush();
+        String tokenKey = tokenStore.getTokenKey();
+
+        MappedTokenStore reopened = new MappedTokenStore(file);
+        assertEquals(tokenKey, reopened.getTokenKey());
+        Token found = reopened.findToken("u", token.getAccessToken());
+        assertNotNull(found);
+        assertArrayEquals(new String[]{"p"}, found.getPermissions());
+        assertEquals(token.getExpireTime(), found.getExpireTime());
+        assertNull(reopened.findToken("u", removed.getAccessToken()));
+        assertEquals(1, reopened.findTokensByUserId("u").size());
+        assertEquals(0, reopened.getCorruptCount());
+    }
+
+    @Test
+    public void rejectsCorruptSlot() throws Exception {
+        MappedTokenStore tokenStore = new MappedTokenStore(file, SLOTS, 4096);
+        Token token = tokenStore.createNewToken("u", new String[]{"p"}, null, null);
+        tokenStore.flush();
+        tokenStore.compact();  // 解除映射后再修改文件
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long payload = HEADER_SIZE + (long) SLOTS * SLOT_SIZE;
+            raf.seek(payload);
+            int b = raf.read();
+            raf.seek(payload);
+            raf.write(b ^ 0xff);
+        }
+        MappedTokenStore reopened = new MappedTokenStore(file);
+        assertEquals(1, reopened.getCorruptCount());
+        assertNull(reopened.findToken("u", token.getAccessToken()));
+        assertEquals(0, reopened.size());
+    }
+
+    @Test
+    public void compactReclaimsAndGrows() {
+        MappedTokenStore tokenStore = new MappedTokenStore(file, SLOTS, 1024);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < 40; i++) {
+            tokens.add(tokenStore.createNewToken("u" + (i % 4), new String[]{"p" + i}, null, null));
+        }
+        assertTrue(tokenStore.getCompactCount() > 0);
+        for (Token token : tokens) {
+            assertNotNull(token.getAccessToken(), tokenStore.findToken(token.getUserId(), token.getAccessToken()));
+        }
+
+        for (Token token : tokens.subList(0, 30)) {
+            tokenStore.removeToken(token.getUserId(), token.getAccessToken());
+        }
+        assertEquals(30, tokenStore.compact());
+        assertEquals(10, tokenStore.size());
+        for (Token token : tokens.subList(30, 40)) {
+            Token found = tokenStore.findToken(token.getUserId(), token.getAccessToken());
+            assertNotNull(found);
+            assertArrayEquals(token.getPermissions(), found.getPermissions());
+        }
+
+        MappedTokenStore reopened = new MappedTokenStore(file);
+        assertEquals(10, reopened.size());
+        assertNotNull(reopened.findToken("u3", tokens.get(39).getAccessToken()));
+    }
+
+    @Test
+    public void updateCompactsBeforeWriting() {
+        MappedTokenStore tokenStore = new MappedTokenStore(file, SLOTS, 1024);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < 3; i++) {
+            tokens.add(tokenStore.createNewToken("u", new String[]{"p"}, null, null));
+        }
+        // 过期token在压缩时被丢弃, 剩余槽位的顺序会变化
+        Token expired = tokens.get(0);
+        expired.setExpireTime(System.currentTimeMillis() - 1000);
+        tokenStore.storeToken(expired);
+        long compactCount = tokenStore.getCompactCount();
+
+        String[] permissions = new String[50];
+        for (int i = 0; i < permissions.length; i++) {
+            permissions[i] = "permission-" + i;
+        }
+        assertEquals(2, tokenStore.updatePermissionsByUserId("u", permissions));
+        assertTrue(tokenStore.getCompactCount() > compactCount);
+        for (Token token : tokens.subList(1, 3)) {
+            Token found = tokenStore.findToken("u", token.getAccessToken());
+            assertNotNull(found);
+            assertEquals(token.getCreateTime(), found.getCreateTime());
+            assertArrayEquals(permissions, found.getPermissions());
+        }
+    }
+
+    @Test
+    public void maxTokenEvictsEarliest() throws Exception {
+        Config.getInstance().setMaxToken(2);
+        MappedTokenStore tokenStore = new MappedTokenStore(file, SLOTS, 4096);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < 3; i++) {
+            tokens.add(tokenStore.createNewToken("u", null, null, null));
+            Thread.sleep(2);
+        }
+        assertNull(tokenStore.findToken("u", tokens.get(0).getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", tokens.get(1).getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", tokens.get(2).getAccessToken()));
+        assertEquals(1, tokenStore.getEvictedCount());
+
+        // 重启后仍按签发时间淘汰
+        MappedTokenStore reopened = new MappedTokenStore(file);
+        Token token = reopened.createNewToken("u", null, null, null);
+        assertNull(reopened.findToken("u", tokens.get(1).getAccessToken()));
+        assertNotNull(reopened.findToken("u", tokens.get(2).getAccessToken()));
+        assertNotNull(reopened.findToken("u", token.getAccessToken()));
+    }
+}
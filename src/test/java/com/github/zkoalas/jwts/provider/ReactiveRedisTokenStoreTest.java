@@ -0,0 +1,97 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.EmbeddedRedis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 与RedisTokenStore使用相同的数据结构, 两者签发的token可以互相查询和删除
+ */
+public class ReactiveRedisTokenStoreTest {
+    private StringRedisTemplate redisTemplate;
+    private RedisTokenStore tokenStore;
+    private ReactiveRedisTokenStore reactiveStore;
+
+    @Before
+    public void setUp() {
+        redisTemplate = EmbeddedRedis.flushDb();
+        tokenStore = new RedisTokenStore(redisTemplate);
+        reactiveStore = new ReactiveRedisTokenStore(tokenStore, EmbeddedRedis.reactiveConnectionFactory());
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @Test
+    public void sharesLayoutWithBlockingStore() throws Exception {
+        Token token = reactiveStore.createNewToken("u", new String[]{"p"}, new String[]{"r"}, null, 3600).get();
+        Token found = tokenStore.findToken("u", token.getAccessToken());
+        assertNotNull(found);
+        assertArrayEquals(new String[]{"p"}, found.getPermissions());
+
+        Token blocking = tokenStore.createNewToken("u", new String[]{"q"}, null, null);
+        found = reactiveStore.findToken("u", blocking.getAccessToken()).get();
+        assertNotNull(found);
+        assertArrayEquals(new String[]{"q"}, found.getPermissions());
+        assertEquals(blocking.getExpireTime(), found.getExpireTime());
+        assertEquals(2, reactiveStore.findTokensByUserId("u").get().size());
+        assertNull(reactiveStore.findToken("v", blocking.getAccessToken()).get());
+    }
+
+    @Test
+    public void maxTokenEvictsEarliestIssued() throws Exception {
+        Config.getInstance().setMaxToken(2);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < 3; i++) {
+            tokens.add(reactiveStore.createNewToken("u", null, null, null, 3600).get());
+            Thread.sleep(2);
+        }
+        assertNull(reactiveStore.findToken("u", tokens.get(0).getAccessToken()).get());
+        assertNotNull(reactiveStore.findToken("u", tokens.get(2).getAccessToken()).get());
+        assertEquals(2, tokenStore.findTokensByUserId("u").size());
+    }
+
+    @Test
+    public void removeAndUpdate() throws Exception {
+        Token token = reactiveStore.createNewToken("u", new String[]{"p"}, null, null, 3600).get();
+        reactiveStore.createNewToken("u", new String[]{"p"}, null, null, 3600).get();
+        assertEquals(Integer.valueOf(1), reactiveStore.updatePermissionsByUserId("u", new String[]{"x"}).get());
+        assertArrayEquals(new String[]{"x"}, reactiveStore.findToken("u", token.getAccessToken()).get().getPermissions());
+
+        assertEquals(Integer.valueOf(1), reactiveStore.removeToken("u", token.getAccessToken()).get());
+        assertEquals(Integer.valueOf(0), reactiveStore.removeToken("u", token.getAccessToken()).get());
+        assertEquals(Integer.valueOf(1), reactiveStore.removeTokensByUserId("u").get());
+        assertTrue(reactiveStore.findTokensByUserId("u").get().isEmpty());
+    }
+
+    @Test
+    public void legacyLookup() throws Exception {
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", "legacy-1");
+        redisTemplate.opsForSet().add(RedisTokenStore.KEY_PRE_PERM + "u", "p");
+        Token found = reactiveStore.findToken("u", "legacy-1").get();
+        assertNotNull(found);
+        assertArrayEquals(new String[]{"p"}, found.getPermissions());
+
+        tokenStore.setLegacyLookup(false);
+        assertNull(reactiveStore.findToken("u", "legacy-1").get());
+    }
+
+    @Test
+    public void signingKeyMatchesBlockingStore() throws Exception {
+        assertEquals(tokenStore.getSigningKey(), reactiveStore.getSigningKey().get());
+    }
+}
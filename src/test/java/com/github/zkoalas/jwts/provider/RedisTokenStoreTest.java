@@ -0,0 +1,285 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.EmbeddedRedis;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 存储、淘汰和删除脚本在redis中的行为, 以及旧版本key的兼容
+ */
+public class RedisTokenStoreTest {
+    private StringRedisTemplate redisTemplate;
+    private RedisTokenStore tokenStore;
+
+    @Before
+    public void setUp() {
+        redisTemplate = EmbeddedRedis.flushDb();
+        tokenStore = new RedisTokenStore(redisTemplate);
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @Test
+    public void findAndRemove() {
+        Token token = tokenStore.createNewToken("u", new String[]{"p1", "p2"}, new String[]{"r"}, new String[]{"1"});
+        Token found = tokenStore.findToken("u", token.getAccessToken());
+        assertNotNull(found);
+        assertEquals(token.getExpireTime(), found.getExpireTime());
+        assertEquals(token.getCreateTime(), found.getCreateTime());
+        assertEquals(set("p1", "p2"), set(found.getPermissions()));
+        assertArrayEquals(new String[]{"r"}, found.getRoles());
+        assertNull(tokenStore.findToken("v", token.getAccessToken()));
+
+        assertEquals(1, tokenStore.removeToken("u", token.getAccessToken()));
+        assertEquals(0, tokenStore.removeToken("u", token.getAccessToken()));
+        assertNull(tokenStore.findToken("u", token.getAccessToken()));
+    }
+
+    @Test
+    public void maxTokenEvictsEarliestIssued() throws Exception {
+        Config.getInstance().setMaxToken(2);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < 4; i++) {
+            tokens.add(tokenStore.createNewToken("u", null, null, null));
+            Thread.sleep(2);
+        }
+        assertNull(tokenStore.findToken("u", tokens.get(0).getAccessToken()));
+        assertNull(tokenStore.findToken("u", tokens.get(1).getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", tokens.get(2).getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", tokens.get(3).getAccessToken()));
+        assertEquals(2, tokenStore.findTokensByUserId("u").size());
+        assertEquals(Long.valueOf(2), redisTemplate.opsForZSet().zCard(RedisTokenStore.userKey(RedisTokenStore.KEY_PRE_ISSUED, "u")));
+    }
+
+    @Test
+    public void concurrentIssueKeepsMaxToken() throws Exception {
+        Config.getInstance().setMaxToken(3);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Token>> futures = new ArrayList<Future<Token>>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(executor.submit(() -> tokenStore.createNewToken("u", new String[]{"p"}, null, null)));
+            }
+            for (Future<Token> future : futures) {
+                assertNotNull(future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // 每次签发和淘汰在同一个脚本中, 并发签发后不会超过maxToken
+        List<Token> tokens = tokenStore.findTokensByUserId("u");
+        assertEquals(3, tokens.size());
+        for (Token token : tokens) {
+            assertArrayEquals(new String[]{"p"}, tokenStore.findToken("u", token.getAccessToken()).getPermissions());
+        }
+        assertEquals(Long.valueOf(3), redisTemplate.opsForZSet().zCard(RedisTokenStore.userKey(RedisTokenStore.KEY_PRE_ISSUED, "u")));
+    }
+
+    @Test
+    public void batchIssueAppliesMaxTokenPerUser() {
+        Config.getInstance().setMaxToken(1);
+        Token first = tokenStore.createNewToken("u", null, null, null);
+        List<Token> tokens = tokenStore.createNewTokens(Arrays.asList("u", "v"), null, null, null, 3600);
+        assertNull(tokenStore.findToken("u", first.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", tokens.get(0).getAccessToken()));
+        assertNotNull(tokenStore.findToken("v", tokens.get(1).getAccessToken()));
+        assertEquals(1, tokenStore.findTokensByUserId("u").size());
+    }
+
+    @Test
+    public void expiredTokensEvictedFirst() {
+        long now = System.currentTimeMillis();
+        Token oldest = token("u", now + 60000, now - 3000);
+        Token expired = token("u", now - 1000, now - 2000);
+        tokenStore.storeToken(oldest);
+        tokenStore.storeToken(expired);
+        Config.getInstance().setMaxToken(2);
+
+        Token newest = tokenStore.createNewToken("u", null, null, null);
+        assertNotNull(tokenStore.findToken("u", oldest.getAccessToken()));
+        assertNotNull(tokenStore.findToken("u", newest.getAccessToken()));
+        assertNull(redisTemplate.opsForZSet().score(RedisTokenStore.userKey(RedisTokenStore.KEY_PRE_TOKENS, "u"), expired.getAccessToken()));
+    }
+
+    @Test
+    public void expiredTokenNotFound() {
+        long now = System.currentTimeMillis();
+        Token expired = token("u", now - 1000, now - 2000);
+        Token valid = token("u", now + 60000, now);
+        tokenStore.storeTokens(Arrays.asList(expired, valid));
+        assertNull(tokenStore.findToken("u", expired.getAccessToken()));
+        List<Token> tokens = tokenStore.findTokensByUserId("u");
+        assertEquals(1, tokens.size());
+        assertEquals(valid.getAccessToken(), tokens.get(0).getAccessToken());
+    }
+
+    @Test
+    public void keysExpireWithLastToken() {
+        tokenStore.setExpireKeys(true);
+        Token first = tokenStore.createNewToken("u", new String[]{"p"}, null, null, 100);
+        Token last = tokenStore.createNewToken("u", new String[]{"p"}, null, null, 200);
+        for (String key : RedisTokenStore.userKeys("u").subList(0, 2)) {
+            long ttl = redisTemplate.getExpire(key, TimeUnit.SECONDS);
+            assertTrue(key + " " + ttl, ttl > 150 && ttl <= 200);
+        }
+        tokenStore.removeToken("u", last.getAccessToken());
+        long ttl = redisTemplate.getExpire(RedisTokenStore.userKey(RedisTokenStore.KEY_PRE_PERM, "u"), TimeUnit.SECONDS);
+        assertTrue(String.valueOf(ttl), ttl > 50 && ttl <= 100);
+        tokenStore.removeToken("u", first.getAccessToken());
+        for (String key : RedisTokenStore.userKeys("u")) {
+            assertFalse(key, redisTemplate.hasKey(key));
+        }
+    }
+
+    @Test
+    public void batchLargerThanPipeline() {
+        List<String> userIds = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            userIds.add("u" + i);
+        }
+        List<Token> tokens = tokenStore.createNewTokens(userIds, new String[]{"p"}, null, null, 3600);
+        assertEquals(300, tokens.size());
+        assertNotNull(tokenStore.findToken("u299", tokens.get(299).getAccessToken()));
+        assertEquals(300, tokenStore.removeTokens(tokens));
+        assertNull(tokenStore.findToken("u0", tokens.get(0).getAccessToken()));
+    }
+
+    @Test
+    public void removeCountsRemovedTokens() {
+        long now = System.currentTimeMillis();
+        tokenStore.storeToken(token("u", now - 1000, now - 2000));
+        tokenStore.createNewToken("u", null, null, null);
+        tokenStore.createNewToken("u", null, null, null);
+        tokenStore.createNewToken("v", null, null, null);
+        assertEquals(2, tokenStore.removeTokensByUserId("u"));
+        assertEquals(0, tokenStore.removeTokensByUserId("u"));
+
+        tokenStore.createNewToken("u", null, null, null);
+        assertEquals(2, tokenStore.removeTokensByUserIds(Arrays.asList("u", "v", "w")));
+        assertTrue(tokenStore.findTokensByUserId("v").isEmpty());
+    }
+
+    @Test
+    public void removeCountsLegacyTokensOnce() {
+        tokenStore.setLegacyWrites(true);
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        tokenStore.createNewToken("u", null, null, null);
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", "legacy-1");
+        assertEquals(1, tokenStore.removeToken("u", token.getAccessToken()));
+        assertEquals(1, tokenStore.removeToken("u", "legacy-1"));
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", "legacy-2");
+        assertEquals(2, tokenStore.removeTokensByUserId("u"));
+        assertFalse(redisTemplate.hasKey(RedisTokenStore.KEY_PRE_TOKEN + "u"));
+    }
+
+    @Test
+    public void legacyLookup() {
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", "legacy-1");
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", "legacy-2");
+        redisTemplate.opsForSet().add(RedisTokenStore.KEY_PRE_PERM + "u", "p");
+        Token current = tokenStore.createNewToken("u", new String[]{"q"}, null, null);
+
+        Token found = tokenStore.findToken("u", "legacy-1");
+        assertNotNull(found);
+        assertArrayEquals(new String[]{"p"}, found.getPermissions());
+        assertEquals(3, tokenStore.findTokensByUserId("u").size());
+
+        tokenStore.updatePermissionsByUserId("u", new String[]{"x"});
+        assertArrayEquals(new String[]{"x"}, tokenStore.findToken("u", "legacy-2").getPermissions());
+        assertArrayEquals(new String[]{"x"}, tokenStore.findToken("u", current.getAccessToken()).getPermissions());
+
+        assertEquals(1, tokenStore.removeToken("u", "legacy-1"));
+        assertNull(tokenStore.findToken("u", "legacy-1"));
+
+        tokenStore.setLegacyLookup(false);
+        assertNull(tokenStore.findToken("u", "legacy-2"));
+        assertEquals(1, tokenStore.findTokensByUserId("u").size());
+    }
+
+    @Test
+    public void legacyWrites() {
+        Config.getInstance().setMaxToken(2);
+        tokenStore.setLegacyWrites(true);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < 3; i++) {
+            tokens.add(tokenStore.createNewToken("u", new String[]{"p"}, null, null));
+        }
+        // 未升级的节点读取的结构
+        assertEquals(Arrays.asList(tokens.get(1).getAccessToken(), tokens.get(2).getAccessToken()),
+                redisTemplate.opsForList().range(RedisTokenStore.KEY_PRE_TOKEN + "u", 0, -1));
+        assertEquals(set("p"), redisTemplate.opsForSet().members(RedisTokenStore.KEY_PRE_PERM + "u"));
+
+        tokenStore.removeToken("u", tokens.get(2).getAccessToken());
+        assertEquals(Arrays.asList(tokens.get(1).getAccessToken()),
+                redisTemplate.opsForList().range(RedisTokenStore.KEY_PRE_TOKEN + "u", 0, -1));
+        tokenStore.removeTokensByUserId("u");
+        assertFalse(redisTemplate.hasKey(RedisTokenStore.KEY_PRE_TOKEN + "u"));
+    }
+
+    @Test
+    public void migrateLegacyTokens() {
+        String legacy1 = tokenStore.buildToken("u", 3600).getAccessToken();
+        Token token2 = tokenStore.buildToken("u", 7200);
+        String legacy2 = token2.getAccessToken();
+        String expired = tokenStore.buildToken("u", -60).getAccessToken();
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", expired);
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", legacy1);
+        redisTemplate.opsForList().rightPush(RedisTokenStore.KEY_PRE_TOKEN + "u", legacy2);
+        redisTemplate.opsForSet().add(RedisTokenStore.KEY_PRE_ROLE + "u", "r");
+
+        assertEquals(1, tokenStore.migrateLegacyTokens());
+        // 过期时间取jwt的exp, 精确到秒
+        String tokensKey = RedisTokenStore.userKey(RedisTokenStore.KEY_PRE_TOKENS, "u");
+        assertEquals(token2.getExpireTime() / 1000 * 1000, redisTemplate.opsForZSet().score(tokensKey, legacy2).longValue());
+        assertNull(redisTemplate.opsForZSet().score(tokensKey, expired));
+        assertNull(tokenStore.findToken("u", expired));
+        assertFalse(tokenStore.isLegacyLookup());
+        assertFalse(redisTemplate.hasKey(RedisTokenStore.KEY_PRE_TOKEN + "u"));
+        assertFalse(redisTemplate.hasKey(RedisTokenStore.KEY_PRE_ROLE + "u"));
+        Token found = tokenStore.findToken("u", legacy2);
+        assertNotNull(found);
+        assertArrayEquals(new String[]{"r"}, found.getRoles());
+        assertEquals(0, tokenStore.migrateLegacyTokens());
+
+        // 迁移的token视为最早签发, 先于新token淘汰
+        Config.getInstance().setMaxToken(2);
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        assertNull(tokenStore.findToken("u", legacy1));
+        assertNotNull(tokenStore.findToken("u", legacy2));
+        assertNotNull(tokenStore.findToken("u", token.getAccessToken()));
+    }
+
+    private static Token token(String userId, long expireTime, long createTime) {
+        Token token = TokenUtil.buildToken(userId, 3600, TokenUtil.getKey());
+        token.setExpireTime(expireTime);
+        token.setCreateTime(createTime);
+        return token;
+    }
+
+    private static HashSet<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+}
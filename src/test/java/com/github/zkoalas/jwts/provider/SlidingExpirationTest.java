@@ -0,0 +1,105 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 延长间隔、jwt的exp上限、不修改缓存的token和批量写入
+ */
+public class SlidingExpirationTest {
+    private final List<Token> written = new ArrayList<Token>();
+    private boolean failing;
+    private final SlidingExpiration slidingExpiration = new SlidingExpiration(tokens -> {
+        if (failing) {
+            throw new IllegalStateException("db down");
+        }
+        written.addAll(tokens);
+        return tokens.size();
+    }, 600);
+
+    @Test
+    public void extendsOncePerWindow() {
+        Token token = token(3600, 60);
+        long expireTime = token.getExpireTime();
+        slidingExpiration.touch(token);
+        slidingExpiration.touch(token);
+        assertEquals(1, slidingExpiration.getPendingCount());
+        // 缓存中的token不修改
+        assertEquals(expireTime, (long) token.getExpireTime());
+
+        assertEquals(1, slidingExpiration.flush());
+        assertEquals(1, written.size());
+        assertTrue(written.get(0).getExpireTime() > expireTime);
+        assertEquals(written.get(0).getExpireTime(), slidingExpiration.getExtendedExpireTime(token.getAccessToken()));
+
+        // 写入后仍按已延长的时间判断
+        slidingExpiration.touch(token);
+        assertEquals(0, slidingExpiration.getPendingCount());
+    }
+
+    @Test
+    public void withinWindowNotExtended() {
+        Token token = token(3600, 600);
+        slidingExpiration.touch(token);
+        assertEquals(0, slidingExpiration.getPendingCount());
+        assertNull(slidingExpiration.getExtendedExpireTime(token.getAccessToken()));
+    }
+
+    @Test
+    public void cappedAtJwtExpire() {
+        Token token = token(300, 60);
+        long exp = TokenUtil.parseExpireTime(token.getAccessToken());
+        slidingExpiration.touch(token);
+        slidingExpiration.flush();
+        assertEquals(exp, (long) written.get(0).getExpireTime());
+
+        // 达到exp后不再延长
+        slidingExpiration.setWindow(0);
+        slidingExpiration.touch(token);
+        assertEquals(0, slidingExpiration.getPendingCount());
+    }
+
+    @Test
+    public void maxPendingDropsExtensions() {
+        slidingExpiration.setMaxPending(1);
+        slidingExpiration.touch(token(3600, 60));
+        Token dropped = token(3600, 60);
+        slidingExpiration.touch(dropped);
+        assertEquals(1, slidingExpiration.getPendingCount());
+        assertEquals(1, slidingExpiration.getDroppedCount());
+        assertNull(slidingExpiration.getExtendedExpireTime(dropped.getAccessToken()));
+    }
+
+    @Test
+    public void flushBatchesAndCountsFailures() {
+        slidingExpiration.setBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            slidingExpiration.touch(token(3600, 60));
+        }
+        assertEquals(5, slidingExpiration.flush());
+        assertEquals(5, slidingExpiration.getExtendedCount());
+
+        failing = true;
+        slidingExpiration.touch(token(3600, 60));
+        assertEquals(0, slidingExpiration.flush());
+        assertEquals(1, slidingExpiration.getFailedCount());
+        assertEquals(2, slidingExpiration.getFlushCount());
+    }
+
+    /**
+     * @param expire    jwt的有效期, 单位秒
+     * @param idleTime store中剩余的空闲时间, 单位秒
+     */
+    private static Token token(long expire, long idleTime) {
+        Token token = TokenUtil.buildToken("u", expire, TokenUtil.getKey());
+        token.setExpireTime(System.currentTimeMillis() + 1000 * idleTime);
+        return token;
+    }
+}
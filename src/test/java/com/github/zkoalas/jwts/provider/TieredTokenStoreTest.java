@@ -0,0 +1,185 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.event.LocalInvalidationBus;
+import com.github.zkoalas.jwts.metrics.MeteredTokenStore;
+import com.github.zkoalas.jwts.metrics.TokenMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 回填与删除并发时, 已删除的token不能留在上层
+ */
+public class TieredTokenStoreTest {
+    private final MemoryTokenStore upperStore = new MemoryTokenStore();
+    private final MemoryTokenStore recordStore = new MemoryTokenStore();
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        Config.getInstance().setMaxToken(-1);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void readThroughPopulates() {
+        TieredTokenStore store = new TieredTokenStore(new TieredTokenStore.Tier("upper", upperStore),
+                new TieredTokenStore.Tier("record", recordStore));
+        Token token = recordStore.createNewToken("u", null, null, null);
+        assertNotNull(store.findToken("u", token.getAccessToken()));
+        assertNotNull(upperStore.findToken("u", token.getAccessToken()));
+    }
+
+    @Test
+    public void populateAfterRemoveIsUndone() throws Exception {
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        // 读到持久层的token后暂停, 等删除完成再回填
+        TokenStore pausing = new MeteredTokenStore(recordStore, TokenMetrics.NOOP) {
+            @Override
+            public Token findToken(String userId, String access_token) {
+                Token token = super.findToken(userId, access_token);
+                read.countDown();
+                await(resume);
+                return token;
+            }
+        };
+        TieredTokenStore.Tier upper = new TieredTokenStore.Tier("upper", upperStore);
+        TieredTokenStore store = new TieredTokenStore(upper, new TieredTokenStore.Tier("record", pausing));
+        Token token = recordStore.createNewToken("u", null, null, null);
+
+        Future<Token> reader = executor.submit(() -> store.findToken("u", token.getAccessToken()));
+        read.await();
+        store.removeToken("u", token.getAccessToken());
+        resume.countDown();
+
+        assertNotNull(reader.get());
+        assertEquals(1, upper.getPopulateCount());
+        assertNull(upperStore.findToken("u", token.getAccessToken()));
+        assertNull(store.findToken("u", token.getAccessToken()));
+    }
+
+    @Test
+    public void noPopulateWhileRemoving() throws Exception {
+        CountDownLatch removing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        // 上层删除后暂停, 此时持久层还有token
+        TokenStore pausing = new MeteredTokenStore(upperStore, TokenMetrics.NOOP) {
+            @Override
+            public int removeToken(String userId, String access_token) {
+                int rs = super.removeToken(userId, access_token);
+                removing.countDown();
+                await(resume);
+                return rs;
+            }
+        };
+        TieredTokenStore.Tier upper = new TieredTokenStore.Tier("upper", pausing);
+        TieredTokenStore store = new TieredTokenStore(upper, new TieredTokenStore.Tier("record", recordStore));
+        Token token = recordStore.createNewToken("u", null, null, null);
+
+        Future<Integer> remover = executor.submit(() -> store.removeToken("u", token.getAccessToken()));
+        removing.await();
+        assertNotNull(store.findToken("u", token.getAccessToken()));
+        assertEquals(0, upper.getPopulateCount());
+        resume.countDown();
+        remover.get();
+
+        assertNull(upperStore.findToken("u", token.getAccessToken()));
+        Token next = recordStore.createNewToken("u", null, null, null);
+        assertNotNull(store.findToken("u", next.getAccessToken()));
+        assertNotNull(upperStore.findToken("u", next.getAccessToken()));
+    }
+
+    @Test
+    public void populatedTokensUseTierTtl() {
+        TieredTokenStore store = new TieredTokenStore(new TieredTokenStore.Tier("upper", upperStore),
+                new TieredTokenStore.Tier("record", recordStore));
+        Token token = recordStore.createNewToken("u", null, null, null);
+        long maxExpireTime = System.currentTimeMillis() + 1000 * TieredTokenStore.DEFAULT_TIER_TTL;
+        store.findToken("u", token.getAccessToken());
+        assertTrue(upperStore.findToken("u", token.getAccessToken()).getExpireTime() <= maxExpireTime + 1000);
+        assertEquals(token.getExpireTime(), recordStore.findToken("u", token.getAccessToken()).getExpireTime());
+    }
+
+    @Test
+    public void sharedUpperTierClearedAfterRecordDelete() throws Exception {
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        // 节点2清除上层后、删除持久层前暂停, 节点1此时读到持久层的token并回填共享的上层
+        TokenStore pausing = new MeteredTokenStore(recordStore, TokenMetrics.NOOP) {
+            @Override
+            public int removeToken(String userId, String access_token) {
+                deleting.countDown();
+                await(resume);
+                return super.removeToken(userId, access_token);
+            }
+        };
+        TieredTokenStore node1 = new TieredTokenStore(new TieredTokenStore.Tier("upper", upperStore),
+                new TieredTokenStore.Tier("record", recordStore));
+        TieredTokenStore node2 = new TieredTokenStore(new TieredTokenStore.Tier("upper", upperStore),
+                new TieredTokenStore.Tier("record", pausing));
+        Token token = recordStore.createNewToken("u", null, null, null);
+
+        Future<Integer> remover = executor.submit(() -> node2.removeToken("u", token.getAccessToken()));
+        deleting.await();
+        assertNotNull(node1.findToken("u", token.getAccessToken()));
+        assertNotNull(upperStore.findToken("u", token.getAccessToken()));
+        resume.countDown();
+        assertEquals(Integer.valueOf(1), remover.get());
+
+        assertNull(upperStore.findToken("u", token.getAccessToken()));
+        assertNull(node1.findToken("u", token.getAccessToken()));
+    }
+
+    @Test
+    public void logoutClearsOtherNodesCache() {
+        LocalInvalidationBus bus1 = new LocalInvalidationBus();
+        LocalInvalidationBus bus2 = new LocalInvalidationBus(bus1);
+        try {
+            TieredTokenStore node1 = new TieredTokenStore(new TieredTokenStore.Tier("record", recordStore));
+            TieredTokenStore node2 = new TieredTokenStore(new TieredTokenStore.Tier("record", recordStore));
+            node1.setTokenCache(new TokenCache());
+            node2.setTokenCache(new TokenCache());
+            node1.setInvalidationBus(bus1);
+            node2.setInvalidationBus(bus2);
+
+            Token token = node1.createNewToken("u", null, null, null);
+            node1.getTokenCache().put(token, token.getExpireTime());
+            node2.removeToken("u", token.getAccessToken());
+            bus2.flush();
+            assertNull(node1.getTokenCache().get(token.getAccessToken()));
+
+            token = node1.createNewToken("v", null, null, null);
+            node1.getTokenCache().put(token, token.getExpireTime());
+            node2.removeTokensByUserId("v");
+            bus2.flush();
+            assertNull(node1.getTokenCache().get(token.getAccessToken()));
+        } finally {
+            bus1.close();
+            bus2.close();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.zkoalas.jwts.provider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 随机添加、取消和推进, 与按到期时间逐个比较的参考模型对比
+ */
+public class TimerWheelTest {
+    private static final long TICK = 1000;
+
+    @Test
+    public void matchesReferenceModel() {
+        Random random = new Random(7);
+        long now = 1_500_000_000_123L;
+        TimerWheel wheel = new TimerWheel(TICK, now);
+        Map<TimerWheel.Node, Long> model = new HashMap<>();  // 节点 -> 到期tick
+        List<TimerWheel.Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            nodes.add(new TimerWheel.Node());
+        }
+
+        for (int step = 0; step < 20000; step++) {
+            TimerWheel.Node node = nodes.get(random.nextInt(nodes.size()));
+            int op = random.nextInt(10);
+            if (op < 5) {
+                long expireTime = now + delay(random);
+                wheel.schedule(node, expireTime);
+                // 已到期的节点在下一个tick到期
+                model.put(node, Math.max((expireTime + TICK - 1) / TICK, now / TICK + 1));
+            } else if (op < 7) {
+                wheel.cancel(node);
+                model.remove(node);
+            } else {
+                now += random.nextInt(100) * TICK + random.nextInt((int) TICK);
+                Set<TimerWheel.Node> expected = new HashSet<>();
+                long nowTick = now / TICK;
+                model.entrySet().removeIf(entry -> {
+                    boolean expired = entry.getValue() <= nowTick;
+                    if (expired) {
+                        expected.add(entry.getKey());
+                    }
+                    return expired;
+                });
+                List<TimerWheel.Node> expired = wheel.advance(now);
+                assertEquals("step " + step, expected.size(), expired.size());
+                assertEquals("step " + step, expected, new HashSet<>(expired));
+            }
+            assertEquals("step " + step, model.size(), wheel.size());
+        }
+    }
+
+    /**
+     * 覆盖已过期、各层范围以及超出最高层范围的延迟
+     */
+    private static long delay(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return -random.nextInt(10) * TICK;
+            case 1:
+                return random.nextInt(64) * TICK + random.nextInt((int) TICK);
+            case 2:
+                return random.nextInt(64 * 64) * TICK;
+            case 3:
+                return random.nextInt(64 * 64 * 64) * TICK;
+            case 4:
+                return random.nextInt(1_000_000) * TICK;
+            default:
+                return (64L * 64 * 64 * 64 + random.nextInt(1_000_000)) * TICK;
+        }
+    }
+}
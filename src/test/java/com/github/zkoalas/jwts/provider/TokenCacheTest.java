@@ -0,0 +1,82 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 按用户清除和查询期间清除后的写入
+ */
+public class TokenCacheTest {
+    private final TokenCache tokenCache = new TokenCache();
+
+    @Test
+    public void invalidateUserOnlyTouchesThatUser() {
+        Token a1 = put("a");
+        Token a2 = put("a");
+        Token b = put("b");
+        tokenCache.invalidateUser("a");
+        assertNull(tokenCache.get(a1.getAccessToken()));
+        assertNull(tokenCache.get(a2.getAccessToken()));
+        assertSame(b, tokenCache.get(b.getAccessToken()));
+
+        Token c = put("c");
+        tokenCache.invalidateUsers(new HashSet<String>(Arrays.asList("b", "c", "d")));
+        assertNull(tokenCache.get(b.getAccessToken()));
+        assertNull(tokenCache.get(c.getAccessToken()));
+        assertEquals(0, tokenCache.size());
+    }
+
+    @Test
+    public void reputAfterInvalidateIsIndexed() {
+        Token a = put("a");
+        tokenCache.invalidate(a.getAccessToken());
+        put(a);
+        put(a);
+        tokenCache.invalidateUser("a");
+        assertNull(tokenCache.get(a.getAccessToken()));
+    }
+
+    @Test
+    public void putAfterRemoveIsSkipped() {
+        Token a = token("a");
+        long generation = tokenCache.generation("a", a.getAccessToken());
+        // 查询store之后、放入缓存之前token被删除
+        tokenCache.invalidate(a.getAccessToken());
+        tokenCache.put(a, a.getExpireTime(), generation);
+        assertNull(tokenCache.get(a.getAccessToken()));
+
+        generation = tokenCache.generation("a", a.getAccessToken());
+        tokenCache.invalidateUser("a");
+        tokenCache.put(a, a.getExpireTime(), generation);
+        assertNull(tokenCache.get(a.getAccessToken()));
+
+        generation = tokenCache.generation("a", a.getAccessToken());
+        tokenCache.invalidateAll();
+        tokenCache.put(a, a.getExpireTime(), generation);
+        assertNull(tokenCache.get(a.getAccessToken()));
+
+        generation = tokenCache.generation("a", a.getAccessToken());
+        tokenCache.put(a, a.getExpireTime(), generation);
+        assertSame(a, tokenCache.get(a.getAccessToken()));
+    }
+
+    private Token put(String userId) {
+        return put(token(userId));
+    }
+
+    private Token put(Token token) {
+        tokenCache.put(token, token.getExpireTime());
+        return token;
+    }
+
+    private static Token token(String userId) {
+        return TokenUtil.buildToken(userId, 3600, TokenUtil.getKey());
+    }
+}
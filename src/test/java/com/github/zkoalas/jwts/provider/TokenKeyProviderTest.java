@@ -0,0 +1,71 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.H2Database;
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.Test;
+
+import java.security.Key;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * key只加载一次, 刷新时key变化才增加版本
+ */
+public class TokenKeyProviderTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicReference<String> hexKey = new AtomicReference<String>(TokenUtil.getHexKey());
+    private final TokenKeyProvider keyProvider = new TokenKeyProvider(() -> {
+        loads.incrementAndGet();
+        return hexKey.get();
+    });
+
+    @Test
+    public void loadsOnce() {
+        assertFalse(keyProvider.isLoaded());
+        Key key = keyProvider.getKey();
+        for (int i = 0; i < 10; i++) {
+            assertSame(key, keyProvider.getKey());
+        }
+        assertTrue(keyProvider.isLoaded());
+        assertEquals(1, loads.get());
+        assertEquals(hexKey.get(), keyProvider.getHexKey());
+        assertEquals(1, keyProvider.getVersion());
+        assertEquals(TokenUtil.getHexKey(key), keyProvider.getHexKey());
+    }
+
+    @Test
+    public void refreshChangesVersionOnlyOnChange() {
+        Key key = keyProvider.getKey();
+        keyProvider.refresh();
+        assertSame(key, keyProvider.getKey());
+        assertEquals(1, keyProvider.getVersion());
+
+        hexKey.set(TokenUtil.getHexKey());
+        keyProvider.refresh();
+        assertNotSame(key, keyProvider.getKey());
+        assertEquals(2, keyProvider.getVersion());
+        assertEquals(1, keyProvider.getVersionChangeCount());
+        assertEquals(2, keyProvider.getRefreshCount());
+        assertEquals(3, keyProvider.getLoadCount());
+    }
+
+    @Test
+    public void storeVerifiesWithoutReloadingKey() {
+        H2Database.truncate();
+        JdbcTokenStore tokenStore = new JdbcTokenStore(H2Database.dataSource());
+        Token token = tokenStore.createNewToken("u", null, null, null);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("u", TokenUtil.parseToken(token.getAccessToken(), tokenStore.getSigningKey()));
+        }
+        assertEquals(1, tokenStore.getKeyProvider().getLoadCount());
+        // 新建的store从表中读取同一个key
+        JdbcTokenStore other = new JdbcTokenStore(H2Database.dataSource());
+        assertEquals(tokenStore.getTokenKey(), other.getTokenKey());
+    }
+}
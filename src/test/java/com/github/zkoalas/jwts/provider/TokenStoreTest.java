@@ -0,0 +1,104 @@
+package com.github.zkoalas.jwts.provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 只实现单个token方法的store, 批量方法使用默认实现
+ */
+public class TokenStoreTest {
+    private final MemoryTokenStore delegate = new MemoryTokenStore();
+    private final TokenStore tokenStore = new SingleTokenStore(delegate);
+
+    @Before
+    public void setUp() {
+        Config.getInstance().setMaxToken(-1);
+    }
+
+    @Test
+    public void defaultBatchMethods() {
+        List<Token> tokens = tokenStore.createNewTokens(Arrays.asList("a", "b", "a"), new String[]{"p"}, null, null, 3600);
+        assertEquals(3, tokens.size());
+        assertEquals(2, tokenStore.findTokensByUserId("a").size());
+
+        assertEquals(1, tokenStore.removeTokens(tokens.subList(0, 1)));
+        assertNull(tokenStore.findToken("a", tokens.get(0).getAccessToken()));
+
+        assertEquals(2, tokenStore.removeTokensByUserIds(Arrays.asList("a", "b")));
+        assertTrue(tokenStore.findTokensByUserId("a").isEmpty());
+        assertTrue(tokenStore.findTokensByUserId("b").isEmpty());
+
+        assertEquals(2, tokenStore.storeTokens(tokens.subList(1, 3)));
+        assertEquals(1, tokenStore.findTokensByUserId("a").size());
+    }
+
+    private static class SingleTokenStore implements TokenStore {
+        private final TokenStore store;
+
+        private SingleTokenStore(TokenStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public String getTokenKey() {
+            return store.getTokenKey();
+        }
+
+        @Override
+        public Token findToken(String userId, String access_token) {
+            return store.findToken(userId, access_token);
+        }
+
+        @Override
+        public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds) {
+            return store.createNewToken(userId, permissions, roles, roleIds);
+        }
+
+        @Override
+        public Token createNewToken(String userId, String[] permissions, String[] roles, String[] roleIds, long expire) {
+            return store.createNewToken(userId, permissions, roles, roleIds, expire);
+        }
+
+        @Override
+        public int storeToken(Token token) {
+            return store.storeToken(token);
+        }
+
+        @Override
+        public List<Token> findTokensByUserId(String userId) {
+            return store.findTokensByUserId(userId);
+        }
+
+        @Override
+        public int removeToken(String userId, String access_token) {
+            return store.removeToken(userId, access_token);
+        }
+
+        @Override
+        public int removeTokensByUserId(String userId) {
+            return store.removeTokensByUserId(userId);
+        }
+
+        @Override
+        public int updateRolesByUserId(String userId, String[] roles) {
+            return store.updateRolesByUserId(userId, roles);
+        }
+
+        @Override
+        public int updateRoleIdsByUserId(String userId, String[] roleIds) {
+            return store.updateRoleIdsByUserId(userId, roleIds);
+        }
+
+        @Override
+        public int updatePermissionsByUserId(String userId, String[] permissions) {
+            return store.updatePermissionsByUserId(userId, permissions);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.zkoalas.jwts.provider;
+
+import com.github.zkoalas.jwts.util.TokenUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写入失败的重试和丢弃, 删除不等待写入
+ */
+public class TokenWriteBehindTest {
+    private final List<Token> written = new ArrayList<Token>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final TokenWriteBehind writeBehind = new TokenWriteBehind(tokens -> {
+        if (failures.getAndDecrement() > 0) {
+            throw new IllegalStateException("db down");
+        }
+        written.addAll(tokens);
+        return tokens.size();
+    });
+
+    @Test
+    public void failedBatchIsRetried() {
+        Token token = token("u");
+        writeBehind.offer(token);
+        failures.set(1);
+        assertEquals(0, writeBehind.flush());
+        assertSame(token, writeBehind.get(token.getAccessToken()));
+        assertEquals(1, writeBehind.flush());
+        assertEquals(1, written.size());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    public void batchDroppedAfterMaxRetries() {
+        writeBehind.setMaxRetries(2);
+        Token token = token("u");
+        writeBehind.offer(token);
+        failures.set(Integer.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            writeBehind.flush();
+        }
+        assertNull(writeBehind.get(token.getAccessToken()));
+        assertEquals(1, writeBehind.getDroppedCount());
+
+        // 丢弃后不影响后面的token
+        failures.set(0);
+        Token next = token("v");
+        writeBehind.offer(next);
+        assertEquals(1, writeBehind.flush());
+        assertSame(next, written.get(0));
+    }
+
+    @Test
+    public void unlimitedRetries() {
+        writeBehind.setMaxRetries(-1);
+        Token token = token("u");
+        writeBehind.offer(token);
+        failures.set(10);
+        for (int i = 0; i < 10; i++) {
+            writeBehind.flush();
+        }
+        assertEquals(0, writeBehind.getDroppedCount());
+        assertEquals(1, writeBehind.flush());
+    }
+
+    @Test
+    public void removedBeforeFlushIsNotWritten() {
+        Token token = token("u");
+        Token other = token("u");
+        writeBehind.offer(token);
+        writeBehind.offer(other);
+        assertTrue(writeBehind.remove(token.getAccessToken()));
+        assertFalse(writeBehind.remove(token.getAccessToken()));
+        assertEquals(1, writeBehind.removeUser("u"));
+        assertEquals(0, writeBehind.flush());
+        assertTrue(written.isEmpty());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    public void removeDoesNotWaitForFlush() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        List<Token> removed = Collections.synchronizedList(new ArrayList<Token>());
+        TokenWriteBehind slow = new TokenWriteBehind(tokens -> {
+            writing.countDown();
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return tokens.size();
+        });
+        slow.setRemover(tokens -> {
+            removed.addAll(tokens);
+            return tokens.size();
+        });
+        Token token = token("u");
+        Token kept = token("v");
+        slow.offer(token);
+        slow.offer(kept);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> flush = executor.submit(slow::flush);
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            // 写入进行中, 删除立即返回
+            assertTrue(slow.remove(token.getAccessToken()));
+            assertNull(slow.get(token.getAccessToken()));
+            resume.countDown();
+            assertEquals(2, (int) flush.get(5, TimeUnit.SECONDS));
+        } finally {
+            resume.countDown();
+            executor.shutdownNow();
+        }
+        assertEquals(1, removed.size());
+        assertSame(token, removed.get(0));
+        assertEquals(1, slow.getRemovedCount());
+        assertEquals(0, slow.getPendingCount());
+    }
+
+    private static Token token(String userId) {
+        return TokenUtil.buildToken(userId, 3600, TokenUtil.getKey());
+    }
+}
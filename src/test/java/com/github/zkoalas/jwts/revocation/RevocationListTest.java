@@ -0,0 +1,101 @@
+package com.github.zkoalas.jwts.revocation;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 布隆过滤器与精确集合、同步和启动时的预热
+ */
+public class RevocationListTest {
+    private final LocalRevocationStore store = new LocalRevocationStore();
+    private final RevocationList revocationList = new RevocationList(store);
+
+    @After
+    public void tearDown() {
+        revocationList.stopSync();
+    }
+
+    @Test
+    public void revokeTakesEffectLocally() {
+        long expireTime = System.currentTimeMillis() + 60000;
+        revocationList.revoke("a", expireTime);
+        assertTrue(revocationList.isRevoked("a"));
+        assertFalse(revocationList.isRevoked("b"));
+        assertFalse(revocationList.isRevoked(null));
+        assertEquals(expireTime, (long) store.loadRevoked(System.currentTimeMillis()).get("a"));
+        assertEquals(1, revocationList.getRevokedHitCount());
+    }
+
+    @Test
+    public void falsePositivesCheckedAgainstExactSet() {
+        revocationList.setFpp(0.3);
+        revocationList.setMinCapacity(8);
+        long expireTime = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 8; i++) {
+            store.revoke("revoked-" + i, expireTime);
+        }
+        revocationList.sync();
+        assertEquals(16, revocationList.getCapacity());
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(revocationList.isRevoked("live-" + i));
+        }
+        for (int i = 0; i < 8; i++) {
+            assertTrue(revocationList.isRevoked("revoked-" + i));
+        }
+        // 误判的token由精确集合排除
+        assertTrue(revocationList.getFalsePositiveCount() > 0);
+        assertEquals(revocationList.getFilterHitCount(), revocationList.getFalsePositiveCount() + 8);
+        assertEquals((double) revocationList.getFalsePositiveCount() / 1000, revocationList.getObservedFpp(), 1e-9);
+    }
+
+    @Test
+    public void syncLoadsOtherNodesAndDropsExpired() {
+        RevocationList other = new RevocationList(store);
+        other.revoke("a", System.currentTimeMillis() + 60000);
+        store.revoke("expired", System.currentTimeMillis() - 1000);
+        assertFalse(revocationList.isRevoked("a"));
+
+        revocationList.sync();
+        assertTrue(revocationList.isRevoked("a"));
+        assertFalse(revocationList.isRevoked("expired"));
+        assertEquals(1, revocationList.size());
+        Map<String, Long> revoked = store.loadRevoked(0);
+        assertFalse(revoked.containsKey("expired"));
+    }
+
+    @Test
+    public void startSyncWarmsSnapshot() {
+        store.revoke("a", System.currentTimeMillis() + 60000);
+        revocationList.startSync(3600);
+        assertTrue(revocationList.isSynced());
+        assertEquals(1, revocationList.getSyncCount());
+        assertTrue(revocationList.isRevoked("a"));
+    }
+
+    @Test
+    public void failsOpenBeforeFirstSync() {
+        RevocationList unavailable = new RevocationList(new LocalRevocationStore() {
+            @Override
+            public Map<String, Long> loadRevoked(long now) {
+                throw new IllegalStateException("store down");
+            }
+        });
+        try {
+            unavailable.startSync(3600);
+            assertFalse(unavailable.isSynced());
+            // 查询不访问存储, 本节点的吊销仍然生效
+            assertFalse(unavailable.isRevoked("a"));
+            unavailable.revoke("b", System.currentTimeMillis() + 60000);
+            assertTrue(unavailable.isRevoked("b"));
+            assertEquals(0, unavailable.getSyncCount());
+        } finally {
+            unavailable.stopSync();
+        }
+    }
+}
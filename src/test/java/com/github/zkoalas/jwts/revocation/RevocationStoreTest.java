@@ -0,0 +1,53 @@
+package com.github.zkoalas.jwts.revocation;
+
+import com.github.zkoalas.jwts.EmbeddedRedis;
+import com.github.zkoalas.jwts.H2Database;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * 各吊销存储的写入、读取未过期记录和清理
+ */
+public class RevocationStoreTest {
+
+    @Test
+    public void localStore() {
+        check(new LocalRevocationStore());
+    }
+
+    @Test
+    public void redisStore() {
+        EmbeddedRedis.flushDb();
+        check(new RedisRevocationStore(EmbeddedRedis.redisTemplate()));
+    }
+
+    @Test
+    public void jdbcStore() {
+        H2Database.truncate();
+        JdbcRevocationStore store = new JdbcRevocationStore(H2Database.dataSource());
+        check(store);
+        // 重复吊销忽略主键冲突
+        long expireTime = (System.currentTimeMillis() / 1000 + 60) * 1000;
+        store.revoke("live", expireTime);
+        assertEquals(1, store.loadRevoked(System.currentTimeMillis()).size());
+    }
+
+    private static void check(RevocationStore store) {
+        long now = (System.currentTimeMillis() / 1000) * 1000;
+        store.revoke("live", now + 60000);
+        store.revoke("expired", now - 1000);
+
+        Map<String, Long> revoked = store.loadRevoked(now);
+        assertEquals(1, revoked.size());
+        assertEquals(now + 60000, (long) revoked.get("live"));
+
+        assertEquals(1, store.purgeExpired(now));
+        assertEquals(0, store.purgeExpired(now));
+        assertFalse(store.loadRevoked(0).containsKey("expired"));
+        assertEquals(1, store.loadRevoked(0).size());
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.zkoalas.jwts.role;
+
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.MemoryTokenStore;
+import com.github.zkoalas.jwts.provider.TieredTokenStore;
+import com.github.zkoalas.jwts.provider.Token;
+import com.github.zkoalas.jwts.util.SubjectUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RolePermissionsTest {
+    private final LocalRolePermissionStore store = new LocalRolePermissionStore();
+    private final RolePermissions rolePermissions = new RolePermissions(store);
+
+    @Before
+    public void setUp() {
+        Config.getInstance().setMaxToken(-1);
+        rolePermissions.setPermissions("r1", new String[]{"a", "b"});
+        rolePermissions.setPermissions("r2", new String[]{"b", "c"});
+    }
+
+    @Test
+    public void memoizedPerCombination() {
+        String[] merged = rolePermissions.resolve(new String[]{"r1", "r2"});
+        assertEquals(set("a", "b", "c"), set(merged));
+        assertSame(merged, rolePermissions.resolve(new String[]{"r2", "r1", "r1"}));
+        assertEquals(1, rolePermissions.getCombinationCount());
+        assertEquals(set("a", "b", "c", "x"), set(rolePermissions.resolve(new String[]{"r1", "r2"}, new String[]{"x"})));
+    }
+
+    @Test
+    public void memoizedWithUserPermissions() {
+        String[] merged = rolePermissions.resolve(new String[]{"r1"}, new String[]{"x", "y"});
+        assertEquals(set("a", "b", "x", "y"), set(merged));
+        assertSame(merged, rolePermissions.resolve(new String[]{"r1"}, new String[]{"y", "x", "x"}));
+        assertEquals(set("x"), set(rolePermissions.resolve(null, new String[]{"x"})));
+        assertEquals(set("a", "b", "x"), set(rolePermissions.resolve(new String[]{"r1"}, new String[]{"x"})));
+        assertEquals(3, rolePermissions.getCombinationCount());
+
+        // 角色变化后重新合并
+        rolePermissions.setPermissions("r1", new String[]{"a"});
+        assertEquals(set("a", "x", "y"), set(rolePermissions.resolve(new String[]{"r1"}, new String[]{"x", "y"})));
+    }
+
+    @Test
+    public void editAndSync() {
+        RolePermissions other = new RolePermissions(store);
+        assertEquals(set("b", "c"), set(other.resolve(new String[]{"r2"})));
+        rolePermissions.setPermissions("r2", new String[]{"d"});
+        assertEquals(set("a", "b", "d"), set(rolePermissions.resolve(new String[]{"r1", "r2"})));
+        assertEquals(set("b", "c"), set(other.resolve(new String[]{"r2"})));
+        long changes = other.getChangeCount();
+        other.sync();
+        assertEquals(set("d"), set(other.resolve(new String[]{"r2"})));
+        other.sync();
+        assertEquals(changes + 1, other.getChangeCount());
+    }
+
+    @Test
+    public void resolvedPermissionsAreNotPersisted() {
+        MemoryTokenStore upper = new MemoryTokenStore();
+        MemoryTokenStore record = new MemoryTokenStore();
+        TieredTokenStore tokenStore = new TieredTokenStore(new TieredTokenStore.Tier("upper", upper),
+                new TieredTokenStore.Tier("record", record));
+        tokenStore.setRolePermissions(rolePermissions);
+        Token token = record.createNewToken("u", null, null, new String[]{"r1"});
+
+        Token found = tokenStore.findToken("u", token.getAccessToken());
+        assertNull(found.getPermissions());
+        assertTrue(SubjectUtil.hasPermission(found, "b"));
+        assertNull(upper.findToken("u", token.getAccessToken()).getPermissions());
+
+        // 角色去掉权限后, 上层命中的token也不再拥有
+        rolePermissions.setPermissions("r1", new String[]{"a"});
+        found = tokenStore.findToken("u", token.getAccessToken());
+        assertEquals(1, tokenStore.getTiers().get(0).getHitCount());
+        assertFalse(SubjectUtil.hasPermission(found, "b"));
+        assertTrue(SubjectUtil.hasPermission(found, "a"));
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,230 @@
+package com.github.zkoalas.jwts.util;
+
+import com.github.zkoalas.jwts.provider.Config;
+import com.github.zkoalas.jwts.provider.KeyRing;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.security.WeakKeyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * HmacJwtVerifier与jjwt的交叉校验, 相同的token必须得到相同的结果或相同类型的异常
+ */
+public class HmacJwtVerifierTest {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private final Key key = TokenUtil.getKey();
+    private String token;
+    private String header;
+    private String payload;
+    private String signature;
+
+    @Before
+    public void setUp() {
+        token = TokenUtil.buildToken("u1", 3600, key).getAccessToken();
+        String[] parts = token.split("\\.");
+        header = parts[0];
+        payload = parts[1];
+        signature = parts[2];
+    }
+
+    @After
+    public void tearDown() {
+        Config.getInstance().setFastVerify(false);
+    }
+
+    @Test
+    public void validToken() {
+        assertEquals("OK u1", crossCheck(token));
+    }
+
+    @Test
+    public void fastPathUsed() {
+        // 合法的HMAC token由快速校验直接返回, 签名错误时交给jjwt
+        assertNotNull(HmacJwtVerifier.verify(token, key, null, null));
+        assertNull(HmacJwtVerifier.verify(token, TokenUtil.getKey(), null, null));
+    }
+
+    @Test
+    public void claimsMatchJjwt() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("name", "张三\"\\");
+        claims.put("level", 3);
+        claims.put("roles", Arrays.asList("admin", "user"));
+        claims.put("nested", new HashMap<>(claims));
+        String value = TokenUtil.toBuildAccessToken(claims, "u2", new Date(System.currentTimeMillis() + 60000), key);
+
+        Config.getInstance().setFastVerify(false);
+        Claims expected = TokenUtil.parseClaims(value, key);
+        Config.getInstance().setFastVerify(true);
+        Claims actual = TokenUtil.parseClaims(value, key);
+        assertEquals(new HashMap<>(expected), new HashMap<>(actual));
+        assertEquals(expected.getExpiration(), actual.getExpiration());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals("u2", actual.getSubject());
+    }
+
+    @Test
+    public void expiredAndWrongKey() {
+        String expired = TokenUtil.toBuildAccessToken(null, "u1", new Date(System.currentTimeMillis() - 60000), key);
+        assertEquals("ERR " + ExpiredJwtException.class.getSimpleName(), crossCheck(expired));
+        String other = TokenUtil.buildToken("u1", 3600, TokenUtil.getKey()).getAccessToken();
+        assertEquals("ERR " + SignatureException.class.getSimpleName(), crossCheck(other));
+    }
+
+    @Test
+    public void otherHmacAlgorithms() {
+        for (SignatureAlgorithm algorithm : new SignatureAlgorithm[]{SignatureAlgorithm.HS384, SignatureAlgorithm.HS512}) {
+            Key other = Keys.secretKeyFor(algorithm);
+            String value = TokenUtil.buildToken("u3", 3600, other).getAccessToken();
+            assertNotNull(algorithm.name(), HmacJwtVerifier.verify(value, other, null, null));
+            assertEquals("OK u3", crossCheck(value, other));
+            // 算法与key不一致时交给jjwt, HS256的key不能校验更长的签名
+            assertEquals("ERR " + WeakKeyException.class.getSimpleName(), crossCheck(value));
+        }
+    }
+
+    @Test
+    public void keyRingResolvesKid() {
+        String hexKey1 = TokenUtil.getHexKey();
+        String hexKey2 = TokenUtil.getHexKey();
+        KeyRing keyRing = KeyRing.of(KeyRing.Entry.hmac("k1", hexKey1, 0), KeyRing.Entry.hmac("k2", hexKey2, 0));
+        Key key2 = TokenUtil.parseHexKey(hexKey2);
+        String value = TokenUtil.buildToken("u4", 3600, key2, "k2").getAccessToken();
+        String unknown = TokenUtil.buildToken("u4", 3600, key2, "k3").getAccessToken();
+        String wrongKid = TokenUtil.buildToken("u4", 3600, key2, "k1").getAccessToken();
+
+        assertNotNull(HmacJwtVerifier.verify(value, null, keyRing, () -> key));
+        assertEquals("OK u4", crossCheck(value, keyRing));
+        assertEquals("OK u1", crossCheck(token, keyRing));
+        assertEquals("ERR " + SignatureException.class.getSimpleName(), crossCheck(unknown, keyRing));
+        assertEquals("ERR " + SignatureException.class.getSimpleName(), crossCheck(wrongKid, keyRing));
+    }
+
+    @Test
+    public void malleableSignatureRejected() {
+        Map<String, String> cases = new LinkedHashMap<>();
+        cases.put("=garbage", join(header, payload, signature + "=garbage"));
+        cases.put("=", join(header, payload, signature + "="));
+        cases.put("==", join(header, payload, signature + "=="));
+        cases.put("space", join(header, payload, signature + " "));
+        cases.put("newline", join(header, payload, signature + "\n"));
+        cases.put("non-canonical", join(header, payload, withLast(signature, 1)));
+        cases.put("+", join(header, payload, "+" + signature.substring(1)));
+        cases.put("/", join(header, payload, "/" + signature.substring(1)));
+        for (Map.Entry<String, String> entry : cases.entrySet()) {
+            assertEquals(entry.getKey(), "ERR " + SignatureException.class.getSimpleName(), crossCheck(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void nonCanonicalTrailingBits() {
+        // 43个字符的HS256签名, 最后一个字符只有高4位有效, 其余15种写法都要拒绝
+        assertEquals(43, signature.length());
+        for (int bits = 1; bits < 16; bits++) {
+            assertEquals("ERR " + SignatureException.class.getSimpleName(),
+                    crossCheck(join(header, payload, withLast(signature, bits))));
+        }
+    }
+
+    @Test
+    public void malformedHeaderAndPayload() {
+        String[] tokens = {
+                join(header + "=", payload, signature),
+                join(header + "=x", payload, signature),
+                join(header, payload + "=", signature),
+                join(withLast(header, 1), payload, signature),
+                join(header, withLast(payload, 1), signature),
+                join(header + "+", payload, signature),
+                join(header, payload),
+                header + "." + payload + "." + signature + "." + signature
+        };
+        for (String malformed : tokens) {
+            String rs = crossCheck(malformed);
+            if (rs.startsWith("OK")) {
+                fail("accepted " + malformed);
+            }
+        }
+    }
+
+    @Test
+    public void randomMutations() {
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            char[] chars = token.toCharArray();
+            int index = random.nextInt(chars.length);
+            chars[index] = random.nextInt(8) == 0 ? "=+/ .".charAt(random.nextInt(5)) : ALPHABET.charAt(random.nextInt(64));
+            String mutated = new String(chars);
+            String rs = crossCheck(mutated);
+            if (!mutated.equals(token) && rs.startsWith("OK")) {
+                fail("accepted " + mutated);
+            }
+        }
+    }
+
+    /**
+     * 分别用jjwt和HmacJwtVerifier校验, 结果不同时失败
+     */
+    private String crossCheck(String value) {
+        return crossCheck(value, key);
+    }
+
+    private String crossCheck(String value, Key key) {
+        return crossCheck(value, () -> TokenUtil.parseClaims(value, key));
+    }
+
+    /**
+     * 没有kid的token使用key
+     */
+    private String crossCheck(String value, KeyRing keyRing) {
+        return crossCheck(value, () -> TokenUtil.parseClaims(value, keyRing, () -> key));
+    }
+
+    private String crossCheck(String value, Supplier<Claims> parser) {
+        Config.getInstance().setFastVerify(false);
+        String jjwt = parse(parser);
+        Config.getInstance().setFastVerify(true);
+        String fast = parse(parser);
+        assertEquals(value, jjwt, fast);
+        return fast;
+    }
+
+    private static String parse(Supplier<Claims> parser) {
+        try {
+            return "OK " + parser.get().getSubject();
+        } catch (Exception e) {
+            return "ERR " + e.getClass().getSimpleName();
+        }
+    }
+
+    private static String join(String... parts) {
+        return String.join(".", parts);
+    }
+
+    /**
+     * 把最后一个字符的低位异或bits
+     */
+    private static String withLast(String s, int bits) {
+        int last = ALPHABET.indexOf(s.charAt(s.length() - 1));
+        return s.substring(0, s.length() - 1) + ALPHABET.charAt(last ^ bits);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.zkoalas.jwts.util;
+
+import com.github.zkoalas.jwts.annotation.Logical;
+import com.github.zkoalas.jwts.provider.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 字典分配id、位图运算和SubjectUtil的权限/角色检查
+ */
+public class PermissionSetTest {
+    private final PermissionDictionary dictionary = new PermissionDictionary();
+
+    @Test
+    public void internSharesInstances() {
+        int id = dictionary.intern(new String("a:read"));
+        assertEquals(id, dictionary.intern("a:read"));
+        assertEquals(id, dictionary.idOf("a:read"));
+        assertEquals(-1, dictionary.idOf("a:missing"));
+        assertEquals(-1, dictionary.idOf(null));
+
+        String[] values = {new String("a:read")};
+        assertSame(dictionary.nameOf(id), dictionary.internAll(values)[0]);
+
+        // 内容相同的位图共享同一实例, 顺序和重复不影响
+        PermissionSet set = dictionary.toSet(new String[]{"a:read", "a:write"});
+        assertSame(set, dictionary.toSet(new String[]{"a:write", "a:read", "a:write"}));
+        assertSame(PermissionSet.EMPTY, dictionary.toSet(null));
+        assertSame(PermissionSet.EMPTY, dictionary.toSet(new String[0]));
+    }
+
+    @Test
+    public void setOperationsAcrossWords() {
+        String[] names = new String[150];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "p" + i;
+        }
+        PermissionSet all = dictionary.toSet(names);
+        PermissionSet some = dictionary.toSet(new String[]{"p1", "p64", "p149"});
+        PermissionSet other = dictionary.toSet(new String[]{"p149", "x"});
+        assertEquals(150, all.size());
+        assertTrue(all.containsAll(some));
+        assertFalse(some.containsAll(all));
+        assertFalse(all.containsAll(other));
+        assertTrue(all.containsAny(other));
+        assertFalse(some.containsAny(dictionary.toSet(new String[]{"p2", "x"})));
+        assertTrue(some.contains(dictionary.idOf("p64")));
+        assertFalse(some.contains(-1));
+        assertFalse(some.contains(10000));
+
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int id = some.nextId(0); id >= 0; id = some.nextId(id + 1)) {
+            ids.add(id);
+        }
+        assertEquals(3, ids.size());
+        assertEquals("p64", dictionary.nameOf(ids.get(1)));
+        assertEquals(-1, some.nextId(dictionary.idOf("p149") + 1));
+    }
+
+    @Test
+    public void equalityIgnoresTrailingZeroWords() {
+        PermissionSet small = new PermissionSet(new long[]{5});
+        PermissionSet padded = new PermissionSet(new long[]{5, 0, 0});
+        assertNotSame(small, padded);
+        assertEquals(small, padded);
+        assertEquals(small.hashCode(), padded.hashCode());
+        assertTrue(new PermissionSet(new long[]{0, 0}).isEmpty());
+    }
+
+    @Test
+    public void subjectUtilChecks() {
+        Token token = new Token();
+        token.setPermissions(new String[]{"bitset:read", "bitset:write"});
+        token.setRoles(new String[]{"bitset-admin"});
+        assertTrue(SubjectUtil.hasPermission(token, new String[]{"bitset:read", "bitset:write"}, Logical.AND));
+        assertFalse(SubjectUtil.hasPermission(token, new String[]{"bitset:read", "bitset:delete"}, Logical.AND));
+        assertTrue(SubjectUtil.hasPermission(token, new String[]{"bitset:delete", "bitset:read"}, Logical.OR));
+        assertFalse(SubjectUtil.hasPermission(token, "bitset:never-interned"));
+        assertTrue(SubjectUtil.hasRole(token, "bitset-admin"));
+        assertFalse(SubjectUtil.hasRole(token, "bitset-guest"));
+
+        PermissionSet required = PermissionDictionary.PERMISSIONS.toSet(new String[]{"bitset:read", "bitset:write"});
+        assertTrue(SubjectUtil.hasPermission(token, required, Logical.AND));
+        assertFalse(SubjectUtil.hasPermission(token, PermissionSet.EMPTY, Logical.OR));
+        assertFalse(SubjectUtil.hasPermission((Token) null, required, Logical.OR));
+
+        // 修改权限后重新生成位图
+        token.setPermissions(new String[]{"bitset:read"});
+        assertFalse(SubjectUtil.hasPermission(token, required, Logical.AND));
+        assertTrue(SubjectUtil.hasPermission(token, required, Logical.OR));
+        token.setRoles(null);
+        assertFalse(SubjectUtil.hasRole(token, "bitset-admin"));
+        assertArrayEquals(new String[]{"bitset:read"}, token.getPermissions());
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.zkoalas.jwts.util;
+
+import com.github.zkoalas.jwts.annotation.Logical;
+import com.github.zkoalas.jwts.provider.Token;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 通配符匹配、树的共享和SubjectUtil中精确与通配符混合的检查
+ */
+public class PermissionTrieTest {
+
+    private static PermissionTrie trie(String... permissions) {
+        return PermissionTrie.of(PermissionDictionary.PERMISSIONS.toSet(permissions), permissions);
+    }
+
+    @Test
+    public void wildcardMatchesPrefix() {
+        PermissionTrie trie = trie("trie-order:*", "trie-user:read", "trie-report:daily:*");
+        assertNotNull(trie);
+        assertTrue(trie.implies("trie-order"));
+        assertTrue(trie.implies("trie-order:read"));
+        assertTrue(trie.implies("trie-order:read:123"));
+        assertTrue(trie.implies("trie-user:read"));
+        assertTrue(trie.implies("trie-report:daily:2020"));
+        assertFalse(trie.implies("trie-orders:read"));
+        assertFalse(trie.implies("trie-user"));
+        assertFalse(trie.implies("trie-user:write"));
+        assertFalse(trie.implies("trie-user:read:1"));
+        assertFalse(trie.implies("trie-report:monthly"));
+        assertFalse(trie.implies(null));
+    }
+
+    @Test
+    public void onlyTrailingStarIsWildcard() {
+        assertTrue(PermissionTrie.isWildcard("*"));
+        assertTrue(PermissionTrie.isWildcard("trie-a:*"));
+        assertFalse(PermissionTrie.isWildcard("trie-a*"));
+        assertFalse(PermissionTrie.isWildcard("trie-a:*:read"));
+
+        // 非末段的*按普通字符匹配
+        PermissionTrie trie = trie("trie-a:*:read", "trie-b:*");
+        assertTrue(trie.implies("trie-a:*:read"));
+        assertFalse(trie.implies("trie-a:x:read"));
+
+        assertTrue(trie("*").implies("trie-anything:at:all"));
+    }
+
+    @Test
+    public void sharedAndAbsent() {
+        assertNull(trie("trie-plain:read", "trie-plain:write"));
+        assertNull(PermissionTrie.of(PermissionSet.EMPTY, new String[0]));
+        // 相同权限集合共享同一棵树
+        assertSame(trie("trie-shared:*", "trie-x"), trie("trie-x", "trie-shared:*"));
+    }
+
+    @Test
+    public void subjectUtilUsesTrie() {
+        Token token = new Token();
+        token.setPermissions(new String[]{"trie-order:*", "trie-user:read"});
+        assertNotNull(token.permissionTrie());
+        assertTrue(SubjectUtil.hasPermission(token, "trie-order:delete"));
+        assertTrue(SubjectUtil.hasPermission(token, new String[]{"trie-order:read", "trie-user:read"}, Logical.AND));
+        assertFalse(SubjectUtil.hasPermission(token, new String[]{"trie-order:read", "trie-user:write"}, Logical.AND));
+        assertTrue(SubjectUtil.hasPermission(token, new String[]{"trie-user:write", "trie-order:read"}, Logical.OR));
+
+        // 位图中精确命中一部分, 其余通过通配符
+        PermissionSet required = PermissionDictionary.PERMISSIONS.toSet(new String[]{"trie-user:read", "trie-order:export"});
+        assertTrue(SubjectUtil.hasPermission(token, required, Logical.AND));
+        PermissionSet missing = PermissionDictionary.PERMISSIONS.toSet(new String[]{"trie-user:read", "trie-user:write"});
+        assertFalse(SubjectUtil.hasPermission(token, missing, Logical.AND));
+        assertTrue(SubjectUtil.hasPermission(token, missing, Logical.OR));
+
+        // 去掉通配符后不再生成树
+        token.setPermissions(new String[]{"trie-user:read"});
+        assertNull(token.permissionTrie());
+        assertFalse(SubjectUtil.hasPermission(token, "trie-order:delete"));
+    }
+}
@@ -0,0 +1,32 @@
+CREATE TABLE oauth_token (
+  token_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  access_token VARCHAR(1024) NOT NULL,
+  token_hash CHAR(64),
+  user_id VARCHAR(128) NOT NULL,
+  permissions VARCHAR(4096),
+  roles VARCHAR(4096),
+  role_ids VARCHAR(4096),
+  token_key VARCHAR(128),
+  refresh_token VARCHAR(1024),
+  expire_time DATETIME NOT NULL,
+  create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+CREATE UNIQUE INDEX uk_oauth_token_hash ON oauth_token (token_hash);
+CREATE INDEX idx_oauth_token_user ON oauth_token (user_id);
+
+CREATE TABLE oauth_token_key (
+  token_key VARCHAR(128) NOT NULL
+);
+
+CREATE TABLE oauth_token_revoked (
+  token_id VARCHAR(64) NOT NULL PRIMARY KEY,
+  expire_time DATETIME NOT NULL
+);
+CREATE INDEX idx_expire_time ON oauth_token_revoked (expire_time);
+
+CREATE TABLE oauth_role_permission (
+  role_id VARCHAR(128) NOT NULL PRIMARY KEY,
+  permissions VARCHAR(4096),
+  update_time DATETIME
+);